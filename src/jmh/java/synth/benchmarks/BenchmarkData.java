@@ -0,0 +1,85 @@
+package synth.benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.*;
+
+/**
+ * Shared setup for the benchmarks: loading example files and generating a
+ * reproducible set of programs to evaluate.
+ */
+class BenchmarkData {
+    static final String TEST_DATA = System.getProperty("synth.testData", "test-data");
+
+    // Benchmarks that take a file parameter all run over the same files, a couple
+    // of small phase 1 problems and a few phase 2 ones with ~1000 examples. JMH
+    // wants literal @Param values, so these get listed out in each benchmark.
+    static final String PHASE1_A = "phase1/0301.txt";
+    static final String PHASE1_B = "phase1/0504.txt";
+    static final String PHASE2_A = "phase2/0109.txt";
+    static final String PHASE2_B = "phase2/0309.txt";
+    static final String PHASE2_C = "phase2/0509.txt";
+
+    // Held so the level setting isn't lost when the logger is collected
+    private static final Logger SYNTH_LOGGER = Logger.getLogger("synth");
+
+    static {
+        // The optimizers log heartbeats at INFO, which would end up in the measurements
+        SYNTH_LOGGER.setLevel(Level.WARNING);
+    }
+
+    private static final Symbol[] TERMINALS = Arrays.stream(Symbol.values())
+            .filter(s -> s.isTerminalProduction()).toArray(Symbol[]::new);
+
+    static Path examplesPath(String file) {
+        var path = Paths.get(TEST_DATA, file);
+        if (!Files.exists(path)) {
+            throw new IllegalStateException("Missing benchmark data " + path.toAbsolutePath()
+                    + "; run from the project root or set -Dsynth.testData");
+        }
+        return path;
+    }
+
+    static List<Example> loadExamples(String file) {
+        try {
+            return ExampleFileReader.readExamples(examplesPath(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The same random post-order program generator the fuzz tests use, with a
+     * fixed seed so every run measures the same programs.
+     */
+    static Symbol[][] makePostOrderPrograms(long seed, int count, int length) {
+        var rng = new Random(seed);
+        var programs = new Symbol[count][];
+        for (int n = 0; n < count; ++n) {
+            var program = new Symbol[length];
+            for (int i = 0; i < length; ++i) {
+                program[i] = rng.nextInt(8) == 0 ? null : TERMINALS[rng.nextInt(TERMINALS.length)];
+            }
+            programs[n] = program;
+        }
+        return programs;
+    }
+
+    static List<Symbol> flattenPreOrder(ParseNode node) {
+        var result = new ArrayList<Symbol>();
+        flattenPreOrder(node, result);
+        return result;
+    }
+
+    private static void flattenPreOrder(ParseNode node, List<Symbol> out) {
+        out.add(node.getSymbol());
+        for (var child : node.getChildren()) {
+            flattenPreOrder(child, out);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package synth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import synth.algorithms.enumeration.BottomUpEnumerator;
+import synth.algorithms.enumeration.ProgramEnumerator;
+import synth.core.ExampleColumns;
+
+/**
+ * Bottom-up enumeration of every distinct expression/predicate up to height 2
+ * over a file's inputs. Unlike ProgramEnumeratorBenchmark this depends on the
+ * examples, since they determine how much gets pruned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BottomUpEnumeratorBenchmark {
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private ExampleColumns columns;
+
+    @Setup
+    public void setup() {
+        columns = ExampleColumns.of(BenchmarkData.loadExamples(file));
+    }
+
+    @Benchmark
+    public void enumerateExpr(Blackhole bh) {
+        var be = new BottomUpEnumerator(2, columns, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        while (be.hasNext()) {
+            bh.consume(be.next());
+        }
+    }
+
+    @Benchmark
+    public void enumerateBool(Blackhole bh) {
+        var be = new BottomUpEnumerator(2, columns, ProgramEnumerator.B_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        while (be.hasNext()) {
+            bh.consume(be.next());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package synth.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import synth.algorithms.ast.*;
+import synth.algorithms.classify.Classification;
+import synth.algorithms.classify.InputUniverse;
+import synth.core.*;
+import synth.dsl.*;
+
+/**
+ * Cost of classifying a file's examples by whether random programs get them
+ * right, as the linear solver does for each partial solution it finds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassificationBenchmark {
+    private static final int PROGRAMS = 16;
+    private static final int PROGRAM_LENGTH = 40;
+
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private List<Example> examples;
+    private ExampleColumns columns;
+    private InputUniverse universe;
+    private ExprNode[] programs;
+
+    @Setup
+    public void setup() {
+        examples = BenchmarkData.loadExamples(file);
+        columns = ExampleColumns.of(examples);
+        universe = InputUniverse.ofExamples(examples);
+        var postOrder = BenchmarkData.makePostOrderPrograms(5678, PROGRAMS, PROGRAM_LENGTH);
+        programs = new ExprNode[PROGRAMS];
+        for (int i = 0; i < PROGRAMS; ++i) {
+            programs[i] = Asts.makeExprAstFromParse(Semantics.makeParseTreeFromExprPostOrder(postOrder[i]));
+        }
+    }
+
+    @Benchmark
+    public void makeFromExamples(Blackhole bh) {
+        for (var program : programs) {
+            bh.consume(Classification.makeFromExamples(program, examples));
+        }
+    }
+
+    /**
+     * The way LinearSolver does it, sharing the universe between calls.
+     */
+    @Benchmark
+    public void makeFromExamplesSharedUniverse(Blackhole bh) {
+        for (var program : programs) {
+            bh.consume(Classification.makeFromExamples(program, columns, universe));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package synth.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import synth.core.*;
+import synth.util.*;
+
+/**
+ * Cost of loading an examples file, the old way (a String per line, split up
+ * by Parser) against ExampleFileReader scanning the bytes directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleFileReaderBenchmark {
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private Path path;
+
+    @Setup
+    public void setup() {
+        path = BenchmarkData.examplesPath(file);
+    }
+
+    @Benchmark
+    public List<Example> parseLines() {
+        return Parser.parseAllExamples(FileUtils.readLinesFromFile(path.toString()));
+    }
+
+    @Benchmark
+    public List<Example> readExamples() throws IOException {
+        return ExampleFileReader.readExamples(path);
+    }
+}
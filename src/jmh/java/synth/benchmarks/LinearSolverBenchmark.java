@@ -0,0 +1,46 @@
+package synth.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import synth.algorithms.classify.PartialSolution;
+import synth.algorithms.lia.ORToolsCPLinearSolver;
+import synth.algorithms.rng.Xoshiro256SS;
+import synth.core.Example;
+
+/**
+ * One full computeSolutionSets() with the solver VoltronSynthesizer uses. This
+ * takes anywhere from milliseconds to tens of seconds, so it's timed one call
+ * at a time; a fresh solver with a fixed seed makes each call identical.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LinearSolverBenchmark {
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private List<Example> examples;
+    private ORToolsCPLinearSolver solver;
+
+    @Setup(Level.Trial)
+    public void loadExamples() {
+        examples = BenchmarkData.loadExamples(file);
+    }
+
+    @Setup(Level.Invocation)
+    public void makeSolver() {
+        solver = new ORToolsCPLinearSolver(new Xoshiro256SS(8383).nextSubsequence());
+    }
+
+    @Benchmark
+    public Collection<PartialSolution> computeSolutionSets() throws InterruptedException {
+        return solver.computeSolutionSets(examples);
+    }
+}
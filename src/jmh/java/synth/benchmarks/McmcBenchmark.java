@@ -0,0 +1,52 @@
+package synth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.*;
+
+import synth.algorithms.mcmc.McmcOptimizer.OptimizationResult;
+import synth.algorithms.mcmc.McmcProgramOptimizer;
+import synth.algorithms.rng.Xoshiro256SS;
+import synth.dsl.Symbol;
+
+/**
+ * MCMC iterations per second for program optimization against a file's
+ * examples, using the same cost function and mutations as Mcmc1Synthesizer.
+ * The target cost is unreachable, so every invocation runs exactly ITERATIONS
+ * iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class McmcBenchmark {
+    private static final int ITERATIONS = 10000;
+    private static final int PROGRAM_LENGTH = 40;
+
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private McmcProgramOptimizer optimizer;
+    private Function<Symbol[], Float> cost;
+    private Function<Symbol[], Symbol[]> generateFrom;
+    private Symbol[] initialX;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        var examples = BenchmarkData.loadExamples(file);
+        optimizer = new McmcProgramOptimizer(new Xoshiro256SS(2390845));
+        cost = McmcProgramOptimizer.examplesCostFunction(examples);
+        generateFrom = optimizer.generateFromFunction(McmcProgramOptimizer.GENERAL_SYMBOLS);
+        initialX = optimizer.makeRandomized(PROGRAM_LENGTH, McmcProgramOptimizer.GENERAL_SYMBOLS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public OptimizationResult<Symbol[]> optimize() throws InterruptedException {
+        return optimizer.optimize(initialX, generateFrom, cost, -1f, null, ITERATIONS);
+    }
+}
@@ -0,0 +1,41 @@
+package synth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import synth.algorithms.enumeration.ProgramEnumerator;
+
+/**
+ * Top-down enumeration throughput, without validating anything: the time to
+ * produce every program of the given height.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramEnumeratorBenchmark {
+    @Param({ "1", "2" })
+    public int height;
+
+    @Benchmark
+    public void enumerateExpr(Blackhole bh) {
+        var pe = new ProgramEnumerator(height, height, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        while (pe.hasNext()) {
+            bh.consume(pe.next());
+        }
+    }
+
+    @Benchmark
+    public void enumerateBool(Blackhole bh) {
+        var pe = new ProgramEnumerator(height, height, ProgramEnumerator.B_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        while (pe.hasNext()) {
+            bh.consume(pe.next());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package synth.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import synth.core.*;
+import synth.dsl.*;
+
+/**
+ * Cost of evaluating one program over every example in a file, for each of the
+ * evaluators. Each invocation evaluates PROGRAMS random programs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SemanticsBenchmark {
+    private static final int PROGRAMS = 16;
+    private static final int PROGRAM_LENGTH = 40;
+
+    @Param({ BenchmarkData.PHASE1_A, BenchmarkData.PHASE1_B, BenchmarkData.PHASE2_A, BenchmarkData.PHASE2_B,
+            BenchmarkData.PHASE2_C })
+    public String file;
+
+    private Environment[] inputs;
+    private ExampleColumns columns;
+    private Symbol[][] postOrder;
+    private ParseNode[] trees;
+    private List<List<Symbol>> preOrder;
+    private CompiledExpr[] compiled;
+    private PackedProgram[] packed;
+    private PackedEvaluator packedEvaluator;
+    private int[] out;
+
+    @Setup
+    public void setup() {
+        var examples = BenchmarkData.loadExamples(file);
+        inputs = examples.stream().map(Example::input).toArray(Environment[]::new);
+        columns = ExampleColumns.of(examples);
+        postOrder = BenchmarkData.makePostOrderPrograms(1234, PROGRAMS, PROGRAM_LENGTH);
+        trees = new ParseNode[PROGRAMS];
+        preOrder = new ArrayList<>();
+        compiled = new CompiledExpr[PROGRAMS];
+        packed = new PackedProgram[PROGRAMS];
+        for (int i = 0; i < PROGRAMS; ++i) {
+            trees[i] = Semantics.makeParseTreeFromExprPostOrder(postOrder[i]);
+            preOrder.add(BenchmarkData.flattenPreOrder(trees[i]));
+            compiled[i] = Semantics.compileExpr(trees[i]);
+            packed[i] = PackedProgram.pack(postOrder[i]);
+        }
+        packedEvaluator = new PackedEvaluator();
+        out = new int[columns.size()];
+    }
+
+    @Benchmark
+    public void tree(Blackhole bh) {
+        for (var program : trees) {
+            for (var env : inputs) {
+                bh.consume(Semantics.evaluate(program, env));
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterator(Blackhole bh) {
+        for (var program : preOrder) {
+            for (var env : inputs) {
+                bh.consume(Semantics.evaluate(program.iterator(), env));
+            }
+        }
+    }
+
+    @Benchmark
+    public void postOrder(Blackhole bh) {
+        for (var program : postOrder) {
+            for (var env : inputs) {
+                bh.consume(Semantics.evaluateExprPostOrder(program, env));
+            }
+        }
+    }
+
+    @Benchmark
+    public void packed(Blackhole bh) {
+        for (var program : packed) {
+            for (var env : inputs) {
+                bh.consume(packedEvaluator.evaluateExpr(program, env));
+            }
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole bh) {
+        for (var program : compiled) {
+            for (var env : inputs) {
+                bh.consume(program.eval(env));
+            }
+        }
+    }
+
+    @Benchmark
+    public void treeBatch(Blackhole bh) {
+        for (var program : trees) {
+            Semantics.evaluateBatch(program, columns, out);
+            bh.consume(out);
+        }
+    }
+
+    @Benchmark
+    public void postOrderBatch(Blackhole bh) {
+        for (var program : postOrder) {
+            Semantics.evaluateExprPostOrderBatch(program, columns, out);
+            bh.consume(out);
+        }
+    }
+
+    @Benchmark
+    public void packedBatch(Blackhole bh) {
+        for (var program : packed) {
+            packedEvaluator.evaluateExprBatch(program, columns, out);
+            bh.consume(out);
+        }
+    }
+}
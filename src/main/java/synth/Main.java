@@ -3,10 +3,16 @@ package synth;
 import synth.algorithms.*;
 import synth.core.Example;
 import synth.core.Program;
+import synth.core.Synthesizer;
 import synth.dsl.*;
 import synth.util.*;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 public class Main {
@@ -19,6 +25,7 @@ public class Main {
         // Logger.getLogger("").addHandler(new ConsoleHandler());
         Logger.getLogger("").setLevel(Level.WARNING);
         Logger.getLogger("synth.Main").setLevel(Level.INFO);
+        Logger.getLogger("synth.SynthesisServer").setLevel(Level.INFO);
         // Logger.getLogger("synth.algorithms.lia.LinearSolver").setLevel(Level.ALL);
         // Logger.getLogger("synth.algorithms.lia.ORToolsCPLinearSolver").setLevel(Level.ALL);
         Logger.getLogger("synth.algorithms").setLevel(Level.OFF);
@@ -26,52 +33,256 @@ public class Main {
         logger = Logger.getLogger("synth.Main");
     }
 
-    public static void main(String[] args) {
+    private static final int DEFAULT_CACHE_SIZE = 10000;
 
-        // String examplesFilePath = "examples.txt";
+    private static void usage() {
+        System.err.println("usage: synth [--jobs=N] [--cache=FILE] [--cache-size=N] EXAMPLES_FILE...\n"
+                + "       synth --serve=PORT [--jobs=N] [--cache=FILE] [--cache-size=N]\n"
+                + "  --jobs=N        synthesize N files at once; 0 means one per processor\n"
+                + "  --serve=PORT    solve examples files sent to this local port until killed\n"
+                + "  --metrics=FILE  write synthesis metrics to FILE as JSON, one line per examples\n"
+                + "                  file (one for the whole batch with --jobs); not with --serve");
+        System.exit(2);
+    }
 
-        var synthesizers = List.of(
-                new DFSEnum2Synthesizer(),
-                new VoltronSynthesizer());
+    /**
+     * @param linearSolverSeeds how many linear solves Voltron may run at once;
+     *                          only worth more than 1 if nothing else is using the
+     *                          other processors
+     */
+    static List<Synthesizer> makeSynthesizers(int linearSolverSeeds) {
+        return List.of(
+                new CegisSynthesizer(new DFSEnum2Synthesizer()),
+                new CegisSynthesizer(new VoltronSynthesizer(true, 1, linearSolverSeeds)));
         // new Mcmc1Synthesizer());
         // Synthesizer synthesizer = new MultiStrategySynthesizer();
+    }
+
+    /**
+     * Synthesize a program for one examples file.
+     * 
+     * @return the line to print for this file
+     */
+    private static String solveFile(String examplesFilePath, List<Synthesizer> synthesizers, ResultCache cache) {
+        // parse all examples
+        List<Example> examples;
+        try {
+            examples = ExampleFileReader.readExamples(Paths.get(examplesFilePath));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Can''t read {0}: {1}", new Object[] { examplesFilePath, e.getMessage() });
+            return "error: can't read examples!";
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Bad examples in {0}: {1}", new Object[] { examplesFilePath, e.getMessage() });
+            return "error: bad examples!";
+        }
+        return solveExamples(examples, synthesizers, cache);
+    }
+
+    /**
+     * Synthesize a program for one set of examples, as parsed from a file.
+     * 
+     * @return the line to print for these examples
+     */
+    static String solveExamples(List<Example> examples, List<Synthesizer> synthesizers, ResultCache cache) {
+        try {
+            examples = ExamplePreprocessor.preprocess(examples);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Bad examples: {0}", e.getMessage());
+            return "error: bad examples!";
+        }
+
+        Program program = null;
+        if (cache != null) {
+            program = cache.lookup(examples);
+            if (program != null) {
+                logger.info("Using cached solution");
+                return program.toString();
+            }
+        }
+
+        // run the synthesizers
+        for (var synthesizer : synthesizers) {
+            logger.info(String.format("Attempting solution with %s", synthesizer.getClass().getSimpleName()));
+            program = synthesizer.synthesize(examples);
+            if (program != null) {
+                for (var e : examples) {
+                    var evalOutput = Semantics.evaluate(program, e.input());
+                    if (evalOutput != e.output()) {
+                        logger.log(Level.SEVERE, "Synthesizer generated bad program: {0}",
+                                new Object[] { program });
+                        logger.log(Level.WARNING, "Failed on example: {0}; produced {1}",
+                                new Object[] { e, evalOutput });
+                        program = null;
+                        break;
+                    }
+                }
+            }
+            if (program != null) {
+                break;
+            }
+        }
+        if (program == null) {
+            return "error: failed to generate!";
+        }
+        if (cache != null) {
+            cache.store(examples, program);
+        }
+        return program.toString();
+    }
+
+    /**
+     * Write one line of the metrics file: the metrics recorded since the last
+     * Metrics.reset(), labelled with the file and result line they're for (null
+     * for a whole batch).
+     */
+    private static void writeMetrics(Writer out, String examplesFilePath, String result) {
+        try {
+            out.write("{\"file\": " + (examplesFilePath != null ? Metrics.quote(examplesFilePath) : "null")
+                    + ", \"result\": " + (result != null ? Metrics.quote(result) : "null") + ", \"metrics\": "
+                    + Metrics.toJson() + "}\n");
+            out.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Can''t write metrics: {0}", e.getMessage());
+        }
+    }
+
+    private static void serve(int port, int jobs, ResultCache cache) {
+        // Same split of the processors as a batch run
+        int linearSolverSeeds = jobs == 1 ? Runtime.getRuntime().availableProcessors() : 1;
+        try (var server = new SynthesisServer(port, jobs, () -> {
+            var synthesizers = makeSynthesizers(linearSolverSeeds);
+            return examples -> solveExamples(examples, synthesizers, cache);
+        })) {
+            server.serve();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Server failed: {0}", e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static void main(String[] args) {
+
+        // String examplesFilePath = "examples.txt";
+
+        String cachePath = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        int jobs = 1;
+        int servePort = -1;
+        String metricsPath = null;
+        var files = new ArrayList<String>();
+        for (var arg : args) {
+            if (arg.startsWith("--cache=")) {
+                cachePath = arg.substring("--cache=".length());
+            } else if (arg.startsWith("--cache-size=")) {
+                try {
+                    cacheSize = Integer.parseInt(arg.substring("--cache-size=".length()));
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (cacheSize <= 0) {
+                    usage();
+                }
+            } else if (arg.startsWith("--jobs=")) {
+                try {
+                    jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (jobs <= 0) {
+                    jobs = Runtime.getRuntime().availableProcessors();
+                }
+            } else if (arg.startsWith("--metrics=")) {
+                metricsPath = arg.substring("--metrics=".length());
+            } else if (arg.startsWith("--serve=")) {
+                try {
+                    servePort = Integer.parseInt(arg.substring("--serve=".length()));
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (servePort < 0 || servePort > 65535) {
+                    usage();
+                }
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else {
+                files.add(arg);
+            }
+        }
+        var cache = cachePath != null ? new ResultCache(Paths.get(cachePath), cacheSize) : null;
+
+        if (servePort >= 0) {
+            if (!files.isEmpty() || metricsPath != null) {
+                usage();
+            }
+            serve(servePort, jobs, cache);
+            return;
+        }
+
+        Writer metrics = null;
+        if (metricsPath != null) {
+            try {
+                metrics = Files.newBufferedWriter(Paths.get(metricsPath));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Can''t write metrics to {0}: {1}",
+                        new Object[] { metricsPath, e.getMessage() });
+                System.exit(1);
+            }
+            Metrics.setEnabled(true);
+            Metrics.reset();
+        }
 
         logger.log(Level.INFO, "Batch started");
-        for (var examplesFilePath : args) {
-            if (args.length > 1) {
-                System.out.println("# " + examplesFilePath);
+        if (jobs == 1) {
+            var synthesizers = makeSynthesizers(Runtime.getRuntime().availableProcessors());
+            for (var examplesFilePath : files) {
+                if (files.size() > 1) {
+                    System.out.println("# " + examplesFilePath);
+                }
+                Metrics.reset();
+                var result = solveFile(examplesFilePath, synthesizers, cache);
+                System.out.println(result);
+                if (metrics != null) {
+                    writeMetrics(metrics, examplesFilePath, result);
+                }
             }
-            List<String> lines = FileUtils.readLinesFromFile(examplesFilePath);
-
-            // parse all examples
-            List<Example> examples = Parser.parseAllExamples(lines);
-
-            // run the synthesizers
-            Program program = null;
-            for (var synthesizer : synthesizers) {
-                logger.info(String.format("Attempting solution with %s", synthesizer.getClass().getSimpleName()));
-                program = synthesizer.synthesize(examples);
-                if (program != null) {
-                    for (var e : examples) {
-                        var evalOutput = Semantics.evaluate(program, e.input());
-                        if (evalOutput != e.output()) {
-                            logger.log(Level.SEVERE, "Synthesizer generated bad program: {0}",
-                                    new Object[] { program });
-                            logger.log(Level.WARNING, "Failed on example: {0}; produced {1}",
-                                    new Object[] { e, evalOutput });
-                            program = null;
-                            break;
-                        }
+        } else {
+            // Every worker gets its own synthesizers, they're not thread-safe. Results
+            // are printed in argument order as they become available.
+            var workerSynthesizers = ThreadLocal.withInitial(() -> makeSynthesizers(1));
+            var pool = Executors.newFixedThreadPool(jobs);
+            try {
+                var results = new ArrayList<Future<String>>();
+                for (var examplesFilePath : files) {
+                    results.add(pool.submit(() -> solveFile(examplesFilePath, workerSynthesizers.get(), cache)));
+                }
+                for (int i = 0; i < files.size(); ++i) {
+                    if (files.size() > 1) {
+                        System.out.println("# " + files.get(i));
                     }
+                    System.out.println(results.get(i).get());
                 }
-                if (program != null) {
-                    break;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
                 }
+                throw new RuntimeException(e.getCause());
+            } catch (InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted, abandoning batch");
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.shutdownNow();
             }
-            if (program == null) {
-                System.out.println("error: failed to generate!");
-            } else {
-                System.out.println(program);
+            if (metrics != null) {
+                // The problems all overlap, so there's no telling whose metrics are whose
+                writeMetrics(metrics, null, null);
+            }
+        }
+        if (metrics != null) {
+            try {
+                metrics.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Can''t write metrics to {0}: {1}",
+                        new Object[] { metricsPath, e.getMessage() });
             }
         }
         logger.log(Level.INFO, "Batch complete");
@@ -0,0 +1,132 @@
+package synth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+import synth.core.Example;
+import synth.util.ExampleFileReader;
+
+/**
+ * Solves example sets sent over a loopback socket, so a batch of small problems
+ * pays for JVM startup, loading the native solver libraries and JIT warmup only
+ * once instead of once per run.
+ *
+ * Each connection is one problem: the client sends an examples file, in the
+ * format ExampleFileReader reads, and shuts down its side of the connection;
+ * the server answers with the line Main would print for that file and closes
+ * its side. From a shell, e.g.:
+ *
+ * nc -N localhost 4890 < test-data/phase1/0100.txt
+ *
+ * Up to jobs connections are solved at once, each with one of jobs solvers that
+ * are all built before the server starts listening. A client that connects and
+ * never finishes sending ties up a worker, so this is only for local use.
+ */
+class SynthesisServer implements Closeable {
+    private static Logger logger = Logger.getLogger(SynthesisServer.class.getName());
+
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    // Solvers aren't thread-safe; each one is only ever lent to one worker at a
+    // time
+    private final BlockingQueue<Function<List<Example>, String>> solvers;
+
+    /**
+     * @param port    the loopback port to listen on; 0 picks a free one
+     * @param solvers makes a solver: something that takes a problem's examples
+     *                and returns the line to send back
+     */
+    SynthesisServer(int port, int jobs, Supplier<Function<List<Example>, String>> solvers) throws IOException {
+        if (jobs <= 0) {
+            throw new IllegalArgumentException("jobs must be positive");
+        }
+        this.solvers = new ArrayBlockingQueue<>(jobs);
+        for (int i = 0; i < jobs; ++i) {
+            this.solvers.add(solvers.get());
+        }
+        this.workers = Executors.newFixedThreadPool(jobs);
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the port the server is actually listening on
+     */
+    int port() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Accept and solve problems until the server is closed.
+     */
+    void serve() throws IOException {
+        logger.log(Level.INFO, "Listening on port {0}", port());
+        while (true) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                // close() was called; that's how this ends
+                return;
+            }
+            try {
+                workers.execute(() -> handle(client));
+            } catch (RejectedExecutionException e) {
+                client.close();
+                return;
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            String response;
+            List<Example> examples = null;
+            try {
+                examples = ExampleFileReader.readExamples(client);
+            } catch (IllegalArgumentException e) {
+                logger.log(Level.WARNING, "Bad examples from {0}: {1}",
+                        new Object[] { client.getRemoteAddress(), e.getMessage() });
+            }
+            if (examples != null) {
+                var solver = solvers.take();
+                try {
+                    response = solver.apply(examples);
+                } finally {
+                    solvers.add(solver);
+                }
+            } else {
+                response = "error: bad examples!";
+            }
+            var out = ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+            while (out.hasRemaining()) {
+                client.write(out);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Connection failed: {0}", e.getMessage());
+        } catch (InterruptedException e) {
+            // Shutting down
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        server.close();
+    }
+}
@@ -0,0 +1,93 @@
+package synth.algorithms;
+
+import java.util.*;
+
+import synth.core.Example;
+import synth.core.ParseNode;
+import synth.dsl.Semantics;
+
+/**
+ * Validates a stream of candidate programs against one example set, checking
+ * the examples that have been rejecting candidates first. Whenever an example
+ * rejects a candidate it's moved to the front of the order, so after a handful
+ * of candidates the few examples that rule most of them out are the first ones
+ * tried, and a typical enumerated candidate costs one or two evaluations no
+ * matter where in the file its counterexample is.
+ *
+ * The order only affects how quickly the answer comes, never the answer. Not
+ * thread-safe; use one per thread.
+ */
+final class AdaptiveValidator {
+    private final Example[] order;
+    private long evaluations = 0;
+    // Not yet added to the metrics; see flushMetrics()
+    private long uncountedCandidates = 0;
+    private long uncountedAccepted = 0;
+
+    AdaptiveValidator(List<Example> examples) {
+        this.order = examples.toArray(Example[]::new);
+    }
+
+    /**
+     * @return whether program gives the expected output for every example
+     */
+    boolean validate(ParseNode program) {
+        int n = order.length;
+        int interpreted = n - SynthesizerBase.COMPILE_AFTER_EXAMPLES < SynthesizerBase.COMPILE_MIN_REMAINING ? n
+                : SynthesizerBase.COMPILE_AFTER_EXAMPLES;
+        for (int i = 0; i < interpreted; ++i) {
+            ++evaluations;
+            if (Semantics.evaluate(program, order[i].input()) != order[i].output()) {
+                reject(i);
+                ++uncountedCandidates;
+                return false;
+            }
+        }
+        if (interpreted == n) {
+            return accept();
+        }
+        // Same tradeoff as SynthesizerBase.validate(): only compile candidates that
+        // survive the examples most likely to reject them
+        var compiled = Semantics.compileExpr(program);
+        for (int i = interpreted; i < n; ++i) {
+            ++evaluations;
+            if (compiled.eval(order[i].input()) != order[i].output()) {
+                reject(i);
+                ++uncountedCandidates;
+                return false;
+            }
+        }
+        return accept();
+    }
+
+    /**
+     * Add the candidates validated since the last call to the metrics. Counting
+     * them one by one would cost more than validating most of them does.
+     */
+    void flushMetrics() {
+        SynthesizerBase.recordValidations(uncountedCandidates, uncountedAccepted);
+        uncountedCandidates = 0;
+        uncountedAccepted = 0;
+    }
+
+    /**
+     * @return how many example evaluations validate() has done so far
+     */
+    long evaluations() {
+        return evaluations;
+    }
+
+    private boolean accept() {
+        ++uncountedCandidates;
+        ++uncountedAccepted;
+        return true;
+    }
+
+    private void reject(int i) {
+        if (i > 0) {
+            var e = order[i];
+            System.arraycopy(order, 0, order, 1, i);
+            order[0] = e;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package synth.algorithms;
+
+import synth.core.Example;
+import synth.core.ExampleColumns;
+import synth.core.Program;
+import synth.core.Synthesizer;
+import synth.dsl.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+/**
+ * Counterexample-guided wrapper for another synthesizer: synthesize from a
+ * small, diverse subset of the examples, check the result against all of them
+ * with the batch evaluator, and add a few of the examples it got wrong to the
+ * subset for the next round. The inner synthesizer validates its candidates
+ * against a few dozen examples instead of the whole set, and the full set is
+ * only evaluated once per round.
+ * 
+ * If the rounds run out, or the inner synthesizer fails on a subset, it gets
+ * the whole example set, so wrapping a synthesizer never makes it fail on
+ * something it would have solved, only (in the worst case) slower.
+ */
+public class CegisSynthesizer extends SynthesizerBase {
+    private static Logger logger = Logger.getLogger(CegisSynthesizer.class.getName());
+
+    private final Synthesizer inner;
+    private final int initialExamples;
+    private final int counterexamplesPerRound;
+    private final int maxRounds;
+
+    public CegisSynthesizer(Synthesizer inner) {
+        this(inner, 32, 8, 16);
+    }
+
+    public CegisSynthesizer(Synthesizer inner, int initialExamples, int counterexamplesPerRound, int maxRounds) {
+        if (initialExamples <= 0 || counterexamplesPerRound <= 0 || maxRounds < 0) {
+            throw new IllegalArgumentException("Example counts must be positive and maxRounds non-negative");
+        }
+        this.inner = inner;
+        this.initialExamples = initialExamples;
+        this.counterexamplesPerRound = counterexamplesPerRound;
+        this.maxRounds = maxRounds;
+    }
+
+    public Synthesizer inner() {
+        return inner;
+    }
+
+    /**
+     * Synthesize a program f(x, y, z) based on examples
+     *
+     * @param examples a list of examples
+     * @return the program or null to indicate synthesis failure
+     */
+    @Override
+    public Program synthesize(List<Example> examples) {
+        var distinct = List.copyOf(new LinkedHashSet<>(examples));
+        if (distinct.size() <= initialExamples + counterexamplesPerRound) {
+            // Not worth it
+            return inner.synthesize(examples);
+        }
+        var columns = ExampleColumns.of(distinct);
+        var outputs = columns.outputs();
+        var values = new int[columns.size()];
+
+        var inSubset = new boolean[distinct.size()];
+        var subset = new ArrayList<Example>();
+        for (int i : pickDiverse(distinct)) {
+            inSubset[i] = true;
+            subset.add(distinct.get(i));
+        }
+
+        for (int round = 0; round < maxRounds; ++round) {
+            var program = inner.synthesize(subset);
+            if (program == null && Thread.currentThread().isInterrupted()) {
+                // Stopped, not stuck; don't start over on all the examples
+                return null;
+            }
+            if (program == null) {
+                // The solvers are heuristic (budgets, random subsets, MCMC), so failing on
+                // a subset doesn't mean they'd fail on everything
+                logger.log(Level.INFO, "Inner synthesizer failed on {0} examples in round {1}",
+                        new Object[] { subset.size(), round });
+                break;
+            }
+
+            Semantics.evaluateBatch(program.getRoot(), columns, values);
+            int failureCount = 0;
+            var counterexamples = new ArrayList<Integer>();
+            for (int i = 0; i < values.length; ++i) {
+                if (values[i] != outputs[i]) {
+                    ++failureCount;
+                    if (!inSubset[i]) {
+                        counterexamples.add(i);
+                    }
+                }
+            }
+            if (failureCount == 0) {
+                logger.log(Level.INFO, "Solved with {0} of {1} examples in {2} rounds",
+                        new Object[] { subset.size(), distinct.size(), round + 1 });
+                return program;
+            }
+            if (counterexamples.isEmpty()) {
+                // The inner synthesizer handed back a program that's only wrong on its own
+                // examples; nothing we add will help with that
+                break;
+            }
+
+            // Spread the counterexamples over everything that failed, rather than taking
+            // a clump of very similar ones from the start
+            int stride = Math.max(1, counterexamples.size() / counterexamplesPerRound);
+            for (int j = 0, added = 0; j < counterexamples.size() && added < counterexamplesPerRound; j += stride) {
+                int i = counterexamples.get(j);
+                inSubset[i] = true;
+                subset.add(distinct.get(i));
+                ++added;
+            }
+            logger.log(Level.FINE, "Round {0}: {1} failures, subset now {2}",
+                    new Object[] { round, failureCount, subset.size() });
+        }
+
+        logger.log(Level.INFO, "Giving up on the subset, falling back to all {0} examples", distinct.size());
+        return inner.synthesize(examples);
+    }
+
+    /**
+     * Pick the initial subset: one example for each of the most common outputs
+     * first, since the solvers mostly care about covering the different
+     * behaviours, then fill up with examples evenly spaced through the input
+     * order.
+     */
+    private List<Integer> pickDiverse(List<Example> distinct) {
+        var byOutput = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < distinct.size(); ++i) {
+            byOutput.computeIfAbsent(distinct.get(i).output(), k -> new ArrayList<>()).add(i);
+        }
+        var groups = new ArrayList<>(byOutput.values());
+        groups.sort((a, b) -> Integer.compare(b.size(), a.size()));
+
+        var picked = new LinkedHashSet<Integer>();
+        for (var g : groups) {
+            if (picked.size() >= initialExamples / 2) {
+                break;
+            }
+            picked.add(g.get(0));
+        }
+
+        var order = new ArrayList<Integer>();
+        for (int i = 0; i < distinct.size(); ++i) {
+            order.add(i);
+        }
+        order.sort((a, b) -> distinct.get(a).input().compareTo(distinct.get(b).input()));
+        int remaining = initialExamples - picked.size();
+        for (int k = 0; k < remaining; ++k) {
+            picked.add(order.get((int) ((long) k * order.size() / remaining)));
+        }
+        return new ArrayList<>(picked);
+    }
+}
@@ -1,12 +1,61 @@
 package synth.algorithms;
 
+import synth.algorithms.enumeration.BottomUpEnumerator;
 import synth.algorithms.enumeration.ProgramEnumerator;
 import synth.core.Example;
+import synth.core.ExampleColumns;
+import synth.core.ParseNode;
 import synth.core.Program;
+import synth.dsl.Symbol;
+import synth.util.Metrics;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Enumerates programs in order of height until one satisfies all the examples.
+ * An interrupt ends the search early with null, leaving the interrupt status
+ * set.
+ */
 public class DFSEnum2Synthesizer extends SynthesizerBase {
+    // How many candidates a parallel slice checks between looking for interrupts
+    private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+    private final boolean bottomUp;
+    private final int maxHeight;
+    private final long maxPrograms;
+    private final ForkJoinPool pool;
+
+    /**
+     * The default searches bottom-up, which prunes observationally equivalent
+     * programs and gets through height 2 in a fraction of the time. Height 3 is
+     * still far too big to exhaust (even after pruning it's ~10^8 programs for a
+     * handful of examples), so it's only searched until the program budget runs
+     * out.
+     */
+    public DFSEnum2Synthesizer() {
+        this(true, 3, 1L << 18);
+    }
+
+    public DFSEnum2Synthesizer(boolean bottomUp, int maxHeight, long maxPrograms) {
+        this(bottomUp, maxHeight, maxPrograms, null);
+    }
+
+    /**
+     * @param pool if not null, enumerate top-down in parallel on this pool; the
+     *             result is the same program the sequential search would find
+     */
+    public DFSEnum2Synthesizer(boolean bottomUp, int maxHeight, long maxPrograms, ForkJoinPool pool) {
+        if (bottomUp && pool != null) {
+            throw new IllegalArgumentException("Parallel enumeration is only supported top-down");
+        }
+        this.bottomUp = bottomUp;
+        this.maxHeight = maxHeight;
+        this.maxPrograms = maxPrograms;
+        this.pool = pool;
+    }
+
     /**
      * Synthesize a program f(x, y, z) based on examples
      *
@@ -15,18 +64,246 @@ public class DFSEnum2Synthesizer extends SynthesizerBase {
      */
     @Override
     public Program synthesize(List<Example> examples) {
-        for (int h = 0; h <= 2; ++h) {
-            var pe = new ProgramEnumerator(h, h, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
-                    ProgramEnumerator.B_SYMBOLS);
+        if (bottomUp) {
+            return synthesizeBottomUp(examples);
+        }
+        if (pool != null) {
+            return synthesizeParallel(examples);
+        }
+        var validator = new AdaptiveValidator(examples);
+        try {
+            long count = 0;
+            for (int h = 0; h <= maxHeight && !Thread.currentThread().isInterrupted(); ++h) {
+                var pe = new ProgramEnumerator(h, h, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                        ProgramEnumerator.B_SYMBOLS);
+                try {
+                    while (pe.hasNext() && count++ < maxPrograms) {
+                        var node = pe.next();
+                        if (validator.validate(node)) {
+                            return new Program(node);
+                        }
+                    }
+                } finally {
+                    pe.flushMetrics();
+                }
+            }
+            return null;
+        } finally {
+            validator.flushMetrics();
+        }
+    }
 
-            while (pe.hasNext()) {
-                var node = pe.next();
-                if (validate(examples, node)) {
+    private Program synthesizeBottomUp(List<Example> examples) {
+        var columns = ExampleColumns.of(examples);
+        var outputs = columns.outputs();
+        var be = new BottomUpEnumerator(maxHeight, columns, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.B_SYMBOLS);
+        // Comparing output vectors is this search's validation, and much too cheap to
+        // count one by one
+        long count = 0;
+        boolean found = false;
+        try {
+            while (be.hasNext() && count < maxPrograms) {
+                ++count;
+                var node = be.next();
+                if (Arrays.equals(be.lastExprValues(), outputs)) {
+                    found = true;
                     return new Program(node);
                 }
             }
+            return null;
+        } finally {
+            be.flushMetrics();
+            recordValidations(count, found ? 1 : 0);
+        }
+    }
+
+    /**
+     * One slice of a height's enumeration: every program with the given root
+     * symbol and last child. ProgramEnumerator varies the last child slowest, so
+     * each slice is a contiguous run of the sequential order, and the slices are
+     * numbered in that order too. Finding the first valid program in the
+     * lowest-numbered slice that has one gives exactly the sequential result.
+     */
+    private static class SliceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+        final long firstOrdinal;
+        final Symbol symbol;
+        final List<List<ParseNode>> childChoices;
+        final ParseNode lastChild;
+        final Map<Thread, AdaptiveValidator> validators;
+        final List<Example> examples;
+        final long maxPrograms;
+        final AtomicInteger bestIndex;
+        // The pool's workers aren't the ones that get interrupted
+        final Thread caller;
+        ParseNode result;
+
+        SliceTask(int index, long firstOrdinal, Symbol symbol, List<List<ParseNode>> childChoices,
+                ParseNode lastChild, Map<Thread, AdaptiveValidator> validators, List<Example> examples,
+                long maxPrograms, AtomicInteger bestIndex, Thread caller) {
+            this.index = index;
+            this.firstOrdinal = firstOrdinal;
+            this.symbol = symbol;
+            this.childChoices = childChoices;
+            this.lastChild = lastChild;
+            this.validators = validators;
+            this.examples = examples;
+            this.maxPrograms = maxPrograms;
+            this.bestIndex = bestIndex;
+            this.caller = caller;
+        }
+
+        @Override
+        protected void compute() {
+            int k = childChoices.size() + 1;
+            var cursor = new int[k - 1];
+            var children = new ParseNode[k];
+            children[k - 1] = lastChild;
+            var validator = validators.computeIfAbsent(Thread.currentThread(),
+                    t -> new AdaptiveValidator(examples));
+            long ordinal = firstOrdinal;
+            while (ordinal < maxPrograms) {
+                // Slices before this one might still find something, but once an earlier
+                // slice has, nothing here can be the answer
+                if (bestIndex.get() < index) {
+                    break;
+                }
+                if ((ordinal - firstOrdinal) % INTERRUPT_CHECK_INTERVAL == 0 && caller.isInterrupted()) {
+                    break;
+                }
+                for (int i = 0; i < k - 1; ++i) {
+                    children[i] = childChoices.get(i).get(cursor[i]);
+                }
+                var node = new ParseNode(symbol, List.of(children));
+                ++ordinal;
+                if (validator.validate(node)) {
+                    result = node;
+                    bestIndex.accumulateAndGet(index, Math::min);
+                    break;
+                }
+                // Odometer over the other children, child 0 fastest
+                int i = 0;
+                for (; i < k - 1; ++i) {
+                    if (++cursor[i] < childChoices.get(i).size()) {
+                        break;
+                    }
+                    cursor[i] = 0;
+                }
+                if (i == k - 1) {
+                    break;
+                }
+            }
+            // The slices build their programs themselves, but they're the same ones
+            // ProgramEnumerator would hand out
+            Metrics.count("enumerator.topDown.candidates", ordinal - firstOrdinal);
+        }
+    }
+
+    private Program synthesizeParallel(List<Example> examples) {
+        // Each worker learns its own example order; they'd only fight over a shared
+        // one. Unlike a ThreadLocal, this goes away with the call instead of staying
+        // behind in the pool's long-lived threads.
+        var validators = new ConcurrentHashMap<Thread, AdaptiveValidator>();
+        try {
+            return synthesizeParallel(examples, validators);
+        } finally {
+            // The pool is done with them by now
+            for (var validator : validators.values()) {
+                validator.flushMetrics();
+            }
+        }
+    }
+
+    private Program synthesizeParallel(List<Example> examples, Map<Thread, AdaptiveValidator> validators) {
+        long ordinal = 0;
+        var levelCache = new HashMap<Symbol, List<ParseNode>>();
+        var caller = Thread.currentThread();
+        var callerValidator = new AdaptiveValidator(examples);
+        validators.put(caller, callerValidator);
+        for (int h = 0; h <= maxHeight && ordinal < maxPrograms && !caller.isInterrupted(); ++h) {
+            if (h == 0) {
+                // Not worth splitting up
+                for (var s : ProgramEnumerator.E_SYMBOLS) {
+                    if (!s.requiresArguments() && ordinal++ < maxPrograms) {
+                        Metrics.count("enumerator.topDown.candidates");
+                        var node = new ParseNode(s);
+                        if (callerValidator.validate(node)) {
+                            return new Program(node);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            // All programs of height h - 1, by return type; children have exactly that
+            // height, just like in ProgramEnumerator
+            levelCache.clear();
+            levelCache.put(Symbol.E, enumerateAll(h - 1, ProgramEnumerator.E_SYMBOLS));
+            levelCache.put(Symbol.B, enumerateAll(h - 1, ProgramEnumerator.B_SYMBOLS));
+            if (caller.isInterrupted()) {
+                // The levels were cut short
+                return null;
+            }
+
+            var bestIndex = new AtomicInteger(Integer.MAX_VALUE);
+            var tasks = new ArrayList<SliceTask>();
+            for (var s : ProgramEnumerator.E_SYMBOLS) {
+                if (!s.requiresArguments()) {
+                    continue;
+                }
+                var args = s.operatorArguments();
+                var childChoices = new ArrayList<List<ParseNode>>();
+                long sliceSize = 1;
+                for (int i = 0; i < args.size() - 1; ++i) {
+                    var choices = levelCache.get(args.get(i));
+                    childChoices.add(choices);
+                    sliceSize *= choices.size();
+                }
+                if (sliceSize == 0) {
+                    continue;
+                }
+                for (var lastChild : levelCache.get(args.get(args.size() - 1))) {
+                    if (ordinal >= maxPrograms) {
+                        break;
+                    }
+                    tasks.add(new SliceTask(tasks.size(), ordinal, s, childChoices, lastChild, validators,
+                            examples, maxPrograms, bestIndex, caller));
+                    ordinal += sliceSize;
+                }
+            }
+
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+
+            int best = bestIndex.get();
+            if (caller.isInterrupted()) {
+                // Slices stopped early, so an earlier one might have had the answer
+                return null;
+            }
+            if (best != Integer.MAX_VALUE) {
+                return new Program(tasks.get(best).result);
+            }
         }
         return null;
     }
 
+    private static List<ParseNode> enumerateAll(int height, Symbol[] seeds) {
+        var pe = new ProgramEnumerator(height, height, seeds, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var result = new ArrayList<ParseNode>();
+        while (pe.hasNext()) {
+            result.add(pe.next());
+        }
+        return result;
+    }
+
 }
@@ -8,6 +8,7 @@ import synth.core.Program;
 import synth.dsl.*;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.logging.*;
 
@@ -17,6 +18,7 @@ public class Mcmc1Synthesizer extends SynthesizerBase {
     private long seed = 2390845;
     private int maxProgramLength = 40;
     private int maxIterations = 10000000;
+    private int chains = 1;
 
     public Mcmc1Synthesizer() {
     }
@@ -25,6 +27,18 @@ public class Mcmc1Synthesizer extends SynthesizerBase {
         this.seed = seed;
     }
 
+    /**
+     * @param chains if more than 1, run that many tempered chains in parallel on
+     *               the common pool instead of the staged single chain
+     */
+    public Mcmc1Synthesizer(long seed, int chains) {
+        if (chains < 1) {
+            throw new IllegalArgumentException("Need at least one chain");
+        }
+        this.seed = seed;
+        this.chains = chains;
+    }
+
     /**
      * Synthesize a program f(x, y, z) based on examples
      *
@@ -48,6 +62,24 @@ public class Mcmc1Synthesizer extends SynthesizerBase {
         };
 
         try {
+            if (chains > 1) {
+                // The hot chains do the exploring the staged targets are for, so just go
+                // straight for a valid program
+                var xs = new ArrayList<Symbol[]>();
+                for (int i = 0; i < chains; ++i) {
+                    xs.add(optimizer.makeRandomized(maxProgramLength, McmcProgramOptimizer.GENERAL_SYMBOLS));
+                }
+                var result = optimizer.optimize(xs, McmcProgramOptimizer.GENERAL_SYMBOLS,
+                        () -> McmcProgramOptimizer.examplesCostFunction(examples), 10f, validate, maxIterations,
+                        0.25f, ForkJoinPool.commonPool(), rng);
+                if (!result.bestIsValid()) {
+                    logger.log(Level.INFO, "Best cost: {0} after {1} iterations",
+                            new Object[] { result.bestCost(), result.iterations() });
+                    return null;
+                }
+                return new Program(Semantics.makeParseTreeFromExprPostOrder(result.bestX()));
+            }
+
             var x = optimizer.makeRandomized(maxProgramLength, McmcProgramOptimizer.GENERAL_SYMBOLS);
             OptimizationResult<Symbol[]> result = null;
             for (int i = 3; i > 0; --i) {
@@ -65,6 +97,8 @@ public class Mcmc1Synthesizer extends SynthesizerBase {
             return new Program(Semantics.makeParseTreeFromExprPostOrder(result.bestX()));
         } catch (InterruptedException e) {
             logger.log(Level.INFO, "Interrupted during synthesize()");
+            // Let whoever interrupted us (or wraps us) see it too
+            Thread.currentThread().interrupt();
             return null;
         }
     }
@@ -2,160 +2,214 @@ package synth.algorithms;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.*;
 
 import synth.core.*;
 
+/**
+ * Runs several synthesizers on the same examples at once and keeps the smallest
+ * valid program any of them comes up with. Each strategy has its own deadline;
+ * as soon as a valid candidate at most targetSize nodes big turns up, the
+ * strategies still running are interrupted.
+ *
+ * Each strategy's synthesizer is only ever running one synthesize() at a time:
+ * synthesize() doesn't return until every strategy it started has stopped. So
+ * the deadlines only bound how long it takes if the synthesizers give up soon
+ * after being interrupted, as the ones in this package do.
+ */
 public class MultiStrategySynthesizer extends SynthesizerBase {
     private static Logger logger = Logger.getLogger(MultiStrategySynthesizer.class.getName());
 
-    LinkedBlockingDeque<ProgramCandidate> candidateFifo;
+    public static final long DEFAULT_DEADLINE_MS = 30000;
 
-    private static class ProgramCandidate {
-        private Strategy source;
-        private Program program;
+    // Strategies spend most of their time blocked or CPU bound for seconds at a
+    // time, so threads are cheap next to them; reuse them across calls, though,
+    // and don't let them keep the VM alive
+    private static final ExecutorService SHARED_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "MultiStrategySynthesizer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-        public Strategy source() {
-            return source;
-        }
+    public static final class Strategy {
+        private final String name;
+        private final Synthesizer synthesizer;
+        private final long deadlineMs;
 
-        public Program program() {
-            return program;
+        public Strategy(String name, Synthesizer synthesizer) {
+            this(name, synthesizer, DEFAULT_DEADLINE_MS);
         }
 
-        public ProgramCandidate(Strategy source, Program program) {
-            this.source = source;
-            this.program = program;
+        /**
+         * @param deadlineMs how long the strategy gets before it's interrupted and
+         *                   its result (if any) ignored
+         */
+        public Strategy(String name, Synthesizer synthesizer, long deadlineMs) {
+            if (deadlineMs <= 0) {
+                throw new IllegalArgumentException("deadlineMs must be positive");
+            }
+            this.name = name;
+            this.synthesizer = synthesizer;
+            this.deadlineMs = deadlineMs;
         }
 
-    }
-
-    private class Strategy {
-        private String name;
-        private Synthesizer synthesizer;
-        private LinkedBlockingDeque<ProgramCandidate> fifo;
-        private Thread thread;
-
         public String name() {
             return name;
         }
 
-        public Strategy(String name, Synthesizer synthesizer) {
-            this.name = name;
-            this.synthesizer = synthesizer;
-        }
-
-        public void start(List<Example> examples) {
-            assert (this.thread == null);
-            fifo = candidateFifo;
-            this.thread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    var program = synthesizer.synthesize(examples);
-                    if (program != null) {
-                        fifo.offer(new ProgramCandidate(Strategy.this, program));
-                    }
-                }
-            });
-            this.thread.start();
+        public Synthesizer synthesizer() {
+            return synthesizer;
         }
 
-        public boolean checkFinished() {
-            return thread != null && thread.isAlive();
+        public long deadlineMs() {
+            return deadlineMs;
         }
+    }
 
-        public void stop() {
-            try {
-                thread.interrupt();
-                thread.join();
-            } catch (InterruptedException e) {
-                // Not sure why this would happen, but it's probably fine anyway
-            }
-            thread = null;
+    /**
+     * One strategy's run within a synthesize() call.
+     */
+    private static class Run {
+        final Strategy strategy;
+        final CompletableFuture<Program> result = new CompletableFuture<>();
+        // Whoever sets this first owns the synthesizer: either the task, which
+        // then runs it, or the cleanup in synthesize(), which then knows it never
+        // will be
+        final AtomicBoolean claimed = new AtomicBoolean();
+        // Completes when the task is done with the synthesizer, which may be well
+        // after result if it was cancelled
+        final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        Future<?> task;
+
+        Run(Strategy strategy) {
+            this.strategy = strategy;
         }
     }
 
-    // If we have softCandidateCount candidates before softWaitMs, we interrupt the
-    // remaining synthesizers early.
-    private int softCandidateCount = 1;
-    private int softWaitMs = 5000;
+    private final ExecutorService executor;
+    private final int targetSize;
+    private final List<Strategy> strategies;
 
-    // If after softWaitMs we still don't have any candidates, we will wait up to
-    // hardWaitMs for at least one candidate. After that we interrupt threads and
-    // abort.
-    private int hardWaitMs = 30000;
+    public MultiStrategySynthesizer() {
+        this(SHARED_EXECUTOR, Integer.MAX_VALUE, List.of(
+                new Strategy("MCMC", new Mcmc1Synthesizer(293874)),
+                new Strategy("Voltron", new VoltronSynthesizer()),
+                new Strategy("Enum", new DFSEnum2Synthesizer())));
+    }
 
-    List<Strategy> strategies = List.of(
-            new Strategy("MCMC", new Mcmc1Synthesizer(293874)),
-            new Strategy("Voltron", new VoltronSynthesizer()),
-            new Strategy("Enum", new DFSEnum2Synthesizer()));
+    /**
+     * @param executor   where to run the strategies; it needs to be able to run
+     *                   all of them at once
+     * @param targetSize stop waiting for the other strategies once there's a valid
+     *                   candidate this small (in parse nodes);
+     *                   Integer.MAX_VALUE takes the first valid candidate
+     */
+    public MultiStrategySynthesizer(ExecutorService executor, int targetSize, List<Strategy> strategies) {
+        if (targetSize <= 0) {
+            throw new IllegalArgumentException("targetSize must be positive");
+        }
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one strategy");
+        }
+        this.executor = executor;
+        this.targetSize = targetSize;
+        this.strategies = List.copyOf(strategies);
+    }
 
     @Override
     public Program synthesize(List<Example> examples) {
-        // Avoid a potential hole where the join from the Strategy's stop() gets
-        // interrupted. Can't really happen I know, but whatever, might as well make a
-        // new one of these fresh whenever we synthesize(), it doesn't hurt
-        candidateFifo = new LinkedBlockingDeque<>();
-
-        ArrayList<Program> candidates = new ArrayList<>();
-        HashSet<Strategy> runningStrategies = new HashSet<>();
-
-        // Kick off our search...
+        var finished = new LinkedBlockingQueue<Run>();
+        var runs = new ArrayList<Run>();
         for (var strategy : strategies) {
-            strategy.start(examples);
-            runningStrategies.add(strategy);
+            var run = new Run(strategy);
+            run.result.orTimeout(strategy.deadlineMs(), TimeUnit.MILLISECONDS)
+                    .whenComplete((program, ex) -> finished.offer(run));
+            run.task = executor.submit(() -> {
+                if (!run.claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    run.result.complete(strategy.synthesizer().synthesize(examples));
+                } catch (Throwable t) {
+                    run.result.completeExceptionally(t);
+                } finally {
+                    run.stopped.complete(null);
+                }
+            });
+            runs.add(run);
         }
 
-        // And wait for the results to roll in!
-        long startNs = System.nanoTime();
-        long nextWaitMs = softWaitMs;
-        while (nextWaitMs > 0 && runningStrategies.size() > 0) {
-            ProgramCandidate nextCand = null;
-            try {
-                nextCand = candidateFifo.poll(nextWaitMs, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                return null;
-            }
-
-            if (nextCand != null) {
+        // Candidates here are almost always valid, so batch evaluation pays off
+        ExampleColumns columns = null;
+        Program best = null;
+        int bestCost = Integer.MAX_VALUE;
+        try {
+            for (int remaining = runs.size(); remaining > 0 && (best == null || bestCost > targetSize); --remaining) {
+                var run = finished.take();
+                Program program;
+                try {
+                    program = run.result.getNow(null);
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof TimeoutException) {
+                        logger.log(Level.INFO, "{0} missed its deadline", run.strategy.name());
+                        run.task.cancel(true);
+                    } else {
+                        logger.log(Level.WARNING, run.strategy.name() + " failed", e.getCause());
+                    }
+                    continue;
+                }
+                if (program == null) {
+                    continue;
+                }
+                int cost = sizeCost(program.getRoot());
                 logger.log(Level.INFO, "Candidate received from {0}, size {1}",
-                        new Object[] { nextCand.source().name(), sizeCost(nextCand.program().getRoot()) });
-                candidates.add(nextCand.program());
+                        new Object[] { run.strategy.name(), cost });
+                if (columns == null) {
+                    columns = ExampleColumns.of(examples);
+                }
+                if (!validate(columns, program.getRoot())) {
+                    logger.log(Level.WARNING, "Candidate from {0} is invalid", run.strategy.name());
+                    continue;
+                }
+                if (cost < bestCost) {
+                    best = program;
+                    bestCost = cost;
+                }
             }
-            if (candidates.size() >= softCandidateCount) {
-                break;
+        } catch (InterruptedException e) {
+            logger.log(Level.INFO, "Interrupted during synthesize()");
+            Thread.currentThread().interrupt();
+            best = null;
+        } finally {
+            // Wait for the system to come to a complete stop, so the synthesizers
+            // are free for the next call
+            for (var run : runs) {
+                run.task.cancel(true);
             }
-
-            long nowNs = System.nanoTime();
-            long msSinceStart = (nowNs - startNs) / 1000000;
-            nextWaitMs = ((candidates.size() > 0) ? softWaitMs : hardWaitMs) - msSinceStart;
-
-            for (var strategy : List.copyOf(runningStrategies)) {
-                if (strategy.checkFinished()) {
-                    strategy.stop();
-                    runningStrategies.remove(strategy);
+            for (var run : runs) {
+                if (!run.claimed.compareAndSet(false, true)) {
+                    joinUninterruptibly(run.stopped);
                 }
             }
         }
+        return best;
+    }
 
-        // Wait for the system to come to a complete stop
-        for (var strategy : runningStrategies) {
-            strategy.stop();
-        }
-
-        if (candidates.size() > 0) {
-            int bestCost = Integer.MAX_VALUE;
-            Program bestCand = null;
-            for (var cand : candidates) {
-                int candCost = sizeCost(cand.getRoot());
-                if (candCost < bestCost) {
-                    bestCand = cand;
-                }
+    private static void joinUninterruptibly(CompletableFuture<Void> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                break;
             }
-            return bestCand;
-        } else {
-            // No candidates :(
-            return null;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
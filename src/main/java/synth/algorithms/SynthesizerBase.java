@@ -2,10 +2,12 @@ package synth.algorithms;
 
 import synth.core.Environment;
 import synth.core.Example;
+import synth.core.ExampleColumns;
 import synth.core.ParseNode;
 import synth.core.Program;
 import synth.core.Synthesizer;
 import synth.dsl.*;
+import synth.util.Metrics;
 
 import java.util.*;
 import java.util.function.*;
@@ -16,8 +18,42 @@ public abstract class SynthesizerBase implements Synthesizer {
         return validate(examples, env -> Semantics.evaluate(program, env));
     }
 
+    // Compiling a program costs a few hundred microseconds and the generated code
+    // only reaches JIT speed after a few thousand calls, so it's only worth it
+    // for candidates that survive the first examples and still have a lot of
+    // examples left to check. Interpreting is ~2x slower per evaluation at steady
+    // state, which puts break-even somewhere around 10k evaluations.
+    static final int COMPILE_AFTER_EXAMPLES = 16;
+    static final int COMPILE_MIN_REMAINING = 10000;
+
     protected static boolean validate(List<Example> examples, ParseNode program) {
-        return validate(examples, env -> Semantics.evaluate(program, env));
+        int n = examples.size();
+        if (n - COMPILE_AFTER_EXAMPLES < COMPILE_MIN_REMAINING) {
+            return validate(examples, env -> Semantics.evaluate(program, env));
+        }
+        if (!check(examples.subList(0, COMPILE_AFTER_EXAMPLES), env -> Semantics.evaluate(program, env))) {
+            return recordValidation(false);
+        }
+        var compiled = Semantics.compileExpr(program);
+        for (Example ex : examples.subList(COMPILE_AFTER_EXAMPLES, n)) {
+            if (compiled.eval(ex.input()) != ex.output()) {
+                return recordValidation(false);
+            }
+        }
+        return recordValidation(true);
+    }
+
+    /**
+     * Validate using the batch evaluator. This always evaluates the program over
+     * every example, so it's the better choice for candidates which are expected
+     * to be mostly correct (e.g. the result of a solver or optimizer), and the
+     * worse one for enumerated candidates that mostly fail on the first example.
+     */
+    protected static boolean validate(ExampleColumns examples, ParseNode program) {
+        var outputs = examples.outputs();
+        var values = new int[examples.size()];
+        Semantics.evaluateBatch(program, examples, values);
+        return recordValidation(Arrays.equals(values, outputs));
     }
 
     protected static boolean validate(List<Example> examples, List<Symbol> program) {
@@ -25,6 +61,27 @@ public abstract class SynthesizerBase implements Synthesizer {
     }
 
     protected static boolean validate(List<Example> examples, Function<Environment, Integer> evaluator) {
+        return recordValidation(check(examples, evaluator));
+    }
+
+    /**
+     * Count a validated candidate in the metrics. Only for the occasional
+     * candidate; loops over many of them should count locally and use
+     * recordValidations().
+     * 
+     * @return valid
+     */
+    static boolean recordValidation(boolean valid) {
+        recordValidations(1, valid ? 1 : 0);
+        return valid;
+    }
+
+    static void recordValidations(long candidates, long accepted) {
+        Metrics.count("validate.candidates", candidates);
+        Metrics.count("validate.accepted", accepted);
+    }
+
+    private static boolean check(List<Example> examples, Function<Environment, Integer> evaluator) {
         // Run the program in each interpreter env representing a particular example,
         // and check whether the output is as expected
         for (Example ex : examples) {
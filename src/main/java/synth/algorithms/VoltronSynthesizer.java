@@ -2,34 +2,91 @@ package synth.algorithms;
 
 import synth.algorithms.ast.*;
 import synth.algorithms.classify.*;
+import synth.algorithms.enumeration.BottomUpEnumerator;
 import synth.algorithms.enumeration.ProgramEnumerator;
 import synth.algorithms.lia.*;
 import synth.algorithms.mcmc.*;
 import synth.algorithms.representation.ExprRepresentation;
 import synth.algorithms.rng.Xoshiro256SS;
-import synth.core.Environment;
 import synth.core.Example;
-import synth.core.ParseNode;
 import synth.core.Program;
-import synth.dsl.*;
+import synth.util.Metrics;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 public class VoltronSynthesizer extends SynthesizerBase {
     private static Logger logger = Logger.getLogger(VoltronSynthesizer.class.getName());
 
     private Xoshiro256SS rng = new Xoshiro256SS(8383);
-    private LinearSolver linSolv = new ORToolsCPLinearSolver(rng.nextSubsequence());
+    private LinearSolver linSolv;
+    private boolean greedyDecisionTree = true;
+    private int decisionTreeChains = 1;
 
-    private Collection<Discriminator> generateDiscriminators(Set<Environment> allInputs,
+    public VoltronSynthesizer() {
+        this(true, 1);
+    }
+
+    /**
+     * @param decisionTreeChains if more than 1, search for the decision tree with
+     *                           that many tempered chains in parallel on the
+     *                           common pool
+     */
+    public VoltronSynthesizer(int decisionTreeChains) {
+        this(true, decisionTreeChains);
+    }
+
+    /**
+     * @param greedyDecisionTree try building the decision tree with
+     *                           DecisionTreeBuilder first, and only search for
+     *                           one with MCMC if that fails
+     * @param decisionTreeChains see VoltronSynthesizer(int)
+     */
+    public VoltronSynthesizer(boolean greedyDecisionTree, int decisionTreeChains) {
+        this(greedyDecisionTree, decisionTreeChains, 1);
+    }
+
+    /**
+     * @param linearSolverSeeds if more than 1, look for that many partial
+     *                          solutions at once, on threads of this
+     *                          synthesizer's own
+     */
+    public VoltronSynthesizer(boolean greedyDecisionTree, int decisionTreeChains, int linearSolverSeeds) {
+        if (decisionTreeChains < 1) {
+            throw new IllegalArgumentException("Need at least one chain");
+        }
+        this.greedyDecisionTree = greedyDecisionTree;
+        this.decisionTreeChains = decisionTreeChains;
+        this.linSolv = new ORToolsCPLinearSolver(rng.nextSubsequence(),
+                linearSolverSeeds > 1 ? makeSolverExecutor(linearSolverSeeds) : null, linearSolverSeeds);
+    }
+
+    /**
+     * The solves block in native code for up to their whole timeout, so they get
+     * a thread each rather than tying up (and being short of) the common pool's
+     * workers. Idle threads go away, so a synthesizer nobody uses any more
+     * doesn't keep any.
+     */
+    private static ExecutorService makeSolverExecutor(int threads) {
+        var executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    var thread = new Thread(r, "VoltronSynthesizer linear solver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private Collection<Discriminator> generateDiscriminators(InputUniverse universe,
             Collection<PartialSolution> partialSolutions)
             throws InterruptedException {
         var suggestions = new ArrayList<Discriminator>();
         nextSolution: for (var sol : partialSolutions) {
             var classification = sol.application();
 
-            var positive = generateDiscriminatorsEnum(allInputs, classification);
+            var positive = generateDiscriminatorsEnum(universe, classification);
             // Check if one of our generated discriminators happens to be perfect
             for (var d : positive) {
                 if (d.classification().equals(classification)) {
@@ -40,7 +97,7 @@ public class VoltronSynthesizer extends SynthesizerBase {
             }
             // Try generating the discriminator in the negative, in case that synthesis is
             // easier and generates a better or at least different partition
-            var negative = generateDiscriminatorsEnum(allInputs, classification.inverted());
+            var negative = generateDiscriminatorsEnum(universe, classification.inverted());
             // Again, check if one of our generated discriminators happens to be perfect
             for (var d : negative) {
                 if (d.classification().equalsInverted(classification)) {
@@ -71,7 +128,7 @@ public class VoltronSynthesizer extends SynthesizerBase {
 
             if (!foundPositive || !foundNegative) {
                 var cond = Asts.optimizeBoolAst(trialDiscrim.condition().reifyAsBoolAst());
-                var optimized = new Discriminator(cond, allInputs);
+                var optimized = new Discriminator(cond, universe);
                 assert optimized.classification().equals(trialDiscrim.classification());
                 if (!foundPositive) {
                     minimal.add(optimized);
@@ -79,7 +136,7 @@ public class VoltronSynthesizer extends SynthesizerBase {
                 if (!foundNegative) {
                     var inverted = new Discriminator(
                             cond instanceof NotNode ? (BoolNode) cond.child(0) : new NotNode(cond),
-                            allInputs);
+                            universe);
                     assert inverted.classification().equalsInverted(optimized.classification());
                     minimal.add(inverted);
                 }
@@ -90,12 +147,13 @@ public class VoltronSynthesizer extends SynthesizerBase {
     }
 
     private class QuadrantEvaluation {
-        Classification desiredClassification;
+        InputUniverse universe;
+        long[] desired;
         private boolean perfect;
         private boolean overApproximate;
         private boolean underApproximate;
-        private HashSet<Environment> positiveErrors = new HashSet<>();
-        private HashSet<Environment> negativeErrors = new HashSet<>();
+        private long[] positiveErrors;
+        private long[] negativeErrors;
 
         public boolean isPerfect() {
             return perfect;
@@ -109,119 +167,107 @@ public class VoltronSynthesizer extends SynthesizerBase {
             return underApproximate;
         }
 
-        public Set<Environment> positiveErrors() {
+        /**
+         * The inputs the condition includes but shouldn't, as a bit vector over
+         * the universe; overwritten by the next evaluate()
+         */
+        public long[] positiveErrors() {
             return positiveErrors;
         }
 
-        public Set<Environment> negativeErrors() {
+        /**
+         * The inputs the condition excludes but shouldn't, like positiveErrors()
+         */
+        public long[] negativeErrors() {
             return negativeErrors;
         }
 
         public QuadrantEvaluation(Classification desiredClassification) {
-            this.desiredClassification = desiredClassification;
+            this.universe = desiredClassification.universe();
+            this.desired = desiredClassification.bits();
+            this.positiveErrors = new long[desired.length];
+            this.negativeErrors = new long[desired.length];
         }
 
-        public boolean evaluate(ParseNode condition) {
+        /**
+         * @param conditionBits the condition's value for each input of the universe,
+         *                      as produced by BottomUpEnumerator.lastBoolValues()
+         */
+        public boolean evaluate(long[] conditionBits) {
             perfect = false;
             overApproximate = false;
             underApproximate = false;
-            positiveErrors.clear();
-            negativeErrors.clear();
             boolean falsePositive = false, truePositive = false, falseNegative = false, trueNegative = false;
-            var e = desiredClassification.included().iterator();
-            var f = desiredClassification.excluded().iterator();
-            while (e.hasNext() || f.hasNext()) {
-                if (e.hasNext()) {
-                    var env = e.next();
-                    if (Semantics.evaluateBool(condition, env)) {
-                        truePositive = true;
-                    } else {
-                        if (falsePositive) {
-                            return false;
-                        }
-                        negativeErrors.add(env);
-                        falseNegative = true;
-                    }
-                } else if (!truePositive) {
-                    // If it hasn't demonstrated truePositive by now it can't
-                    return false;
-                }
-                if (f.hasNext()) {
-                    var env = f.next();
-                    if (Semantics.evaluateBool(condition, env)) {
-                        if (falseNegative) {
-                            return false;
-                        }
-                        positiveErrors.add(env);
-                        falsePositive = true;
-                    } else {
-                        trueNegative = true;
-                    }
-                } else if (!trueNegative) {
-                    // If it hasn't demonstrated trueNegative by now it can't
-                    return false;
-                }
+            int last = desired.length - 1;
+            for (int w = 0; w <= last; ++w) {
+                long c = conditionBits[w], d = desired[w];
+                long mask = (w == last) ? universe.lastWordMask() : -1L;
+                positiveErrors[w] = c & ~d;
+                negativeErrors[w] = ~c & d;
+                truePositive |= (c & d) != 0;
+                falsePositive |= positiveErrors[w] != 0;
+                falseNegative |= negativeErrors[w] != 0;
+                trueNegative |= (~c & ~d & mask) != 0;
+            }
+            if (!(truePositive && trueNegative && !(falsePositive && falseNegative))) {
+                // It's trivially always true/false, or errs in both directions
+                return false;
             }
             perfect = !falsePositive && !falseNegative;
             overApproximate = !falseNegative;
             underApproximate = !falsePositive;
-            return truePositive && trueNegative && !(falsePositive && falseNegative);
+            return true;
         }
     }
 
-    private Collection<Discriminator> generateDiscriminatorsEnum(Set<Environment> allInputs,
+    private Collection<Discriminator> generateDiscriminatorsEnum(InputUniverse universe,
             Classification desiredClassification) throws InterruptedException {
         var discriminators = new ArrayList<Discriminator>();
-        var overApproximationErrors = new HashSet<HashSet<Environment>>();
-        var underApproximationErrors = new HashSet<HashSet<Environment>>();
+        // Only the minimal error sets seen so far, to reject anything that errs on
+        // a superset of one of them
+        var overApproximationErrors = new SubsetIndex(universe.words());
+        var underApproximationErrors = new SubsetIndex(universe.words());
         var qe = new QuadrantEvaluation(desiredClassification);
-        for (int h = 0; h <= 2; ++h) {
-            ProgramEnumerator pe = new ProgramEnumerator(h, h, ProgramEnumerator.B_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
-                    ProgramEnumerator.B_SYMBOLS);
-            nextCand: while (pe.hasNext()) {
-                var cond = pe.next();
-                if (!qe.evaluate(cond)) {
+        // Bottom-up enumeration only produces one condition per distinct
+        // classification of the inputs, so there are no duplicates to filter here
+        var be = new BottomUpEnumerator(2, universe.columns(), ProgramEnumerator.B_SYMBOLS,
+                ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.B_SYMBOLS);
+        try {
+            nextCand: while (be.hasNext()) {
+                var cond = be.next();
+                if (!qe.evaluate(be.lastBoolValues())) {
                     // It's trivially always true/false, or otherwise deficient
                     continue;
                 }
                 if (qe.isPerfect()) {
                     // This one is perfect, return just it and forget everything else
-                    return List.of(new Discriminator(Asts.makeBoolAstFromParse(cond), allInputs));
+                    return List.of(new Discriminator(Asts.makeBoolAstFromParse(cond),
+                            Classification.makeFromBits(universe, be.lastBoolValues())));
                 }
                 assert qe.isOverApproximate() || qe.isUnderApproximate();
                 if (qe.isOverApproximate()) {
-                    for (var oe : List.copyOf(overApproximationErrors)) {
-                        if (qe.positiveErrors().size() >= oe.size()) {
-                            if (qe.positiveErrors().containsAll(oe)) {
-                                // Already have one that's at least as good as this
-                                continue nextCand;
-                            }
-                        } else {
-                            if (oe.containsAll(qe.positiveErrors())) {
-                                // This is strictly better than the one we already have, replace that with this
-                                overApproximationErrors.remove(oe);
-                            }
-                        }
+                    if (overApproximationErrors.containsSubsetOf(qe.positiveErrors())) {
+                        // Already have one that's at least as good as this
+                        continue nextCand;
                     }
-                    overApproximationErrors.add(new HashSet<>(qe.positiveErrors()));
+                    overApproximationErrors.add(qe.positiveErrors());
                 } else if (qe.isUnderApproximate()) {
-                    for (var ue : underApproximationErrors) {
-                        if (qe.negativeErrors().size() >= ue.size()) {
-                            if (qe.negativeErrors().containsAll(ue)) {
-                                // Already have one that's at least as good as this
-                                continue nextCand;
-                            }
-                        } else {
-                            if (ue.containsAll(qe.negativeErrors())) {
-                                // This is strictly better than the one we already have, replace that with this
-                                overApproximationErrors.remove(ue);
-                            }
-                        }
+                    if (underApproximationErrors.containsSubsetOf(qe.negativeErrors())) {
+                        // Already have one that's at least as good as this
+                        continue nextCand;
                     }
-                    underApproximationErrors.add(new HashSet<>(qe.negativeErrors()));
+                    underApproximationErrors.add(qe.negativeErrors());
                 }
-                discriminators.add(new Discriminator(Asts.makeBoolAstFromParse(cond), allInputs));
+                discriminators.add(new Discriminator(Asts.makeBoolAstFromParse(cond),
+                        Classification.makeFromBits(universe, be.lastBoolValues())));
             }
+            if (Thread.interrupted()) {
+                // The enumeration was cut short
+                throw new InterruptedException(
+                        "Thread interrupted during VoltronSynthesizer::generateDiscriminatorsEnum()");
+            }
+        } finally {
+            be.flushMetrics();
         }
 
         return discriminators;
@@ -232,16 +278,27 @@ public class VoltronSynthesizer extends SynthesizerBase {
             throws InterruptedException {
         for (var ps : partialSolutions) {
             for (var ex : allExamples) {
-                if (ps.application().included().contains(ex.input())) {
+                if (ps.application().includes(ex.input())) {
                     assert ps.evalExpr(ex.input()) == ex.output();
-                } else if (ps.application().excluded().contains(ex.input())) {
+                } else if (ps.application().excludes(ex.input())) {
                     assert ps.evalExpr(ex.input()) != ex.output();
                 }
             }
         }
+        if (greedyDecisionTree) {
+            var tree = new DecisionTreeBuilder(partialSolutions, discriminators).build();
+            if (tree != null) {
+                return tree;
+            }
+            logger.log(Level.INFO, "Greedy decision tree failed, falling back to MCMC");
+            Metrics.count("voltron.decisionTree.mcmcFallbacks");
+        }
         McmcDecisionTreeOptimizer decisionTreeOptimizer = new McmcDecisionTreeOptimizer(rng.nextSubsequence(),
                 partialSolutions.size(), partialSolutions, discriminators, allExamples);
-        var res = decisionTreeOptimizer.optimize(10000000);
+        var res = decisionTreeChains > 1
+                ? decisionTreeOptimizer.optimize(10000000, decisionTreeChains, 0.25f,
+                        ForkJoinPool.commonPool(), rng)
+                : decisionTreeOptimizer.optimize(10000000);
         if (!res.bestIsValid()) {
             logger.log(Level.WARNING, "Unable to produce valid decision tree");
             return null;
@@ -251,24 +308,32 @@ public class VoltronSynthesizer extends SynthesizerBase {
 
     private ExprNode synthesizeAst(List<Example> examples) throws InterruptedException {
         var allExamples = Set.copyOf(examples);
-        var allInputs = Set.of(examples.stream().map(ex -> ex.input()).toArray(Environment[]::new));
+        var universe = InputUniverse.ofExamples(examples);
 
+        long phaseStart = Metrics.startTimer();
         var partialSolutions = linSolv.computeSolutionSets(examples);
+        Metrics.stopTimer("voltron.linearSolve", phaseStart);
         if (partialSolutions == null) {
             return null;
         }
+        Metrics.count("voltron.partialSolutions", partialSolutions.size());
         // Check if any of our solution sets cover the whole space, and early-out if so!
         for (var sol : partialSolutions) {
-            if (sol.application().excluded().isEmpty()) {
+            if (sol.application().excludedCount() == 0) {
                 // Trivial solution!
                 return sol.solution().reifyAsExprAst();
             }
         }
-        var discriminators = generateDiscriminators(allInputs, partialSolutions);
+        phaseStart = Metrics.startTimer();
+        var discriminators = generateDiscriminators(universe, partialSolutions);
+        Metrics.stopTimer("voltron.discriminators", phaseStart);
+        Metrics.count("voltron.discriminators", discriminators.size());
         if (discriminators.size() == 0) {
             return null;
         }
+        phaseStart = Metrics.startTimer();
         var decisionTree = buildDecisionTreeAstFromPartialSolutions(allExamples, partialSolutions, discriminators);
+        Metrics.stopTimer("voltron.decisionTree", phaseStart);
         if (decisionTree == null) {
             return null;
         }
@@ -291,6 +356,8 @@ public class VoltronSynthesizer extends SynthesizerBase {
             return new Program(ast.reify());
         } catch (InterruptedException e) {
             logger.log(Level.INFO, "Interrupted during synthesize()");
+            // Let whoever interrupted us (or wraps us) see it too
+            Thread.currentThread().interrupt();
             return null;
         }
     }
@@ -60,12 +60,12 @@ public abstract class AstNode {
         } else if (size < 2) {
             return childrenArray[fromIndex].reify();
         } else if (size == 2) {
-            return new ParseNode(opSym, List.of(child(fromIndex).reify(), child(fromIndex + 1).reify()));
+            return ParseNode.intern(opSym, child(fromIndex).reify(), child(fromIndex + 1).reify());
         } else {
             // Round towards making the list left heavy for no particular reason
             int split = fromIndex + (size + 1) / 2;
-            return new ParseNode(opSym, List.of(makeReifiedAssociativeBinaryOperator(opSym, fromIndex, split),
-                    makeReifiedAssociativeBinaryOperator(opSym, split, toIndex)));
+            return ParseNode.intern(opSym, makeReifiedAssociativeBinaryOperator(opSym, fromIndex, split),
+                    makeReifiedAssociativeBinaryOperator(opSym, split, toIndex));
         }
     }
 
@@ -2,7 +2,9 @@ package synth.algorithms.ast;
 
 import synth.algorithms.representation.BoolRepresentation;
 import synth.core.Environment;
+import synth.core.ExampleColumns;
 import synth.core.ParseNode;
+import synth.dsl.Semantics;
 
 public abstract class BoolNode extends AstNode implements BoolRepresentation {
     protected BoolNode(AstNode... children) {
@@ -20,4 +22,9 @@ public abstract class BoolNode extends AstNode implements BoolRepresentation {
     public ParseNode reifyAsBoolParse() {
         return reify();
     }
+
+    @Override
+    public void evalBoolBatch(ExampleColumns inputs, boolean[] out) {
+        Semantics.evaluateBoolBatch(reify(), inputs, out);
+    }
 }
@@ -1,6 +1,6 @@
 package synth.algorithms.ast;
 
-import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import synth.core.Environment;
 import synth.core.ParseNode;
@@ -14,13 +14,13 @@ public class ExprConstNode extends ExprNode {
     public static final ParseNode REIFIED_1 = ParseNode.CONST_1;
     public static final ParseNode REIFIED_2 = ParseNode.CONST_2;
     public static final ParseNode REIFIED_3 = ParseNode.CONST_3;
-    public static final ParseNode REIFIED_4 = new ParseNode(Symbol.Add, List.of(REIFIED_2, REIFIED_2));
-    public static final ParseNode REIFIED_5 = new ParseNode(Symbol.Add, List.of(REIFIED_2, REIFIED_3));
-    public static final ParseNode REIFIED_6 = new ParseNode(Symbol.Add, List.of(REIFIED_3, REIFIED_3));
+    public static final ParseNode REIFIED_4 = ParseNode.intern(Symbol.Add, REIFIED_2, REIFIED_2);
+    public static final ParseNode REIFIED_5 = ParseNode.intern(Symbol.Add, REIFIED_2, REIFIED_3);
+    public static final ParseNode REIFIED_6 = ParseNode.intern(Symbol.Add, REIFIED_3, REIFIED_3);
 
     private static final int REIFY_BASE = 3;
     private static final int REIFY_SMALL_VALUE_MAX = 6;
-    private static final HashMap<Integer, ParseNode> reifiedCache = new HashMap<>();
+    private static final ConcurrentHashMap<Integer, ParseNode> reifiedCache = new ConcurrentHashMap<>();
 
     private final int value;
 
@@ -52,11 +52,10 @@ public class ExprConstNode extends ExprNode {
             int modVal = value % REIFY_BASE;
             assert divVal > 0;
             if (modVal == 0) {
-                return new ParseNode(Symbol.Multiply, List.of(
-                        reifySmallValue(REIFY_BASE), computeReified(divVal)));
+                return ParseNode.intern(Symbol.Multiply, reifySmallValue(REIFY_BASE), computeReified(divVal));
             }
-            reified = new ParseNode(Symbol.Add, List.of(reifySmallValue(modVal),
-                    new ParseNode(Symbol.Multiply, List.of(reifySmallValue(REIFY_BASE), computeReified(divVal)))));
+            reified = ParseNode.intern(Symbol.Add, reifySmallValue(modVal),
+                    ParseNode.intern(Symbol.Multiply, reifySmallValue(REIFY_BASE), computeReified(divVal)));
             reifiedCache.put(value, reified);
         }
         return reified;
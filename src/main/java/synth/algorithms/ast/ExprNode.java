@@ -2,7 +2,9 @@ package synth.algorithms.ast;
 
 import synth.algorithms.representation.ExprRepresentation;
 import synth.core.Environment;
+import synth.core.ExampleColumns;
 import synth.core.ParseNode;
+import synth.dsl.Semantics;
 
 public abstract class ExprNode extends AstNode implements ExprRepresentation {
     public ExprNode(AstNode... children) {
@@ -20,4 +22,9 @@ public abstract class ExprNode extends AstNode implements ExprRepresentation {
     public ParseNode reifyAsExprParse() {
         return reify();
     }
+
+    @Override
+    public void evalExprBatch(ExampleColumns inputs, int[] out) {
+        Semantics.evaluateBatch(reify(), inputs, out);
+    }
 }
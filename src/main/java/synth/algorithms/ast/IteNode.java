@@ -1,7 +1,5 @@
 package synth.algorithms.ast;
 
-import java.util.*;
-
 import synth.core.Environment;
 import synth.core.ParseNode;
 import synth.dsl.*;
@@ -22,7 +20,7 @@ public class IteNode extends ExprNode {
     }
 
     protected ParseNode makeReified() {
-        return new ParseNode(Symbol.Ite, List.of(child(0).reify(), child(1).reify(), child(2).reify()));
+        return ParseNode.intern(Symbol.Ite, child(0).reify(), child(1).reify(), child(2).reify());
     }
 
     public AstNode withChildren(AstNode... children) {
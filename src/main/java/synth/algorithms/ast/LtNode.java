@@ -1,7 +1,5 @@
 package synth.algorithms.ast;
 
-import java.util.*;
-
 import synth.core.Environment;
 import synth.core.ParseNode;
 import synth.dsl.*;
@@ -17,7 +15,7 @@ public class LtNode extends BoolNode {
     }
 
     protected ParseNode makeReified() {
-        return new ParseNode(Symbol.Lt, List.of(child(0).reify(), child(1).reify()));
+        return ParseNode.intern(Symbol.Lt, child(0).reify(), child(1).reify());
     }
 
     public AstNode withChildren(AstNode... children) {
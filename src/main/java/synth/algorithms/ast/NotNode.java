@@ -1,7 +1,5 @@
 package synth.algorithms.ast;
 
-import java.util.*;
-
 import synth.core.Environment;
 import synth.core.ParseNode;
 import synth.dsl.*;
@@ -17,7 +15,7 @@ public class NotNode extends BoolNode {
     }
 
     protected ParseNode makeReified() {
-        return new ParseNode(Symbol.Not, List.of(child(0).reify()));
+        return ParseNode.intern(Symbol.Not, child(0).reify());
     }
 
     public AstNode withChildren(AstNode... children) {
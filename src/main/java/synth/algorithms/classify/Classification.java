@@ -6,57 +6,162 @@ import java.util.*;
 import synth.algorithms.representation.*;
 import synth.core.*;
 
+/**
+ * A partition of an InputUniverse into included and excluded inputs, stored as
+ * a bit vector (bit i set when universe().input(i) is included). Comparisons
+ * between classifications over the same universe are word-wise; the
+ * included()/excluded() sets are only built if somebody asks for them.
+ */
 public class Classification {
-    private HashSet<Environment> included;
-    private HashSet<Environment> excluded;
+    private InputUniverse universe;
+    private long[] bits;
+    private Set<Environment> includedCache;
+    private Set<Environment> excludedCache;
     private WeakReference<Classification> invertedCache;
     private int cachedHashCode;
 
     public static Classification makeFromExamples(ExprRepresentation expr, Collection<Example> examples) {
-        var included = new HashSet<Environment>(examples.size());
-        var excluded = new HashSet<Environment>(examples.size());
-        for (var ex : examples) {
-            if (expr.evalExpr(ex.input()) == ex.output()) {
-                included.add(ex.input());
-            } else {
-                excluded.add(ex.input());
+        return makeFromExamples(expr, ExampleColumns.of(examples), InputUniverse.ofExamples(examples));
+    }
+
+    /**
+     * Building the universe is the expensive part of classifying a big example
+     * set, so callers classifying the same examples repeatedly should build the
+     * columns and universe once and use this.
+     */
+    public static Classification makeFromExamples(ExprRepresentation expr, ExampleColumns columns,
+            InputUniverse universe) {
+        var values = new int[columns.size()];
+        expr.evalExprBatch(columns, values);
+        return makeFromValues(values, columns, universe);
+    }
+
+    /**
+     * For callers that already have an expression's values on columns: the
+     * inputs where values matches the expected outputs are included.
+     */
+    public static Classification makeFromValues(int[] values, ExampleColumns columns, InputUniverse universe) {
+        int n = columns.size();
+        var outputs = columns.outputs();
+        var bits = new long[universe.words()];
+        for (int i = 0; i < n; ++i) {
+            if (values[i] == outputs[i]) {
+                int index = universe.indexOf(columns.input(i));
+                bits[index >>> 6] |= 1L << index;
             }
         }
 
-        return new Classification(included, excluded, null);
+        return new Classification(universe, bits, null);
     }
 
     public static Classification makeFromCondition(BoolRepresentation condition, Collection<Environment> examples) {
-        var included = new HashSet<Environment>(examples.size());
-        var excluded = new HashSet<Environment>(examples.size());
-        for (var ex : examples) {
-            if (condition.evalBool(ex)) {
-                included.add(ex);
-            } else {
-                excluded.add(ex);
+        return makeFromCondition(condition, InputUniverse.of(examples));
+    }
+
+    public static Classification makeFromCondition(BoolRepresentation condition, InputUniverse universe) {
+        int n = universe.size();
+        var values = new boolean[n];
+        condition.evalBoolBatch(universe.columns(), values);
+        var bits = new long[universe.words()];
+        for (int i = 0; i < n; ++i) {
+            if (values[i]) {
+                bits[i >>> 6] |= 1L << i;
             }
         }
 
-        return new Classification(included, excluded, null);
+        return new Classification(universe, bits, null);
     }
 
-    protected Classification(HashSet<Environment> included, HashSet<Environment> excluded, Classification inverted) {
+    /**
+     * @param bits bit i set when universe.input(i) is included; the array is
+     *             adopted, not copied
+     */
+    public static Classification makeFromBits(InputUniverse universe, long[] bits) {
+        if (bits.length != universe.words()) {
+            throw new IllegalArgumentException("bits must have exactly universe.words() elements");
+        }
+        if (bits.length > 0 && (bits[bits.length - 1] & ~universe.lastWordMask()) != 0) {
+            throw new IllegalArgumentException("bits past the end of the universe must be clear");
+        }
+        return new Classification(universe, bits, null);
+    }
+
+    protected Classification(InputUniverse universe, long[] bits, Classification inverted) {
         // An empty classification will surely lead to undefined behaviour...
-        //assert !(included.isEmpty() && excluded.isEmpty());
-        this.included = included;
-        this.excluded = excluded;
-        this.cachedHashCode = included.hashCode() * 1093742879 + excluded.hashCode();
+        //assert universe.size() > 0;
+        this.universe = universe;
+        this.bits = bits;
+        this.cachedHashCode = universe.hashCode() * 1093742879 + Arrays.hashCode(bits);
         if (inverted != null) {
             this.invertedCache = new WeakReference<Classification>(inverted);
         }
     }
 
+    public InputUniverse universe() {
+        return universe;
+    }
+
+    /**
+     * The included set as a bit vector over universe(). Don't modify it.
+     */
+    public long[] bits() {
+        return bits;
+    }
+
+    public boolean includes(int index) {
+        return ((bits[index >>> 6] >>> index) & 1) != 0;
+    }
+
+    /**
+     * @return whether env is part of the universe and included
+     */
+    public boolean includes(Environment env) {
+        int index = universe.indexOf(env);
+        return index >= 0 && includes(index);
+    }
+
+    /**
+     * @return whether env is part of the universe and excluded
+     */
+    public boolean excludes(Environment env) {
+        int index = universe.indexOf(env);
+        return index >= 0 && !includes(index);
+    }
+
+    public int includedCount() {
+        int count = 0;
+        for (var w : bits) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    public int excludedCount() {
+        return universe.size() - includedCount();
+    }
+
     public Set<Environment> included() {
-        return included;
+        if (includedCache == null) {
+            includedCache = materialize(true);
+        }
+        return includedCache;
     }
 
     public Set<Environment> excluded() {
-        return excluded;
+        if (excludedCache == null) {
+            excludedCache = materialize(false);
+        }
+        return excludedCache;
+    }
+
+    private Set<Environment> materialize(boolean value) {
+        var set = new HashSet<Environment>();
+        for (int i = 0; i < universe.size(); ++i) {
+            if (includes(i) == value) {
+                set.add(universe.input(i));
+            }
+        }
+        return Collections.unmodifiableSet(set);
     }
 
     public Classification inverted() {
@@ -64,11 +169,37 @@ public class Classification {
         if (cached != null) {
             return cached;
         }
-        cached = new Classification(excluded, included, this);
+        var invertedBits = new long[bits.length];
+        for (int w = 0; w < bits.length; ++w) {
+            invertedBits[w] = ~bits[w];
+        }
+        if (bits.length > 0) {
+            invertedBits[bits.length - 1] &= universe.lastWordMask();
+        }
+        cached = new Classification(universe, invertedBits, this);
         invertedCache = new WeakReference<Classification>(cached);
         return cached;
     }
 
+    /**
+     * @return whether everything this includes is also included by other
+     */
+    public boolean isSubsetOf(Classification other) {
+        requireSameUniverse(other);
+        for (int w = 0; w < bits.length; ++w) {
+            if ((bits[w] & ~other.bits[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void requireSameUniverse(Classification other) {
+        if (!universe.equals(other.universe)) {
+            throw new IllegalArgumentException("Classifications are over different inputs");
+        }
+    }
+
     @Override
     public int hashCode() {
         return cachedHashCode;
@@ -86,13 +217,22 @@ public class Classification {
         if (cObj.cachedHashCode != cachedHashCode) {
             return false;
         }
-        return Objects.equals(cObj.included, included) && Objects.equals(cObj.excluded, excluded);
+        return Arrays.equals(cObj.bits, bits) && cObj.universe.equals(universe);
     }
 
     public boolean equalsInverted(Classification other) {
-        if (other == this || other == null || other.cachedHashCode == cachedHashCode) {
+        if (other == this || other == null || other.bits.length != bits.length) {
+            return false;
+        }
+        int last = bits.length - 1;
+        for (int w = 0; w < last; ++w) {
+            if (other.bits[w] != ~bits[w]) {
+                return false;
+            }
+        }
+        if (last >= 0 && other.bits[last] != (~bits[last] & universe.lastWordMask())) {
             return false;
         }
-        return Objects.equals(other.included, excluded) && Objects.equals(other.excluded, included);
+        return other.universe.equals(universe);
     }
 }
@@ -1,7 +1,5 @@
 package synth.algorithms.classify;
 
-import java.util.List;
-
 import synth.algorithms.ast.*;
 import synth.algorithms.representation.*;
 import synth.core.*;
@@ -54,8 +52,8 @@ public class DecisionTree implements ExprRepresentation {
 
     @Override
     public ParseNode reifyAsExprParse() {
-        return new ParseNode(Symbol.Ite, List.of(discriminator.reifyAsBoolParse(),
-                thenBranch.reifyAsExprParse(), elseBranch.reifyAsExprParse()));
+        return ParseNode.intern(Symbol.Ite, discriminator.reifyAsBoolParse(), thenBranch.reifyAsExprParse(),
+                elseBranch.reifyAsExprParse());
     }
 
     @Override
@@ -0,0 +1,188 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+import synth.algorithms.representation.ExprRepresentation;
+
+/**
+ * Builds a decision tree over a pool of discriminators and partial solutions
+ * greedily, ID3-style: split the inputs on whichever discriminator leaves the
+ * least entropy in which solutions apply, until each side is covered by a
+ * single solution. Unlike McmcDecisionTreeOptimizer this is deterministic and
+ * takes milliseconds, but it can't back out of a bad split, so it may fail (or
+ * build a bigger tree than necessary) where the MCMC search would succeed.
+ *
+ * An input usually has several solutions that apply to it, so the entropy is
+ * over "soft" labels: each input contributes 1/k to each of the k solutions
+ * that apply to it, as in EUSolver. Everything is computed on the
+ * classification bit vectors.
+ */
+public class DecisionTreeBuilder {
+    private final InputUniverse universe;
+    private final PartialSolution[] solutions;
+    private final Discriminator[] discriminators;
+    private final int words;
+    // weightMasks[i] has the inputs covered by exactly weightCounts[i] solutions
+    private final long[][] weightMasks;
+    private final int[] weightCounts;
+    private final boolean coversUniverse;
+
+    public DecisionTreeBuilder(Collection<PartialSolution> solutions, Collection<Discriminator> discriminators) {
+        if (solutions.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one partial solution");
+        }
+        this.solutions = solutions.toArray(PartialSolution[]::new);
+        this.discriminators = discriminators.toArray(Discriminator[]::new);
+        this.universe = this.solutions[0].application().universe();
+        this.words = universe.words();
+        for (var ps : this.solutions) {
+            if (!ps.application().universe().equals(universe)) {
+                throw new IllegalArgumentException("Partial solutions must all classify the same inputs");
+            }
+        }
+        for (var d : this.discriminators) {
+            if (!d.classification().universe().equals(universe)) {
+                throw new IllegalArgumentException("Discriminators must classify the same inputs as the solutions");
+            }
+        }
+
+        var counts = new int[universe.size()];
+        for (var ps : this.solutions) {
+            var bits = ps.application().bits();
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += (int) ((bits[i >>> 6] >>> i) & 1);
+            }
+        }
+        var masks = new TreeMap<Integer, long[]>();
+        boolean covered = true;
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] == 0) {
+                covered = false;
+                continue;
+            }
+            masks.computeIfAbsent(counts[i], k -> new long[words])[i >>> 6] |= 1L << i;
+        }
+        this.coversUniverse = covered;
+        this.weightCounts = masks.keySet().stream().mapToInt(Integer::intValue).toArray();
+        this.weightMasks = masks.values().toArray(long[][]::new);
+    }
+
+    /**
+     * @return a DecisionTree (or just a PartialSolution) that picks a solution
+     *         that applies for every input, or null if the greedy splits don't
+     *         get there
+     */
+    public ExprRepresentation build() throws InterruptedException {
+        if (!coversUniverse) {
+            // Some input has no solution at all
+            return null;
+        }
+        var all = new long[words];
+        Arrays.fill(all, -1L);
+        if (words > 0) {
+            all[words - 1] = universe.lastWordMask();
+        }
+        return build(all);
+    }
+
+    private ExprRepresentation build(long[] set) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Thread interrupted during DecisionTreeBuilder::build()");
+        }
+
+        // Leaf if one solution does for everything left, preferring the most general
+        PartialSolution leaf = null;
+        for (var ps : solutions) {
+            if (isSubset(set, ps.application().bits())
+                    && (leaf == null || ps.application().includedCount() > leaf.application().includedCount())) {
+                leaf = ps;
+            }
+        }
+        if (leaf != null) {
+            return leaf;
+        }
+
+        int size = count(set);
+        var inside = new long[words];
+        var outside = new long[words];
+        Discriminator best = null;
+        double bestEntropy = Double.POSITIVE_INFINITY;
+        for (var d : discriminators) {
+            var bits = d.classification().bits();
+            for (int w = 0; w < words; ++w) {
+                inside[w] = set[w] & bits[w];
+                outside[w] = set[w] & ~bits[w];
+            }
+            int insideCount = count(inside);
+            if (insideCount == 0 || insideCount == size) {
+                // Doesn't split anything
+                continue;
+            }
+            // Minimizing the weighted entropy of the halves maximizes information gain
+            double entropy = insideCount * entropy(inside, insideCount)
+                    + (size - insideCount) * entropy(outside, size - insideCount);
+            if (entropy < bestEntropy) {
+                bestEntropy = entropy;
+                best = d;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+
+        var bits = best.classification().bits();
+        var thenSet = new long[words];
+        var elseSet = new long[words];
+        for (int w = 0; w < words; ++w) {
+            thenSet[w] = set[w] & bits[w];
+            elseSet[w] = set[w] & ~bits[w];
+        }
+        var thenBranch = build(thenSet);
+        if (thenBranch == null) {
+            return null;
+        }
+        var elseBranch = build(elseSet);
+        if (elseBranch == null) {
+            return null;
+        }
+        return new DecisionTree(best, thenBranch, elseBranch);
+    }
+
+    private double entropy(long[] set, int size) {
+        double entropy = 0;
+        for (var ps : solutions) {
+            var app = ps.application().bits();
+            double weight = 0;
+            for (int k = 0; k < weightMasks.length; ++k) {
+                var mask = weightMasks[k];
+                int n = 0;
+                for (int w = 0; w < words; ++w) {
+                    n += Long.bitCount(set[w] & app[w] & mask[w]);
+                }
+                weight += (double) n / weightCounts[k];
+            }
+            if (weight > 0) {
+                double p = weight / size;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy;
+    }
+
+    private boolean isSubset(long[] a, long[] b) {
+        for (int w = 0; w < words; ++w) {
+            if ((a[w] & ~b[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int count(long[] set) {
+        int count = 0;
+        for (var w : set) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+}
@@ -20,7 +20,19 @@ public class Discriminator implements BoolRepresentation {
     }
 
     public Discriminator(BoolRepresentation condition, Collection<Environment> examples) {
-        this.classification = Classification.makeFromCondition(condition, examples);
+        this(condition, InputUniverse.of(examples));
+    }
+
+    public Discriminator(BoolRepresentation condition, InputUniverse universe) {
+        this(condition, Classification.makeFromCondition(condition, universe));
+    }
+
+    /**
+     * For when the caller already knows how condition classifies the inputs, e.g.
+     * from BottomUpEnumerator.lastBoolValues().
+     */
+    public Discriminator(BoolRepresentation condition, Classification classification) {
+        this.classification = classification;
         this.condition = condition;
     }
 
@@ -36,10 +48,9 @@ public class Discriminator implements BoolRepresentation {
 
     @Override
     public boolean evalBool(Environment env) {
-        if (classification.included().contains(env)) {
-            return true;
-        } else if(classification.excluded().contains(env)) {
-            return false;
+        int index = classification.universe().indexOf(env);
+        if (index >= 0) {
+            return classification.includes(index);
         } else {
             return condition.evalBool(env);
         }
@@ -0,0 +1,100 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+import synth.core.*;
+
+/**
+ * A fixed, indexed set of inputs for Classifications to be defined over. The
+ * inputs are deduplicated and sorted, so two universes built from the same
+ * inputs in any order (or with repeats) index them identically and compare
+ * equal. Classifications over equal universes can be compared word-wise.
+ */
+public final class InputUniverse {
+    private final Environment[] inputs;
+    private final HashMap<Environment, Integer> indices;
+    private final int words;
+    private final long lastWordMask;
+    private final int cachedHashCode;
+    private ExampleColumns columns;
+
+    private InputUniverse(Environment[] inputs) {
+        this.inputs = inputs;
+        this.indices = new HashMap<>(inputs.length * 2);
+        for (int i = 0; i < inputs.length; ++i) {
+            indices.put(inputs[i], i);
+        }
+        this.words = (inputs.length + 63) >>> 6;
+        this.lastWordMask = (inputs.length & 63) == 0 ? -1L : (1L << (inputs.length & 63)) - 1;
+        this.cachedHashCode = Arrays.hashCode(inputs);
+    }
+
+    public static InputUniverse of(Collection<Environment> inputs) {
+        return new InputUniverse(inputs.stream().distinct().sorted().toArray(Environment[]::new));
+    }
+
+    public static InputUniverse ofExamples(Collection<Example> examples) {
+        return new InputUniverse(
+                examples.stream().map(Example::input).distinct().sorted().toArray(Environment[]::new));
+    }
+
+    public int size() {
+        return inputs.length;
+    }
+
+    public Environment input(int index) {
+        return inputs[index];
+    }
+
+    /**
+     * @return the index of input in this universe, or -1 if it isn't part of it
+     */
+    public int indexOf(Environment input) {
+        var index = indices.get(input);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * The inputs in index order, for batch evaluation; bit i of a classification
+     * corresponds to columns().input(i).
+     */
+    public ExampleColumns columns() {
+        if (columns == null) {
+            // Benign race: worst case two identical column sets get built
+            columns = ExampleColumns.ofInputs(Arrays.asList(inputs));
+        }
+        return columns;
+    }
+
+    /**
+     * The number of longs in a bit vector over this universe.
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * Mask for the valid bits of the last word of a bit vector; the bits past the
+     * end are always kept clear.
+     */
+    public long lastWordMask() {
+        return lastWordMask;
+    }
+
+    @Override
+    public int hashCode() {
+        return cachedHashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || !(obj instanceof InputUniverse)) {
+            return false;
+        }
+        InputUniverse uObj = (InputUniverse) obj;
+        return uObj.cachedHashCode == cachedHashCode && Arrays.equals(uObj.inputs, inputs);
+    }
+}
@@ -3,6 +3,7 @@ package synth.algorithms.classify;
 import synth.algorithms.ast.ExprNode;
 import synth.algorithms.representation.*;
 import synth.core.Environment;
+import synth.core.ExampleColumns;
 import synth.core.ParseNode;
 
 public class PartialSolution implements ExprRepresentation {
@@ -36,4 +37,9 @@ public class PartialSolution implements ExprRepresentation {
     public int evalExpr(Environment env) {
         return solution.evalExpr(env);
     }
+
+    @Override
+    public void evalExprBatch(ExampleColumns inputs, int[] out) {
+        solution.evalExprBatch(inputs, out);
+    }
 }
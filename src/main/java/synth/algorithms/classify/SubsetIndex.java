@@ -0,0 +1,111 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+/**
+ * A collection of bit vectors of the same length (e.g. sets of inputs over one
+ * InputUniverse) that can quickly answer whether any of them is a subset of a
+ * query vector. The vectors are bucketed by population count, since only ones
+ * with no more bits set than the query can be subsets of it, and each carries a
+ * one-word signature (all of its words OR'ed together) that rules most
+ * non-subsets out before the whole vectors get compared. For universes of up
+ * to 64 inputs the signature is exact.
+ *
+ * Only the minimal vectors matter for subset queries, so adding a vector drops
+ * any stored supersets of it.
+ */
+public class SubsetIndex {
+    private static final class Entry {
+        final long[] bits;
+        final long signature;
+
+        Entry(long[] bits, long signature) {
+            this.bits = bits;
+            this.signature = signature;
+        }
+    }
+
+    private final int words;
+    // buckets.get(k) holds the vectors with k bits set
+    private final ArrayList<ArrayList<Entry>> buckets = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * @param words the length of every vector, in longs
+     */
+    public SubsetIndex(int words) {
+        this.words = words;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether some stored vector is a subset of bits (equal counts)
+     */
+    public boolean containsSubsetOf(long[] bits) {
+        requireLength(bits);
+        int count = count(bits);
+        long signature = signature(bits);
+        for (int k = 0; k <= count && k < buckets.size(); ++k) {
+            for (var e : buckets.get(k)) {
+                if ((e.signature & ~signature) == 0 && isSubset(e.bits, bits)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Store a copy of bits, dropping any stored vectors it's a subset of.
+     */
+    public void add(long[] bits) {
+        requireLength(bits);
+        int count = count(bits);
+        long signature = signature(bits);
+        for (int k = count; k < buckets.size(); ++k) {
+            var bucket = buckets.get(k);
+            int before = bucket.size();
+            bucket.removeIf(e -> (signature & ~e.signature) == 0 && isSubset(bits, e.bits));
+            size -= before - bucket.size();
+        }
+        while (buckets.size() <= count) {
+            buckets.add(new ArrayList<>());
+        }
+        buckets.get(count).add(new Entry(bits.clone(), signature));
+        ++size;
+    }
+
+    private void requireLength(long[] bits) {
+        if (bits.length != words) {
+            throw new IllegalArgumentException("Vector must be exactly " + words + " words long");
+        }
+    }
+
+    private static boolean isSubset(long[] a, long[] b) {
+        for (int w = 0; w < a.length; ++w) {
+            if ((a[w] & ~b[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (var w : bits) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    private static long signature(long[] bits) {
+        long signature = 0;
+        for (var w : bits) {
+            signature |= w;
+        }
+        return signature;
+    }
+}
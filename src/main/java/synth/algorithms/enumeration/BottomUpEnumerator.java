@@ -0,0 +1,449 @@
+package synth.algorithms.enumeration;
+
+import java.util.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Metrics;
+
+/**
+ * Enumerates programs bottom-up in order of increasing height, keeping only the
+ * first program found for each distinct behaviour over a fixed set of inputs
+ * (observational equivalence). Add(x, y) and Add(y, x) evaluate to the same
+ * column of values, so only one of them is ever returned or used to build
+ * larger programs.
+ *
+ * Programs are built lazily: each height is only generated as far as the
+ * caller iterates, using sub-programs from the bank of lower heights. The value
+ * vector of the most recently returned program is available from
+ * lastExprValues()/lastBoolValues(), so callers can check it directly instead
+ * of re-evaluating the program.
+ *
+ * The bank is bounded by maxBankCells (measured in ints); once it's full, new
+ * programs are still returned but are no longer remembered, so they aren't
+ * deduplicated against each other and aren't used to build larger programs.
+ *
+ * Like ProgramEnumerator, an interrupted thread's enumeration ends early with
+ * the interrupt status left set.
+ */
+public class BottomUpEnumerator implements Iterator<ParseNode> {
+    public static final long DEFAULT_MAX_BANK_CELLS = 1L << 25;
+
+    private static final class ValueKey {
+        final int[] exprValues;
+        final long[] boolValues;
+        final int hash;
+
+        ValueKey(int[] exprValues) {
+            this.exprValues = exprValues;
+            this.boolValues = null;
+            this.hash = Arrays.hashCode(exprValues);
+        }
+
+        ValueKey(long[] boolValues) {
+            this.exprValues = null;
+            this.boolValues = boolValues;
+            this.hash = ~Arrays.hashCode(boolValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ValueKey)) {
+                return false;
+            }
+            var other = (ValueKey) obj;
+            return hash == other.hash && Arrays.equals(exprValues, other.exprValues)
+                    && Arrays.equals(boolValues, other.boolValues);
+        }
+    }
+
+    private final int maxHeight;
+    private final ExampleColumns inputs;
+    private final int n;
+    private final int words;
+    private final long lastWordMask;
+    private final long maxBankCells;
+    private long bankCells = 0;
+
+    private final Symbol[] terminals;
+    private final Symbol[] operators;
+    private final EnumSet<Symbol> seeds;
+
+    private final ArrayList<ParseNode> exprPrograms = new ArrayList<>();
+    private final ArrayList<int[]> exprValues = new ArrayList<>();
+    private final ArrayList<ParseNode> boolPrograms = new ArrayList<>();
+    private final ArrayList<long[]> boolValues = new ArrayList<>();
+    // Bank entries [levelEnd[h - 1], levelEnd[h]) all have height h
+    private final int[] exprLevelEnd;
+    private final int[] boolLevelEnd;
+    private final HashSet<ValueKey> seen = new HashSet<>();
+
+    // Generation state
+    private int height = 0;
+    private int opIndex = -1;
+    private Symbol op;
+    private boolean commutative;
+    private int[] cursor;
+    private int[] limits;
+    private int[] lastLevelStarts;
+
+    private boolean prepared = false;
+    // Returned programs not yet added to the metrics; see ProgramEnumerator
+    private int uncounted = 0;
+    // Candidates looked at since the last check for interrupts; most of them
+    // are duplicates that are never returned
+    private int unchecked = 0;
+    private boolean interrupted = false;
+    private ParseNode nextProgram;
+    private int[] nextExprValues;
+    private long[] nextBoolValues;
+    private int[] lastExprValues;
+    private long[] lastBoolValues;
+
+    public BottomUpEnumerator(int maxHeight, ExampleColumns inputs, Symbol[] seeds, Symbol[] permittedExpr,
+            Symbol[] permittedBool) {
+        this(maxHeight, inputs, seeds, permittedExpr, permittedBool, DEFAULT_MAX_BANK_CELLS);
+    }
+
+    public BottomUpEnumerator(int maxHeight, ExampleColumns inputs, Symbol[] seeds, Symbol[] permittedExpr,
+            Symbol[] permittedBool, long maxBankCells) {
+        if (maxHeight < 0) {
+            throw new IllegalArgumentException("maxHeight must be non-negative");
+        }
+        this.maxHeight = maxHeight;
+        this.inputs = inputs;
+        this.n = inputs.size();
+        this.words = (n + 63) >>> 6;
+        this.lastWordMask = (n & 63) == 0 ? -1L : (1L << (n & 63)) - 1;
+        this.maxBankCells = maxBankCells;
+
+        var allPermitted = new ArrayList<Symbol>();
+        allPermitted.addAll(Arrays.asList(permittedExpr));
+        allPermitted.addAll(Arrays.asList(permittedBool));
+        this.terminals = allPermitted.stream().filter(s -> !s.requiresArguments()).toArray(Symbol[]::new);
+        this.operators = allPermitted.stream().filter(s -> s.requiresArguments()).toArray(Symbol[]::new);
+        this.seeds = EnumSet.noneOf(Symbol.class);
+        this.seeds.addAll(Arrays.asList(seeds));
+
+        this.exprLevelEnd = new int[maxHeight + 1];
+        this.boolLevelEnd = new int[maxHeight + 1];
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!prepared) {
+            nextProgram = generate();
+            prepared = true;
+            if (nextProgram == null) {
+                flushMetrics();
+            }
+        }
+        return nextProgram != null;
+    }
+
+    /**
+     * See ProgramEnumerator.flushMetrics()
+     */
+    public void flushMetrics() {
+        Metrics.count("enumerator.bottomUp.candidates", uncounted);
+        uncounted = 0;
+    }
+
+    @Override
+    public ParseNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        prepared = false;
+        if (++uncounted == ProgramEnumerator.COUNT_BATCH) {
+            Metrics.count("enumerator.bottomUp.candidates", uncounted);
+            uncounted = 0;
+        }
+        lastExprValues = nextExprValues;
+        lastBoolValues = nextBoolValues;
+        return nextProgram;
+    }
+
+    /**
+     * The output of the program most recently returned by next(), for each input
+     * in order, or null if it was a predicate. Don't modify the returned array.
+     */
+    public int[] lastExprValues() {
+        return lastExprValues;
+    }
+
+    /**
+     * The output of the predicate most recently returned by next() as a bit
+     * vector (bit i set when the predicate is true for input i), or null if it
+     * was an expression. Don't modify the returned array.
+     */
+    public long[] lastBoolValues() {
+        return lastBoolValues;
+    }
+
+    private ParseNode generate() {
+        while (!interrupted && advanceCandidate()) {
+            if (++unchecked == ProgramEnumerator.COUNT_BATCH) {
+                unchecked = 0;
+                interrupted = Thread.currentThread().isInterrupted();
+            }
+            boolean isBool = op.returnSymbol() == Symbol.B;
+            ValueKey key;
+            if (isBool) {
+                key = new ValueKey(computeBool());
+            } else {
+                key = new ValueKey(computeExpr());
+            }
+            if (seen.contains(key)) {
+                continue;
+            }
+
+            var program = makeProgram(isBool);
+            boolean bankable = bankCells < maxBankCells;
+            if (bankable) {
+                seen.add(key);
+                // Programs at the maximum height are never used as children, so they only
+                // need to be remembered for deduplication
+                if (height < maxHeight) {
+                    if (isBool) {
+                        boolPrograms.add(program);
+                        boolValues.add(key.boolValues);
+                    } else {
+                        exprPrograms.add(program);
+                        exprValues.add(key.exprValues);
+                    }
+                }
+                bankCells += isBool ? 2 * words : n;
+            }
+
+            if (seeds.contains(op)) {
+                nextExprValues = key.exprValues;
+                nextBoolValues = key.boolValues;
+                return program;
+            }
+        }
+        return null;
+    }
+
+    private ParseNode makeProgram(boolean isBool) {
+        if (cursor == null) {
+            return new ParseNode(op);
+        }
+        var args = op.operatorArguments();
+        var children = new ParseNode[args.size()];
+        for (int i = 0; i < children.length; ++i) {
+            children[i] = (args.get(i) == Symbol.B ? boolPrograms : exprPrograms).get(cursor[i]);
+        }
+        return new ParseNode(op, List.of(children));
+    }
+
+    /**
+     * Step to the next (operator, children) combination at the current height,
+     * moving on to the next height when this one is exhausted.
+     */
+    private boolean advanceCandidate() {
+        while (height <= maxHeight) {
+            if (op != null && cursor != null && advanceCursor()) {
+                return true;
+            }
+            if (nextOperator()) {
+                return true;
+            }
+            // This height is complete
+            exprLevelEnd[height] = exprPrograms.size();
+            boolLevelEnd[height] = boolPrograms.size();
+            ++height;
+            opIndex = -1;
+            op = null;
+            cursor = null;
+        }
+        return false;
+    }
+
+    private boolean nextOperator() {
+        if (height == 0) {
+            if (++opIndex < terminals.length) {
+                op = terminals[opIndex];
+                cursor = null;
+                return true;
+            }
+            return false;
+        }
+        while (++opIndex < operators.length) {
+            op = operators[opIndex];
+            if (height == maxHeight && !seeds.contains(op)) {
+                // Nothing can be built from this, so don't bother
+                continue;
+            }
+            var args = op.operatorArguments();
+            int k = args.size();
+            cursor = new int[k];
+            limits = new int[k];
+            lastLevelStarts = new int[k];
+            boolean empty = false;
+            for (int i = 0; i < k; ++i) {
+                int[] levelEnd = args.get(i) == Symbol.B ? boolLevelEnd : exprLevelEnd;
+                limits[i] = levelEnd[height - 1];
+                lastLevelStarts[i] = height >= 2 ? levelEnd[height - 2] : 0;
+                empty |= limits[i] == 0;
+            }
+            if (empty) {
+                // E.g. Ite at height 1: there are no predicates of height 0
+                continue;
+            }
+            commutative = isCommutative(op);
+            cursor[0] = -1;
+            if (advanceCursor()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Odometer-style step through child combinations, child 0 fastest (the same
+     * order ProgramEnumerator uses). At least one child must come from the
+     * previous height, or the program belongs to a lower height. Commutative
+     * operators only get children in non-decreasing bank order.
+     */
+    private boolean advanceCursor() {
+        int k = cursor.length;
+        while (true) {
+            int i = 0;
+            for (; i < k; ++i) {
+                int limit = (commutative && i == 0) ? Math.min(limits[0], cursor[1] + 1) : limits[i];
+                if (++cursor[i] < limit) {
+                    break;
+                }
+                cursor[i] = 0;
+            }
+            if (i == k) {
+                return false;
+            }
+            for (int j = 0; j < k; ++j) {
+                if (cursor[j] >= lastLevelStarts[j]) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static boolean isCommutative(Symbol op) {
+        switch (op) {
+            case Add:
+            case Multiply:
+            case Eq:
+            case And:
+            case Or:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int[] computeExpr() {
+        var out = new int[n];
+        switch (op) {
+            case Const1:
+                Arrays.fill(out, 1);
+                break;
+            case Const2:
+                Arrays.fill(out, 2);
+                break;
+            case Const3:
+                Arrays.fill(out, 3);
+                break;
+            case VarX:
+                System.arraycopy(inputs.xs(), 0, out, 0, n);
+                break;
+            case VarY:
+                System.arraycopy(inputs.ys(), 0, out, 0, n);
+                break;
+            case VarZ:
+                System.arraycopy(inputs.zs(), 0, out, 0, n);
+                break;
+            case Add: {
+                int[] a = exprValues.get(cursor[0]), b = exprValues.get(cursor[1]);
+                for (int i = 0; i < n; ++i) {
+                    out[i] = a[i] + b[i];
+                }
+                break;
+            }
+            case Multiply: {
+                int[] a = exprValues.get(cursor[0]), b = exprValues.get(cursor[1]);
+                for (int i = 0; i < n; ++i) {
+                    out[i] = a[i] * b[i];
+                }
+                break;
+            }
+            case Ite: {
+                long[] c = boolValues.get(cursor[0]);
+                int[] a = exprValues.get(cursor[1]), b = exprValues.get(cursor[2]);
+                for (int i = 0; i < n; ++i) {
+                    out[i] = ((c[i >>> 6] >>> i) & 1) != 0 ? a[i] : b[i];
+                }
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported expression symbol " + op);
+        }
+        return out;
+    }
+
+    private long[] computeBool() {
+        var out = new long[words];
+        switch (op) {
+            case Lt: {
+                int[] a = exprValues.get(cursor[0]), b = exprValues.get(cursor[1]);
+                for (int i = 0; i < n; ++i) {
+                    if (a[i] < b[i]) {
+                        out[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            }
+            case Eq: {
+                int[] a = exprValues.get(cursor[0]), b = exprValues.get(cursor[1]);
+                for (int i = 0; i < n; ++i) {
+                    if (a[i] == b[i]) {
+                        out[i >>> 6] |= 1L << i;
+                    }
+                }
+                break;
+            }
+            case And: {
+                long[] a = boolValues.get(cursor[0]), b = boolValues.get(cursor[1]);
+                for (int w = 0; w < words; ++w) {
+                    out[w] = a[w] & b[w];
+                }
+                break;
+            }
+            case Or: {
+                long[] a = boolValues.get(cursor[0]), b = boolValues.get(cursor[1]);
+                for (int w = 0; w < words; ++w) {
+                    out[w] = a[w] | b[w];
+                }
+                break;
+            }
+            case Not: {
+                long[] a = boolValues.get(cursor[0]);
+                for (int w = 0; w < words; ++w) {
+                    out[w] = ~a[w];
+                }
+                // Keep the bits past the end clear so equal predicates have equal keys
+                if (words > 0) {
+                    out[words - 1] &= lastWordMask;
+                }
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported predicate symbol " + op);
+        }
+        return out;
+    }
+}
@@ -4,7 +4,13 @@ import java.util.*;
 
 import synth.core.*;
 import synth.dsl.*;
+import synth.util.Metrics;
 
+/**
+ * Enumerates programs top-down, in order of height. If the enumerating thread
+ * is interrupted the enumeration ends early, as if it had run out, with the
+ * interrupt status left set for the caller to check.
+ */
 public class ProgramEnumerator implements Iterator<ParseNode> {
     public static final Symbol[] E_SYMBOLS = Grammar.getProductionOperators(Symbol.E).stream()
             .filter(s -> s.isTerminalProduction()).toArray(Symbol[]::new);
@@ -21,23 +27,46 @@ public class ProgramEnumerator implements Iterator<ParseNode> {
         int curSymbol;
         NodeGenerator[] argGenerators;
         ParseNode[] children;
+        // Argument generators get reset and rerun over and over, so they record
+        // their (interned) output the first time through and just replay it after
+        // that; null for the root, whose output is never repeated.
+        ArrayList<ParseNode> memo;
+        int replay = -1;
 
-        public NodeGenerator(int minHeight, int maxHeight, Symbol[] permitted) {
+        public NodeGenerator(int minHeight, int maxHeight, Symbol[] permitted, boolean memoize) {
             this.minHeight = minHeight;
             this.maxHeight = maxHeight;
             this.iteratingSymbols = permitted;
+            if (memoize) {
+                memo = new ArrayList<>();
+            }
             reset();
         }
 
         public boolean hasNext() {
+            if (replay >= 0) {
+                return replay < memo.size();
+            }
             return curSymbol < iteratingSymbols.length;
         }
 
         public ParseNode next() {
+            if (replay >= 0) {
+                if (replay >= memo.size()) {
+                    throw new IllegalStateException("Iterating past end of available nodes");
+                }
+                return memo.get(replay++);
+            }
             if (curSymbol >= iteratingSymbols.length) {
                 throw new IllegalStateException("Iterating past end of available nodes");
             }
-            ParseNode node = new ParseNode(iteratingSymbols[curSymbol], List.of(children));
+            ParseNode node;
+            if (memo != null) {
+                node = ParseNode.intern(iteratingSymbols[curSymbol], children);
+                memo.add(node);
+            } else {
+                node = new ParseNode(iteratingSymbols[curSymbol], List.of(children));
+            }
             if (!advanceArgs()) {
                 advanceSymbol();
             }
@@ -45,6 +74,13 @@ public class ProgramEnumerator implements Iterator<ParseNode> {
         }
 
         public void reset() {
+            if (memo != null && curSymbol >= iteratingSymbols.length) {
+                // Done the first pass, everything from now on is a replay
+                replay = 0;
+                argGenerators = null;
+                children = null;
+                return;
+            }
             curSymbol = -1;
             advanceSymbol();
         }
@@ -71,7 +107,7 @@ public class ProgramEnumerator implements Iterator<ParseNode> {
                     var complete = true;
                     for (int i = 0; i < n; ++i) {
                         argGenerators[i] = new NodeGenerator(minHeight > 0 ? minHeight - 1 : 0, maxHeight - 1,
-                                (args.get(i) == Symbol.B) ? permittedBool : permittedExpr);
+                                (args.get(i) == Symbol.B) ? permittedBool : permittedExpr, true);
                         if (!argGenerators[i].hasNext()) {
                             complete = false;
                             break;
@@ -106,25 +142,51 @@ public class ProgramEnumerator implements Iterator<ParseNode> {
         }
     }
 
+    // Programs handed out are added to the metrics this many at a time (and when
+    // the enumeration runs out or flushMetrics() is called), and interrupts
+    // checked for as often, to keep next() cheap
+    static final int COUNT_BATCH = 4096;
+
     Symbol[] permittedExpr;
     Symbol[] permittedBool;
 
     NodeGenerator root;
+    int uncounted = 0;
+    boolean interrupted = false;
 
     public ProgramEnumerator(int minHeight, int maxHeight, Symbol[] seeds, Symbol[] permittedExpr, Symbol[] permittedBool) {
         this.permittedExpr = permittedExpr;
         this.permittedBool = permittedBool;
 
-        root = new NodeGenerator(minHeight, maxHeight, seeds);
+        // The roots are all different, so interning them would only fill up the table
+        root = new NodeGenerator(minHeight, maxHeight, seeds, false);
     }
 
     @Override
     public boolean hasNext() {
-        return root.hasNext();
+        if (!interrupted && root.hasNext()) {
+            return true;
+        }
+        flushMetrics();
+        return false;
+    }
+
+    /**
+     * Add the programs handed out since the last batch to the metrics. Callers
+     * that stop before the enumeration runs out should call this when they do.
+     */
+    public void flushMetrics() {
+        Metrics.count("enumerator.topDown.candidates", uncounted);
+        uncounted = 0;
     }
 
     @Override
     public ParseNode next() {
+        if (++uncounted == COUNT_BATCH) {
+            Metrics.count("enumerator.topDown.candidates", uncounted);
+            uncounted = 0;
+            interrupted = Thread.currentThread().isInterrupted();
+        }
         return root.next();
     }
 }
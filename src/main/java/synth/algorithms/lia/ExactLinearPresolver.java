@@ -0,0 +1,318 @@
+package synth.algorithms.lia;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import synth.core.Example;
+
+/**
+ * Settles the easy example subsets exactly, in Java, before anybody builds a
+ * native solver model. The equations (one per example, one unknown coefficient
+ * per term) are reduced with fraction-free Gaussian elimination, and:
+ *
+ * - if they have no rational solution, or pin some coefficient to anything but
+ * an integer in [0, maxConst], the subset is INFEASIBLE;
+ * - if they pin every coefficient, that's the solution;
+ * - otherwise, a solution using at most maxSupport terms is looked for
+ * directly, fewest terms (and lowest order) first.
+ *
+ * Whatever is left is UNDETERMINED: a genuinely under-determined system with
+ * bounds, which is what the CP/MIP/SMT solvers are for.
+ */
+final class ExactLinearPresolver {
+    enum Outcome {
+        SOLVED, INFEASIBLE, UNDETERMINED
+    }
+
+    static final class Result {
+        private static final Result INFEASIBLE = new Result(Outcome.INFEASIBLE, null);
+        private static final Result UNDETERMINED = new Result(Outcome.UNDETERMINED, null);
+
+        private final Outcome outcome;
+        private final LinearSolution solution;
+
+        private Result(Outcome outcome, LinearSolution solution) {
+            this.outcome = outcome;
+            this.solution = solution;
+        }
+
+        Outcome outcome() {
+            return outcome;
+        }
+
+        /**
+         * The solution if outcome() is SOLVED, null otherwise.
+         */
+        LinearSolution solution() {
+            return solution;
+        }
+    }
+
+    private final List<Term> termList;
+    private final Term[] terms;
+    private final int maxConst;
+    private final int maxSupport;
+
+    /**
+     * @param maxSupport the most terms to try in the direct search for a small
+     *                   solution; 0 to only accept solutions the equations force
+     */
+    ExactLinearPresolver(List<Term> terms, int maxConst, int maxSupport) {
+        if (maxConst < 0 || maxSupport < 0) {
+            throw new IllegalArgumentException("maxConst and maxSupport must not be negative");
+        }
+        this.termList = List.copyOf(terms);
+        this.terms = terms.toArray(Term[]::new);
+        this.maxConst = maxConst;
+        this.maxSupport = Math.min(maxSupport, this.terms.length);
+    }
+
+    Result presolve(Collection<Example> exampleSubset) {
+        return presolve(exampleSubset, null);
+    }
+
+    /**
+     * @param matrix if not null, term values for (some of) the examples
+     */
+    Result presolve(Collection<Example> exampleSubset, TermMatrix matrix) {
+        var examples = exampleSubset.toArray(Example[]::new);
+        int m = examples.length;
+        int n = terms.length;
+        var matrixRows = matrix != null ? matrix.values(termList) : null;
+        var values = new long[m][n + 1];
+        boolean allZero = true;
+        for (int i = 0; i < m; ++i) {
+            int e = matrix != null ? matrix.exampleIndex(examples[i]) : -1;
+            var input = examples[i].input();
+            for (int j = 0; j < n; ++j) {
+                values[i][j] = e >= 0 ? matrixRows[j][e] : terms[j].evalTerm(input);
+            }
+            values[i][n] = examples[i].output();
+            allZero &= examples[i].output() == 0;
+        }
+        if (allZero) {
+            // The only "solution" the solvers would find is the empty one, which
+            // they don't count
+            return Result.UNDETERMINED;
+        }
+
+        var rows = new BigInteger[m][n + 1];
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j <= n; ++j) {
+                rows[i][j] = BigInteger.valueOf(values[i][j]);
+            }
+        }
+        var pivots = reduce(rows, n);
+        if (pivots == null) {
+            return Result.INFEASIBLE;
+        }
+        var max = BigInteger.valueOf(maxConst);
+        var coeffs = new HashMap<Term, Integer>();
+        for (int r = 0; r < pivots.length; ++r) {
+            if (!isDetermined(rows[r], pivots[r], n)) {
+                continue;
+            }
+            var qr = rows[r][n].divideAndRemainder(rows[r][pivots[r]]);
+            if (qr[1].signum() != 0 || qr[0].signum() < 0 || qr[0].compareTo(max) > 0) {
+                return Result.INFEASIBLE;
+            }
+            if (qr[0].signum() != 0) {
+                coeffs.put(terms[pivots[r]], qr[0].intValue());
+            }
+        }
+        if (pivots.length == n) {
+            return new Result(Outcome.SOLVED, new LinearSolution(coeffs));
+        }
+
+        // Under-determined; maybe there's a solution with only a few terms
+        var columns = new int[maxSupport];
+        var scratch = new long[m][maxSupport + 1];
+        var scratchPivots = new int[maxSupport];
+        for (int support = 1; support <= maxSupport; ++support) {
+            for (int k = 0; k < support; ++k) {
+                columns[k] = k;
+            }
+            do {
+                var sol = trySupport(values, columns, support, scratch, scratchPivots);
+                if (sol != null) {
+                    return new Result(Outcome.SOLVED, sol);
+                }
+            } while (nextCombination(columns, support, n));
+        }
+        return Result.UNDETERMINED;
+    }
+
+    /**
+     * The same elimination as reduce(), but in longs on just the support
+     * columns, since it's done thousands of times per subset. On overflow the
+     * support is just skipped.
+     */
+    private LinearSolution trySupport(long[][] values, int[] columns, int support, long[][] rows,
+            int[] pivots) {
+        int m = values.length;
+        int n = values[0].length - 1;
+        for (int i = 0; i < m; ++i) {
+            var row = rows[i];
+            for (int k = 0; k < support; ++k) {
+                row[k] = values[i][columns[k]];
+            }
+            row[support] = values[i][n];
+        }
+        try {
+            int rank = 0;
+            for (int col = 0; col < support; ++col) {
+                int pr = rank;
+                while (pr < m && rows[pr][col] == 0) {
+                    ++pr;
+                }
+                if (pr == m) {
+                    // Linearly dependent columns here; a smaller support would do
+                    return null;
+                }
+                var tmp = rows[pr];
+                rows[pr] = rows[rank];
+                rows[rank] = tmp;
+                var pivotRow = rows[rank];
+                long a = pivotRow[col];
+                for (int r = 0; r < m; ++r) {
+                    var row = rows[r];
+                    if (r == rank || row[col] == 0) {
+                        continue;
+                    }
+                    long v = row[col];
+                    long g = 0;
+                    for (int j = 0; j <= support; ++j) {
+                        row[j] = Math.subtractExact(Math.multiplyExact(row[j], a),
+                                Math.multiplyExact(pivotRow[j], v));
+                        g = gcd(g, row[j]);
+                    }
+                    if (g > 1) {
+                        for (int j = 0; j <= support; ++j) {
+                            row[j] /= g;
+                        }
+                    }
+                }
+                pivots[rank++] = col;
+            }
+            for (int r = rank; r < m; ++r) {
+                if (rows[r][support] != 0) {
+                    return null;
+                }
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        var coeffs = new HashMap<Term, Integer>();
+        for (int r = 0; r < support; ++r) {
+            long a = rows[r][pivots[r]];
+            long b = rows[r][support];
+            if (b % a != 0 || b / a <= 0 || b / a > maxConst) {
+                return null;
+            }
+            coeffs.put(terms[columns[pivots[r]]], (int) (b / a));
+        }
+        return new LinearSolution(coeffs);
+    }
+
+    private static long gcd(long a, long b) {
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Puts rows (each n coefficients followed by the right hand side) in reduced
+     * row echelon form, in place, keeping everything integral: rows are combined
+     * by cross-multiplying and then divided by their gcd.
+     *
+     * @return the pivot column of each of the first rank rows, or null if the
+     *         system is inconsistent
+     */
+    static int[] reduce(BigInteger[][] rows, int n) {
+        int rank = 0;
+        var pivots = new int[Math.min(rows.length, n)];
+        for (int col = 0; col < n && rank < rows.length; ++col) {
+            int pr = rank;
+            while (pr < rows.length && rows[pr][col].signum() == 0) {
+                ++pr;
+            }
+            if (pr == rows.length) {
+                continue;
+            }
+            var tmp = rows[pr];
+            rows[pr] = rows[rank];
+            rows[rank] = tmp;
+            var pivotRow = rows[rank];
+            var a = pivotRow[col];
+            for (int r = 0; r < rows.length; ++r) {
+                var row = rows[r];
+                if (r == rank || row[col].signum() == 0) {
+                    continue;
+                }
+                var v = row[col];
+                for (int j = 0; j <= n; ++j) {
+                    row[j] = row[j].multiply(a).subtract(pivotRow[j].multiply(v));
+                }
+                normalize(row);
+            }
+            pivots[rank++] = col;
+        }
+        for (int r = rank; r < rows.length; ++r) {
+            // The coefficients are all zero by now
+            if (rows[r][n].signum() != 0) {
+                return null;
+            }
+        }
+        return Arrays.copyOf(pivots, rank);
+    }
+
+    private static void normalize(BigInteger[] row) {
+        var g = BigInteger.ZERO;
+        for (var v : row) {
+            g = g.gcd(v);
+        }
+        if (g.signum() != 0 && !g.equals(BigInteger.ONE)) {
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = row[j].divide(g);
+            }
+        }
+    }
+
+    /**
+     * @return whether row's only nonzero coefficient is its pivot
+     */
+    private static boolean isDetermined(BigInteger[] row, int pivot, int n) {
+        for (int j = pivot + 1; j < n; ++j) {
+            if (row[j].signum() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Steps columns[0..k) to the next k-combination of [0, n) in lexicographic
+     * order.
+     *
+     * @return false if there is none
+     */
+    private static boolean nextCombination(int[] columns, int k, int n) {
+        int i = k - 1;
+        while (i >= 0 && columns[i] == n - k + i) {
+            --i;
+        }
+        if (i < 0) {
+            return false;
+        }
+        ++columns[i];
+        for (int j = i + 1; j < k; ++j) {
+            columns[j] = columns[j - 1] + 1;
+        }
+        return true;
+    }
+}
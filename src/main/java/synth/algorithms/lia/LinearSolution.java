@@ -16,6 +16,10 @@ public class LinearSolution implements Comparable<LinearSolution>, ExprRepresent
     // correspond to sequential terms.
     private final int[] signature;
 
+    // The same coefficients as parallel arrays, in term order, for evaluation
+    private final Term[] compiledTerms;
+    private final int[] compiledCoeffs;
+
     public Map<Term, Integer> coefficients() {
         return coefficientMap;
     }
@@ -41,6 +45,11 @@ public class LinearSolution implements Comparable<LinearSolution>, ExprRepresent
         for (int i = 0; i < accum.size(); ++i) {
             signature[i] = accum.get(i);
         }
+        compiledTerms = terms.toArray(Term[]::new);
+        compiledCoeffs = new int[compiledTerms.length];
+        for (int k = 0; k < compiledTerms.length; ++k) {
+            compiledCoeffs[k] = coefficientMap.get(compiledTerms[k]);
+        }
     }
 
     @Override
@@ -114,9 +123,47 @@ public class LinearSolution implements Comparable<LinearSolution>, ExprRepresent
     @Override
     public int evalExpr(Environment env) {
         int sum = 0;
-        for (var e : coefficientMap.entrySet()) {
-            sum += e.getValue() * e.getKey().evalTerm(env);
+        for (int k = 0; k < compiledTerms.length; ++k) {
+            sum += compiledCoeffs[k] * compiledTerms[k].evalTerm(env);
         }
         return sum;
     }
+
+    @Override
+    public void evalExprBatch(ExampleColumns inputs, int[] out) {
+        int n = inputs.size();
+        int[] xs = inputs.xs(), ys = inputs.ys(), zs = inputs.zs();
+        Arrays.fill(out, 0, n, 0);
+        for (int k = 0; k < compiledTerms.length; ++k) {
+            int coeff = compiledCoeffs[k];
+            var t = compiledTerms[k];
+            int xPower = t.xPower(), yPower = t.yPower(), zPower = t.zPower();
+            for (int i = 0; i < n; ++i) {
+                int value = coeff;
+                for (int p = 0; p < xPower; ++p)
+                    value *= xs[i];
+                for (int p = 0; p < yPower; ++p)
+                    value *= ys[i];
+                for (int p = 0; p < zPower; ++p)
+                    value *= zs[i];
+                out[i] += value;
+            }
+        }
+    }
+
+    /**
+     * evalExprBatch() over matrix's examples: a dot product of the coefficients
+     * with the precomputed term values.
+     */
+    public void evalExprBatch(TermMatrix matrix, int[] out) {
+        int n = matrix.exampleCount();
+        Arrays.fill(out, 0, n, 0);
+        for (int k = 0; k < compiledTerms.length; ++k) {
+            int coeff = compiledCoeffs[k];
+            var values = matrix.values(compiledTerms[k]);
+            for (int i = 0; i < n; ++i) {
+                out[i] += coeff * values[i];
+            }
+        }
+    }
 }
@@ -1,12 +1,15 @@
 package synth.algorithms.lia;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import synth.algorithms.classify.Classification;
+import synth.algorithms.classify.InputUniverse;
 import synth.algorithms.classify.PartialSolution;
 import synth.algorithms.rng.Xoshiro256SS;
 import synth.core.Example;
+import synth.util.Metrics;
 
 public abstract class LinearSolver {
     private static Logger logger = Logger.getLogger(LinearSolver.class.getName());
@@ -30,13 +33,44 @@ public abstract class LinearSolver {
     }
 
     private Xoshiro256SS rng;
+    private TermMatrix termMatrix;
+    private final ExecutorService executor;
+    private final int parallelSeeds;
 
     protected Xoshiro256SS rng() {
         return rng;
     }
 
+    /**
+     * The term values for the examples of the computeSolutionSets() call in
+     * progress, or null outside of one.
+     */
+    protected TermMatrix termMatrix() {
+        return termMatrix;
+    }
+
+    protected void setTermMatrix(TermMatrix termMatrix) {
+        this.termMatrix = termMatrix;
+    }
+
     public LinearSolver(Xoshiro256SS rng) {
+        this(rng, null, 1);
+    }
+
+    /**
+     * @param executor      if not null, computeSolutionSets() looks for solutions
+     *                      around up to parallelSeeds uncovered examples at once
+     *                      on it, so solveSubset() must be safe to call
+     *                      concurrently
+     * @param parallelSeeds how many examples to seed at once
+     */
+    public LinearSolver(Xoshiro256SS rng, ExecutorService executor, int parallelSeeds) {
+        if (parallelSeeds < 1) {
+            throw new IllegalArgumentException("Need at least one seed at a time");
+        }
         this.rng = rng;
+        this.executor = parallelSeeds > 1 ? executor : null;
+        this.parallelSeeds = parallelSeeds;
     }
 
     protected ArrayList<Example> randomOrder(Collection<Example> examples) {
@@ -53,59 +87,191 @@ public abstract class LinearSolver {
 
     List<Integer> subsetSizeSchedule = List.of(8, 4, 4, 2, 2, 1);
 
+    // Lives as long as the solver, so later CEGIS rounds benefit from earlier ones
+    private final SolveCache solveCache = new SolveCache(256);
+
     /**
-     * For each example, compute a solution set using the linear solver.
+     * For each example, compute a solution set using the linear solver. An
+     * interrupt stops it between (and, where the solver allows, during) solves.
      */
     public Collection<PartialSolution> computeSolutionSets(List<Example> examples) throws InterruptedException {
+        var matrix = new TermMatrix(examples);
+        setTermMatrix(matrix);
+        try {
+            return computeSolutionSets(examples, matrix);
+        } finally {
+            setTermMatrix(null);
+        }
+    }
+
+    private Collection<PartialSolution> computeSolutionSets(List<Example> examples, TermMatrix matrix)
+            throws InterruptedException {
+        var columns = matrix.columns();
+        var universe = InputUniverse.ofExamples(examples);
         var uncoveredExamples = new HashSet<Example>(examples);
         var solutions = new HashSet<PartialSolution>();
+        var values = new int[matrix.exampleCount()];
 
         while (uncoveredExamples.size() > 0) {
             logger.log(Level.INFO, "Discovering sub-solutions: {0} examples not covered yet",
                     new Object[] { uncoveredExamples.size()  });
-            LinearSolution sol = null;
-            // Pick some UNCOVERED example -- how about the first?
-            var seedExample = uncoveredExamples.iterator().next();
             var examplePool = List.copyOf(uncoveredExamples);
-            for (var subsetSize : subsetSizeSchedule) {
-                if (subsetSize > examplePool.size()) {
-                    continue;
-                }
-                var subset = new HashSet<Example>();
-                subset.add(seedExample);
-                // Duplicates won't increase subset.size()
-                while (subset.size() < subsetSize) {
-                    subset.add(examplePool.get(rng.nextInt(examplePool.size())));
-                }
-                // Try to find a solution
-                sol = solveSubset(subset);
-                if (sol != null) {
-                    break;
-                }
+            List<Example> seeds;
+            List<LinearSolution> seedSolutions;
+            if (executor == null) {
+                // Pick some UNCOVERED example -- how about the first?
+                var seedExample = examplePool.get(0);
+                seeds = List.of(seedExample);
+                seedSolutions = Collections.singletonList(discoverSolution(seedExample, examplePool, rng));
+            } else {
+                seeds = examplePool.subList(0, Math.min(parallelSeeds, examplePool.size()));
+                seedSolutions = discoverSolutionsInParallel(seeds, examplePool);
+            }
+            if (Thread.interrupted()) {
+                // The solves were cut short, so their nulls mean nothing
+                throw new InterruptedException("Thread interrupted during LinearSolver::computeSolutionSets()");
             }
-            if (sol == null) {
-                // Didn't find anything with the linear solver at any size? we'll just have to
-                // try the degenerate solution
-                if (seedExample.output() > 0) {
-                    sol = new LinearSolution(Map.of(Term.TERM_1, seedExample.output()));
-                    logger.log(Level.WARNING, "Degenerate solution for example: {0}", new Object[] { seedExample });
-                    solutions.add(new PartialSolution(sol, Classification.makeFromExamples(sol, examples)));
+
+            for (int s = 0; s < seeds.size(); ++s) {
+                var seedExample = seeds.get(s);
+                var sol = seedSolutions.get(s);
+                if (sol == null) {
+                    if (!uncoveredExamples.contains(seedExample)) {
+                        // Another seed's solution took care of it
+                        continue;
+                    }
+                    // Didn't find anything with the linear solver at any size? we'll just have to
+                    // try the degenerate solution
+                    if (seedExample.output() > 0) {
+                        sol = new LinearSolution(Map.of(Term.TERM_1, seedExample.output()));
+                        logger.log(Level.WARNING, "Degenerate solution for example: {0}",
+                                new Object[] { seedExample });
+                        sol.evalExprBatch(matrix, values);
+                        solutions.add(
+                                new PartialSolution(sol, Classification.makeFromValues(values, columns, universe)));
+                    } else {
+                        // Something is fishy, anyway, we probably just can't solve this one?
+                        logger.log(Level.WARNING, "Unable to find solution for example: {0}",
+                                new Object[] { seedExample });
+                        return null;
+                    }
+                    uncoveredExamples.remove(seedExample);
                 } else {
-                    // Something is fishy, anyway, we probably just can't solve this one?
-                    logger.log(Level.WARNING, "Unable to find solution for example: {0}", new Object[] { seedExample });
-                    return null;
+                    sol.evalExprBatch(matrix, values);
+                    var outputs = columns.outputs();
+                    boolean coversAny = false;
+                    for (int i = 0; i < values.length; ++i) {
+                        if (values[i] == outputs[i]) {
+                            coversAny |= uncoveredExamples.remove(matrix.example(i));
+                        }
+                    }
+                    // Seeds solved at the same time can come up with overlapping solutions;
+                    // one that doesn't add anything isn't worth keeping
+                    if (coversAny) {
+                        solutions.add(
+                                new PartialSolution(sol, Classification.makeFromValues(values, columns, universe)));
+                    }
                 }
-                uncoveredExamples.remove(seedExample);
-            } else {
-                var subset = new HashSet<Example>();
-                completeGroupUsingSolutions(List.of(sol), examples, subset);
-                uncoveredExamples.removeAll(subset);
-                solutions.add(new PartialSolution(sol, Classification.makeFromExamples(sol, examples)));
             }
         }
         return solutions;
     }
 
+    /**
+     * Try to solve random subsets of examplePool containing seedExample, per
+     * subsetSizeSchedule.
+     *
+     * @return the first solution found, or null if there wasn't one
+     */
+    private LinearSolution discoverSolution(Example seedExample, List<Example> examplePool, Xoshiro256SS rng) {
+        for (var subsetSize : subsetSizeSchedule) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            if (subsetSize > examplePool.size()) {
+                continue;
+            }
+            var subset = new HashSet<Example>();
+            subset.add(seedExample);
+            // Duplicates won't increase subset.size()
+            while (subset.size() < subsetSize) {
+                subset.add(examplePool.get(rng.nextInt(examplePool.size())));
+            }
+            // Try to find a solution
+            var sol = solveSubsetCached(subset);
+            if (sol != null) {
+                return sol;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * discoverSolution() for each of seeds at once on the executor. Each seed gets
+     * its own generator, seeded in seed order, so the subsets tried
+     * don't depend on how the work gets scheduled (though what the solve cache
+     * knows at any moment does).
+     */
+    private List<LinearSolution> discoverSolutionsInParallel(List<Example> seeds, List<Example> examplePool)
+            throws InterruptedException {
+        var futures = new ArrayList<Future<LinearSolution>>(seeds.size());
+        try {
+            for (var seed : seeds) {
+                // Our rng is usually already a subsequence, which can't be split further
+                var seedRng = new Xoshiro256SS(rng.nextLong());
+                futures.add(executor.submit(() -> discoverSolution(seed, examplePool, seedRng)));
+            }
+            var result = new ArrayList<LinearSolution>(seeds.size());
+            for (var f : futures) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Linear solve failed", e.getCause());
+        } finally {
+            for (var f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * solveSubset(), unless an earlier call already settled the question: a
+     * remembered solution fitting the whole subset is returned as-is, and a
+     * superset of a subset the solver failed on is rejected without asking.
+     */
+    LinearSolution solveSubsetCached(Collection<Example> exampleSubset) {
+        var known = solveCache.findSolution(exampleSubset);
+        if (known != null) {
+            logger.log(Level.INFO, "-- Solve cache hit: known solution fits {0} examples",
+                    new Object[] { exampleSubset.size() });
+            Metrics.count("lia.cache.solutionHits");
+            return known;
+        }
+        if (solveCache.isKnownUnsolvable(exampleSubset)) {
+            logger.log(Level.INFO, "-- Solve cache hit: {0} examples contain a known unsolvable subset",
+                    new Object[] { exampleSubset.size() });
+            Metrics.count("lia.cache.unsolvableHits");
+            return null;
+        }
+        long start = Metrics.startTimer();
+        var sol = solveSubset(exampleSubset);
+        Metrics.stopTimer(sol != null ? "lia.solve.solved" : "lia.solve.failed", start);
+        if (sol == null && Thread.currentThread().isInterrupted()) {
+            // Stopped, not unsolvable
+            return null;
+        }
+        if (sol != null) {
+            solveCache.addSolution(sol);
+        } else {
+            solveCache.addUnsolvable(exampleSubset);
+        }
+        return sol;
+    }
+
     protected LinearSolution solveSubset(Collection<Example> exampleSubset) {
         throw new UnsupportedOperationException("Not implemented");
     }
@@ -1,6 +1,7 @@
 package synth.algorithms.lia;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 import com.google.ortools.Loader;
@@ -8,6 +9,7 @@ import com.google.ortools.sat.*;
 
 import synth.algorithms.rng.Xoshiro256SS;
 import synth.core.Example;
+import synth.util.Metrics;
 
 public class ORToolsCPLinearSolver extends LinearSolver {
     private static Logger logger = Logger.getLogger(ORToolsCPLinearSolver.class.getName());
@@ -16,9 +18,22 @@ public class ORToolsCPLinearSolver extends LinearSolver {
         Loader.loadNativeLibraries();
     }
 
+    // CP-SAT doesn't notice interrupts itself; this checks on the solving threads
+    // and stops their searches
+    private static final ScheduledExecutorService INTERRUPT_WATCHDOG = Executors
+            .newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "ORToolsCPLinearSolver interrupt watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final long INTERRUPT_POLL_MS = 50;
+
     private static class SolveLimits {
         private List<Term> terms = null;
         private int maxConst = 0;
+        private ExactLinearPresolver presolver;
+        // Prefix of this tier's metrics; the tiers all have different orders
+        private String metricsName;
 
         public List<Term> terms() {
             return terms;
@@ -28,23 +43,56 @@ public class ORToolsCPLinearSolver extends LinearSolver {
             return maxConst;
         }
 
-        SolveLimits(int maxOrder, int maxConst) {
+        public ExactLinearPresolver presolver() {
+            return presolver;
+        }
+
+        SolveLimits(int maxOrder, int maxConst, int presolveMaxSupport) {
             this.terms = Term.makeUpToOrder(maxOrder);
             this.maxConst = maxConst;
+            this.presolver = new ExactLinearPresolver(terms, maxConst, presolveMaxSupport);
+            this.metricsName = "lia.cp.order" + maxOrder;
         }
     }
 
-    List<SolveLimits> solveLimits = List.of(new SolveLimits(2, 16), new SolveLimits(3, 32), new SolveLimits(4, 64));
+    // Solutions with up to 2 terms are searched for without CP-SAT, but only among
+    // the fewest terms: the search is combinatorial in the number of terms
+    List<SolveLimits> solveLimits = List.of(new SolveLimits(2, 16, 2), new SolveLimits(3, 32, 0),
+            new SolveLimits(4, 64, 0));
     int timeoutMs = 5000;
 
     public ORToolsCPLinearSolver(Xoshiro256SS rng) {
         super(rng);
     }
 
+    /**
+     * See LinearSolver(Xoshiro256SS, ExecutorService, int); every solve builds its
+     * own model and CpSolver, so they can run concurrently.
+     */
+    public ORToolsCPLinearSolver(Xoshiro256SS rng, ExecutorService executor, int parallelSeeds) {
+        super(rng, executor, parallelSeeds);
+    }
+
     @Override
     protected LinearSolution solveSubset(Collection<Example> exampleSubset) {
         for (var lim : solveLimits) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            long presolveStart = Metrics.startTimer();
+            var pre = lim.presolver().presolve(exampleSubset, termMatrix());
+            Metrics.stopTimer(lim.metricsName + ".presolve", presolveStart);
+            if (pre.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+                Metrics.count(lim.metricsName + ".presolved");
+                return pre.solution();
+            } else if (pre.outcome() == ExactLinearPresolver.Outcome.INFEASIBLE) {
+                // No point asking CP-SAT; maybe more terms or bigger constants will do
+                Metrics.count(lim.metricsName + ".presolveInfeasible");
+                continue;
+            }
+            long solveStart = Metrics.startTimer();
             var sol = trySolveSubset(lim, exampleSubset);
+            Metrics.stopTimer(lim.metricsName + ".solve", solveStart);
             if (sol != null && !sol.coefficients().isEmpty()) {
                 // A real solution!
                 return sol;
@@ -67,12 +115,17 @@ public class ORToolsCPLinearSolver extends LinearSolver {
             termVars.put(t, model.newIntVar(0, limits.maxConst(), t.name()));
         }
 
+        var matrix = termMatrix();
+        var terms = limits.terms();
+        var matrixRows = matrix != null ? matrix.values(terms) : null;
         int i = 0;
         for (var ex : exampleSubset) {
+            int e = matrix != null ? matrix.exampleIndex(ex) : -1;
             var usedTerms = new ArrayList<IntVar>();
             var coeffs = new ArrayList<Long>();
-            for (var t : limits.terms()) {
-                int coeff = t.evalTerm(ex.input());
+            for (int k = 0; k < terms.size(); ++k) {
+                var t = terms.get(k);
+                int coeff = e >= 0 ? matrixRows[k][e] : t.evalTerm(ex.input());
                 if (coeff != 0) {
                     usedTerms.add(termVars.get(t));
                     coeffs.add((long) coeff);
@@ -116,7 +169,22 @@ public class ORToolsCPLinearSolver extends LinearSolver {
             }
         };
         solver.getParameters().setMaxTimeInSeconds(timeoutMs / 1000d);
-        final CpSolverStatus resultStatus = solver.solve(model, solutionCb);
+        var caller = Thread.currentThread();
+        var watchdog = INTERRUPT_WATCHDOG.scheduleWithFixedDelay(() -> {
+            if (caller.isInterrupted()) {
+                solver.stopSearch();
+            }
+        }, INTERRUPT_POLL_MS, INTERRUPT_POLL_MS, TimeUnit.MILLISECONDS);
+        final CpSolverStatus resultStatus;
+        try {
+            resultStatus = solver.solve(model, solutionCb);
+        } finally {
+            watchdog.cancel(false);
+        }
+        if (resultStatus == CpSolverStatus.UNKNOWN) {
+            // Out of time before finding anything or proving there's nothing to find
+            Metrics.count(limits.metricsName + ".timeouts");
+        }
 
         if (solutionCb.callbackException != null) {
             logger.log(Level.SEVERE, "Error during solution enumeration", solutionCb.callbackException);
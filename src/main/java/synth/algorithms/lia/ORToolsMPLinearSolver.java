@@ -19,6 +19,7 @@ public class ORToolsMPLinearSolver extends LinearSolver {
     protected List<Term> terms = null;
     protected int maxConst = 0;
     protected int maxSols = 5;
+    private final ExactLinearPresolver presolver;
 
     public ORToolsMPLinearSolver(Xoshiro256SS rng, int maxOrder, int maxConst) {
         super(rng);
@@ -34,10 +35,20 @@ public class ORToolsMPLinearSolver extends LinearSolver {
         }
         this.terms = newTerms;
         this.maxConst = maxConst;
+        // No direct search for small solutions: they're not necessarily the minimal
+        // ones SCIP is asked for
+        this.presolver = new ExactLinearPresolver(newTerms, maxConst, 0);
     }
 
     @Override
     protected LinearSolution solveSubset(Collection<Example> exampleSubset) {
+        var pre = presolver.presolve(exampleSubset, termMatrix());
+        if (pre.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+            return pre.solution();
+        } else if (pre.outcome() == ExactLinearPresolver.Outcome.INFEASIBLE) {
+            return null;
+        }
+
         MPSolver solver = MPSolver.createSolver("SCIP");
         if (solver == null) {
             throw new IllegalStateException("Could not create solver SCIP");
@@ -48,11 +59,15 @@ public class ORToolsMPLinearSolver extends LinearSolver {
             termVars.put(t, solver.makeIntVar(0, maxConst, t.name()));
         }
 
+        var matrix = termMatrix();
+        var matrixRows = matrix != null ? matrix.values(terms) : null;
         int i = 0;
         for (var ex : exampleSubset) {
+            int e = matrix != null ? matrix.exampleIndex(ex) : -1;
             MPConstraint eqn = solver.makeConstraint(ex.output() - 0.5, ex.output() + 0.5, String.format("ex%d", i++));
-            for (var t : terms) {
-                int coeff = t.evalTerm(ex.input());
+            for (int k = 0; k < terms.size(); ++k) {
+                var t = terms.get(k);
+                int coeff = e >= 0 ? matrixRows[k][e] : t.evalTerm(ex.input());
                 if (coeff != 0) {
                     eqn.setCoefficient(termVars.get(t), coeff);
                 }
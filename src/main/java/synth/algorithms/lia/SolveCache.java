@@ -0,0 +1,94 @@
+package synth.algorithms.lia;
+
+import java.util.*;
+
+import synth.core.Example;
+
+/**
+ * Remembers what LinearSolver.solveSubset() said about earlier example
+ * subsets, so computeSolutionSets() can skip the solver when the answer is
+ * already known:
+ *
+ * - a solution found earlier that fits every example in a new subset is a
+ * solution for that subset too, and
+ * - a subset containing every example of a subset the solver gave up on can't
+ * be any easier, so it's rejected outright.
+ *
+ * "Gave up on" includes solver timeouts, not just proven infeasibility; that's
+ * what makes this worthwhile, since the timeouts are where the time goes. Both
+ * lists are bounded, oldest entries going first. Safe to use from several
+ * threads, for parallel computeSolutionSets().
+ */
+class SolveCache {
+    private final int capacity;
+    private final ArrayDeque<LinearSolution> solutions = new ArrayDeque<>();
+    private final ArrayDeque<Set<Example>> unsolvable = new ArrayDeque<>();
+
+    SolveCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return a remembered solution satisfying every example in subset, or null
+     */
+    synchronized LinearSolution findSolution(Collection<Example> subset) {
+        // Most recent first: the latest solutions are the likeliest to be relevant
+        var it = solutions.descendingIterator();
+        while (it.hasNext()) {
+            var sol = it.next();
+            if (satisfiesAll(sol, subset)) {
+                return sol;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether subset contains some subset the solver already failed on
+     */
+    synchronized boolean isKnownUnsolvable(Collection<Example> subset) {
+        for (var u : unsolvable) {
+            if (u.size() <= subset.size() && subset.containsAll(u)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized void addSolution(LinearSolution sol) {
+        if (solutions.contains(sol)) {
+            return;
+        }
+        if (solutions.size() >= capacity) {
+            solutions.removeFirst();
+        }
+        solutions.addLast(sol);
+    }
+
+    synchronized void addUnsolvable(Collection<Example> subset) {
+        if (unsolvable.size() >= capacity) {
+            unsolvable.removeFirst();
+        }
+        unsolvable.addLast(Set.copyOf(subset));
+    }
+
+    synchronized int solutionCount() {
+        return solutions.size();
+    }
+
+    synchronized int unsolvableCount() {
+        return unsolvable.size();
+    }
+
+    private static boolean satisfiesAll(LinearSolution sol, Collection<Example> subset) {
+        for (var e : subset) {
+            if (sol.evalExpr(e.input()) != e.output()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
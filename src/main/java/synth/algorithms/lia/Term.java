@@ -1,8 +1,8 @@
 package synth.algorithms.lia;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import synth.core.Environment;
 
@@ -11,7 +11,8 @@ public final class Term implements Comparable<Term> {
     public static final int MAX_INDEX = MAX_INDEX_POWER * MAX_INDEX_POWER * MAX_INDEX_POWER;
 
     // private static final Term[] arrayCache = new Term[4096];
-    private static final HashMap<Integer, Term> hashCache = new HashMap<>();
+    // Shared by every solver, on whatever thread
+    private static final ConcurrentHashMap<Integer, Term> hashCache = new ConcurrentHashMap<>();
 
     public static final Term TERM_1 = make(0, 0, 0);
     public static final Term TERM_X = make(1, 0, 0);
@@ -0,0 +1,91 @@
+package synth.algorithms.lia;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import synth.core.Example;
+import synth.core.ExampleColumns;
+
+/**
+ * The value of every Term at every example of one problem, so the solvers and
+ * solution checks read them out of an array instead of calling evalTerm() over
+ * and over. Each term's row is a dense int[] over the examples, in list order,
+ * computed the first time that term is asked for. Rows are never modified once
+ * built, so a matrix can be shared between threads.
+ */
+public final class TermMatrix {
+    private final List<Example> examples;
+    private final ExampleColumns columns;
+    private final HashMap<Example, Integer> indices;
+    private final ConcurrentHashMap<Term, int[]> rows = new ConcurrentHashMap<>();
+
+    public TermMatrix(List<Example> examples) {
+        this.examples = List.copyOf(examples);
+        this.columns = ExampleColumns.of(this.examples);
+        this.indices = new HashMap<>(examples.size() * 2);
+        for (int i = 0; i < this.examples.size(); ++i) {
+            indices.putIfAbsent(this.examples.get(i), i);
+        }
+    }
+
+    public int exampleCount() {
+        return examples.size();
+    }
+
+    public Example example(int index) {
+        return examples.get(index);
+    }
+
+    /**
+     * @return the index of example in this matrix, or -1 if it isn't one of its
+     *         examples
+     */
+    public int exampleIndex(Example example) {
+        var index = indices.get(example);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * The examples as columns, in the same order as the rows. Don't modify them.
+     */
+    public ExampleColumns columns() {
+        return columns;
+    }
+
+    /**
+     * @return t's value at each example, by example index; don't modify it
+     */
+    public int[] values(Term t) {
+        return rows.computeIfAbsent(t, this::computeRow);
+    }
+
+    /**
+     * @return values(t) for each of terms, in the same order
+     */
+    public int[][] values(List<Term> terms) {
+        var result = new int[terms.size()][];
+        for (int k = 0; k < result.length; ++k) {
+            result[k] = values(terms.get(k));
+        }
+        return result;
+    }
+
+    private int[] computeRow(Term t) {
+        int n = columns.size();
+        int[] xs = columns.xs(), ys = columns.ys(), zs = columns.zs();
+        int xPower = t.xPower(), yPower = t.yPower(), zPower = t.zPower();
+        var row = new int[n];
+        for (int i = 0; i < n; ++i) {
+            // Same arithmetic (and wraparound) as Term.evalTerm()
+            int value = 1;
+            for (int p = 0; p < xPower; ++p)
+                value *= xs[i];
+            for (int p = 0; p < yPower; ++p)
+                value *= ys[i];
+            for (int p = 0; p < zPower; ++p)
+                value *= zs[i];
+            row[i] = value;
+        }
+        return row;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.logging.*;
 import com.microsoft.z3.*;
 
 import synth.algorithms.classify.Classification;
+import synth.algorithms.classify.InputUniverse;
 import synth.algorithms.classify.PartialSolution;
 import synth.algorithms.rng.Xoshiro256SS;
 import synth.core.Example;
@@ -17,11 +18,13 @@ public class Z3LinearSolver extends LinearSolver {
     protected int maxConst = 0;
     protected int maxSols = 5;
     private Context z3;
+    private final ExactLinearPresolver presolver;
 
     public Z3LinearSolver(Xoshiro256SS rng, int maxOrder, int maxConst) {
         super(rng);
         this.terms = Term.makeUpToOrder(maxOrder);
         this.maxConst = maxConst;
+        this.presolver = new ExactLinearPresolver(terms, maxConst, 0);
     }
 
     public static final int SHORT_TIMEOUT_MS = 5000;
@@ -34,6 +37,7 @@ public class Z3LinearSolver extends LinearSolver {
     public Collection<PartialSolution> computeSolutionSets(List<Example> examples) throws InterruptedException {
         try (var z3Managed = new Context()) {
             z3 = z3Managed;
+            setTermMatrix(new TermMatrix(examples));
 
             assert examples.size() > 0;
 
@@ -73,9 +77,17 @@ public class Z3LinearSolver extends LinearSolver {
                 }
             }
 
-            return Set.of(solutions.stream()
-                    .map(sol -> new PartialSolution(sol, Classification.makeFromExamples(sol, examples)))
-                    .toArray(PartialSolution[]::new));
+            var matrix = termMatrix();
+            var universe = InputUniverse.ofExamples(examples);
+            var values = new int[matrix.exampleCount()];
+            var result = new HashSet<PartialSolution>();
+            for (var sol : solutions) {
+                sol.evalExprBatch(matrix, values);
+                result.add(new PartialSolution(sol, Classification.makeFromValues(values, matrix.columns(), universe)));
+            }
+            return Set.copyOf(result);
+        } finally {
+            setTermMatrix(null);
         }
     }
 
@@ -101,6 +113,18 @@ public class Z3LinearSolver extends LinearSolver {
                 continue;
             }
 
+            // Obvious contradictions don't need Z3
+            var candidates = new ArrayList<Example>(included);
+            candidates.add(ej);
+            if (presolver.presolve(candidates, termMatrix()).outcome() == ExactLinearPresolver.Outcome.INFEASIBLE) {
+                logger.log(Level.INFO, "-- Rejected by presolve: {0}", new Object[] { ej });
+                ++rejectCount;
+                if (rejectCount > 3 && res != null) {
+                    return res;
+                }
+                continue;
+            }
+
             // Set up the Z3 solve session
             var sess = startSession(SHORT_TIMEOUT_MS);
             for (var ei : included) {
@@ -172,6 +196,8 @@ public class Z3LinearSolver extends LinearSolver {
             }
             z3Status = Status.UNKNOWN;
 
+            var matrix = termMatrix();
+            int e = matrix != null ? matrix.exampleIndex(example) : -1;
             var z3Consts = new ArrayList<ArithExpr<IntSort>>();
             for (var term : terms) {
                 var z3C = z3Coeffs.computeIfAbsent(term, t -> {
@@ -188,7 +214,8 @@ public class Z3LinearSolver extends LinearSolver {
                     z3Solver.add(z3.mkLe(newC, z3CMax));
                     return newC;
                 });
-                z3Consts.add(z3.mkMul(z3.mkInt(term.evalTerm(example.input())), z3C));
+                int value = e >= 0 ? matrix.values(term)[e] : term.evalTerm(example.input());
+                z3Consts.add(z3.mkMul(z3.mkInt(value), z3C));
             }
             var sum = z3.mkAdd(z3Consts.toArray(ArithExpr[]::new));
             var eqn = z3.mkEq(sum, z3.mkInt(example.output()));
@@ -1,12 +1,11 @@
 package synth.algorithms.mcmc;
 
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ExecutorService;
 
 import synth.algorithms.classify.*;
 import synth.algorithms.representation.*;
 import synth.algorithms.rng.Xoshiro256SS;
-import synth.core.Environment;
 import synth.core.Example;
 import synth.util.Bits;
 
@@ -90,7 +89,10 @@ public class McmcDecisionTreeOptimizer extends McmcOptimizer<McmcDecisionTreeOpt
             }
         }
 
-        public float cost(Example e) {
+        /**
+         * @param input the index of the example's input in the optimizer's universe
+         */
+        public float cost(int input) {
             int cost = 0;
             int index = 0;
             int i;
@@ -98,13 +100,13 @@ public class McmcDecisionTreeOptimizer extends McmcOptimizer<McmcDecisionTreeOpt
                 var jump = jumpTable[index];
                 if (jump == index || jump < 0) {
                     break;
-                } else if (discriminators[index].classification().included().contains(e.input())) {
+                } else if (discriminators[index].classification().includes(input)) {
                     index = jump;
                 } else {
                     index = (jump + 1) % treeSize();
                 }
             }
-            if (!solutions[index].application().included().contains(e.input())) {
+            if (!solutions[index].application().includes(input)) {
                 cost += misclassifyCost;
             }
             cost += i;
@@ -133,11 +135,16 @@ public class McmcDecisionTreeOptimizer extends McmcOptimizer<McmcDecisionTreeOpt
         }
     }
 
+    private static final long SWAP_INTERVAL = 4096;
+
     private int treeSize;
 
     private PartialSolution[] solutionPool;
     private Discriminator[] discriminatorPool;
     private Collection<Example> examples;
+    private InputUniverse universe;
+    // The universe index of each example's input, in examples order
+    private int[] exampleInputs;
 
     private int misclassifyCost;
     private int dawdleCost;
@@ -159,6 +166,18 @@ public class McmcDecisionTreeOptimizer extends McmcOptimizer<McmcDecisionTreeOpt
         this.solutionPool = solutionPool.toArray(PartialSolution[]::new);
         this.discriminatorPool = discriminatorPool.toArray(Discriminator[]::new);
         this.examples = List.copyOf(examples);
+        this.universe = InputUniverse.ofExamples(examples);
+        this.exampleInputs = this.examples.stream().mapToInt(ex -> universe.indexOf(ex.input())).toArray();
+        for (var d : this.discriminatorPool) {
+            if (!d.classification().universe().equals(universe)) {
+                throw new IllegalArgumentException("Discriminators must classify exactly the example inputs");
+            }
+        }
+        for (var ps : this.solutionPool) {
+            if (!ps.application().universe().equals(universe)) {
+                throw new IllegalArgumentException("Partial solutions must classify exactly the example inputs");
+            }
+        }
 
         this.misclassifyCost = 10 * examples.size();
         this.dawdleCost = 10;
@@ -169,35 +188,70 @@ public class McmcDecisionTreeOptimizer extends McmcOptimizer<McmcDecisionTreeOpt
         spare = x;
     }
 
+    /**
+     * A sibling optimizer over the same pools and examples, with its own rng and
+     * spare, for running as another replica.
+     */
+    private McmcDecisionTreeOptimizer(McmcDecisionTreeOptimizer other, Xoshiro256SS rng) {
+        super(rng);
+        this.treeSize = other.treeSize;
+        this.solutionPool = other.solutionPool;
+        this.discriminatorPool = other.discriminatorPool;
+        this.examples = other.examples;
+        this.universe = other.universe;
+        this.exampleInputs = other.exampleInputs;
+        this.misclassifyCost = other.misclassifyCost;
+        this.dawdleCost = other.dawdleCost;
+    }
+
     public OptimizationResult<FlatDecisionTree> optimize(int maxIterations) throws InterruptedException {
-        var inputs = Set.of(examples.stream().map(ex -> ex.input()).toArray(Environment[]::new));
+        return super.optimize(makeRandomized(), this::generateFrom, this::computeCost, targetCost(), this::validate,
+                maxIterations);
+    }
 
-        Function<FlatDecisionTree, Boolean> validate = (dt) -> {
-            var d = dt.reifyAsDecisionTree();
-            if (d instanceof PartialSolution) {
-                // Degenerate case
-                return ((PartialSolution) d).application().included().containsAll(inputs);
-            } else {
-                // Classify examples using the decision tree, and check they ended up in a
-                // compatible solution
-                for (var input : inputs) {
-                    var ps = (PartialSolution) ((DecisionTree) d).classify(input);
-                    if (!ps.application().included().contains(input)) {
-                        return false;
-                    }
+    /**
+     * Optimize with chains replicas in parallel on executor, see
+     * McmcOptimizer.optimizeTempered(). This optimizer runs the first chain, and
+     * the others get subsequences of splitRng.
+     */
+    public OptimizationResult<FlatDecisionTree> optimize(int maxIterations, int chains, float minBeta,
+            ExecutorService executor, Xoshiro256SS splitRng) throws InterruptedException {
+        var replicas = new ArrayList<Replica<FlatDecisionTree>>(chains);
+        for (int i = 0; i < chains; ++i) {
+            var opt = i == 0 ? this : new McmcDecisionTreeOptimizer(this, splitRng.nextSubsequence());
+            replicas.add(new Replica<>(opt, opt.makeRandomized(), opt::generateFrom, opt::computeCost,
+                    opt::validate));
+        }
+        return optimizeTempered(replicas, minBeta, targetCost(), maxIterations, SWAP_INTERVAL, executor,
+                splitRng.nextSubsequence());
+    }
+
+    private float targetCost() {
+        return examples.size() * treeSize / 2 + 0.5f;
+    }
+
+    protected boolean validate(FlatDecisionTree dt) {
+        var d = dt.reifyAsDecisionTree();
+        if (d instanceof PartialSolution) {
+            // Degenerate case
+            return ((PartialSolution) d).application().excludedCount() == 0;
+        } else {
+            // Classify examples using the decision tree, and check they ended up in a
+            // compatible solution
+            for (int i = 0; i < universe.size(); ++i) {
+                var ps = (PartialSolution) ((DecisionTree) d).classify(universe.input(i));
+                if (!ps.application().includes(i)) {
+                    return false;
                 }
-                return true;
             }
-        };
-
-        return super.optimize(makeRandomized(), this::generateFrom, this::computeCost,
-                examples.size() * treeSize / 2 + 0.5f, validate, maxIterations);
+            return true;
+        }
     }
 
     protected float computeCost(FlatDecisionTree x) {
         float cost = 0f;
-        for (var e : examples) {
-            cost += x.cost(e);
+        for (var input : exampleInputs) {
+            cost += x.cost(input);
         }
         return cost;
     }
@@ -1,9 +1,13 @@
 package synth.algorithms.mcmc;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.logging.*;
 
 import synth.algorithms.rng.Xoshiro256SS;
+import synth.util.Metrics;
 
 public abstract class McmcOptimizer<T> {
     private static Logger logger = Logger.getLogger(McmcOptimizer.class.getName());
@@ -60,7 +64,7 @@ public abstract class McmcOptimizer<T> {
         // ALWAYS discard, this is best effort basis!
     }
 
-    protected float acceptProbability(float curCost, float candidateCost) {
+    protected float acceptProbability(float curCost, float candidateCost, float beta) {
         // if checks probably make this faster by skipping exp, also if the cost value
         // reaches 0 then exp gets squirrelly -- this is only mathematically significant
         // in that it's a special case to handle, so I'm comfortable that this
@@ -71,40 +75,49 @@ public abstract class McmcOptimizer<T> {
         if (curCost <= 0f) {
             return 0f;
         }
-        final float beta = 1f;
         return (float) Math.exp(-beta * candidateCost / curCost);
     }
 
-    public OptimizationResult<T> optimize(T initialX, Function<T, T> generateFrom, Function<T, Float> computeCost,
-            float targetCost, Function<T, Boolean> validate, long maxIterations) throws InterruptedException {
-        logger.log(Level.INFO, "Begin MCMC optimize of {0}, target cost {1}, max iterations {2}",
-                new Object[] { initialX.getClass().getSimpleName(), targetCost, maxIterations });
-        T curX = initialX;
-        float curCost = computeCost.apply(curX);
+    /**
+     * The state of one Markov chain -- everything optimize() used to keep in
+     * locals, so that the same stepping code can run a single chain or one
+     * replica of a tempered optimization.
+     */
+    private class Chain {
+        private final Function<T, T> generateFrom;
+        private final Function<T, Float> computeCost;
+        private final Function<T, Boolean> validate;
+        private final float targetCost;
 
-        T bestX = curX;
-        float bestCost = curCost;
-        boolean bestIsValid = false;
+        private float beta = 1f;
+        private T curX;
+        private float curCost;
+        private T bestX;
+        private float bestCost;
+        private boolean bestIsValid = false;
+        private long iterations = 0;
+        private long acceptedCount = 0;
 
-        final long giga = 1000000000;
-        long i;
-        long startNs = System.nanoTime();
-        long lastNs = startNs;
-        for (i = 0; (i < maxIterations) && (bestCost > targetCost) && !bestIsValid; ++i) {
-            long nowNs = System.nanoTime();
-            if (nowNs - lastNs > giga) {
-                lastNs = nowNs - (nowNs - startNs) % giga;
-                logger.log(Level.INFO, "MCMC heartbeat: cost {0} (best {1}), {2} iterations ({3}/s)",
-                        new Object[] { curCost, bestCost, i, i * giga / (nowNs - startNs) });
-            }
+        Chain(T initialX, Function<T, T> generateFrom, Function<T, Float> computeCost, float targetCost,
+                Function<T, Boolean> validate) {
+            this.generateFrom = generateFrom;
+            this.computeCost = computeCost;
+            this.validate = validate;
+            this.targetCost = targetCost;
+            this.curX = initialX;
+            this.curCost = computeCost.apply(initialX);
+            this.bestX = curX;
+            this.bestCost = curCost;
+        }
 
-            if (Thread.interrupted()) {
-                throw new InterruptedException("Thread interrupted during McmcOptimizer::optimize()");
-            }
+        boolean finished() {
+            return bestCost <= targetCost || bestIsValid;
+        }
 
+        void step() {
             T candidateX = generateFrom.apply(curX);
             float candidateCost = computeCost.apply(candidateX);
-            boolean accepted = (rng.nextFloat() < acceptProbability(curCost, candidateCost));
+            boolean accepted = (rng.nextFloat() < acceptProbability(curCost, candidateCost, beta));
             boolean best = false;
 
             if (validate == null) {
@@ -128,18 +141,244 @@ public abstract class McmcOptimizer<T> {
             if (accepted) {
                 curX = candidateX;
                 curCost = candidateCost;
+                ++acceptedCount;
             }
             if (best) {
                 bestX = candidateX;
                 bestCost = candidateCost;
             }
+            ++iterations;
         }
 
-        if (validate == null) {
-            bestIsValid = (bestCost <= targetCost);
+        /**
+         * Run until finished, maxIterations is reached, or stop is set, checking the
+         * stop flag (and for interruption) every so often.
+         */
+        void run(long maxIterations, AtomicBoolean stop) throws InterruptedException {
+            while (iterations < maxIterations && !finished()) {
+                if ((iterations & 0xFF) == 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException("Thread interrupted during McmcOptimizer::optimizeTempered()");
+                    }
+                    if (stop.get()) {
+                        return;
+                    }
+                }
+                step();
+            }
         }
 
-        return new OptimizationResult<T>(bestCost <= targetCost, bestX, bestCost, bestIsValid, i);
+        /**
+         * Add this chain's iterations and acceptances to the metrics; only call once
+         * it's done
+         */
+        void recordMetrics() {
+            Metrics.count("mcmc.iterations", iterations);
+            Metrics.count("mcmc.accepted", acceptedCount);
+            Metrics.sample("mcmc.bestCost", bestCost);
+        }
+
+        OptimizationResult<T> result() {
+            boolean valid = (validate == null) ? (bestCost <= targetCost) : bestIsValid;
+            return new OptimizationResult<T>(bestCost <= targetCost, bestX, bestCost, valid, iterations);
+        }
+    }
+
+    public OptimizationResult<T> optimize(T initialX, Function<T, T> generateFrom, Function<T, Float> computeCost,
+            float targetCost, Function<T, Boolean> validate, long maxIterations) throws InterruptedException {
+        logger.log(Level.INFO, "Begin MCMC optimize of {0}, target cost {1}, max iterations {2}",
+                new Object[] { initialX.getClass().getSimpleName(), targetCost, maxIterations });
+        var chain = new Chain(initialX, generateFrom, computeCost, targetCost, validate);
+
+        final long giga = 1000000000;
+        long startNs = System.nanoTime();
+        long lastNs = startNs;
+        while ((chain.iterations < maxIterations) && !chain.finished()) {
+            long nowNs = System.nanoTime();
+            if (nowNs - lastNs > giga) {
+                lastNs = nowNs - (nowNs - startNs) % giga;
+                logger.log(Level.INFO, "MCMC heartbeat: cost {0} (best {1}), {2} iterations ({3}/s)",
+                        new Object[] { chain.curCost, chain.bestCost, chain.iterations,
+                                chain.iterations * giga / (nowNs - startNs) });
+            }
+            if ((chain.iterations & 0x3FF) == 0) {
+                Metrics.sample("mcmc.bestCost", chain.bestCost);
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Thread interrupted during McmcOptimizer::optimize()");
+            }
+
+            chain.step();
+        }
+
+        chain.recordMetrics();
+        return chain.result();
+    }
+
+    /**
+     * One chain of a tempered optimization. Each replica runs on its own thread,
+     * so it needs its own optimizer (and with it, its own rng stream and spare
+     * buffers) and its own cost function -- the batch cost functions hold scratch
+     * buffers. validate is only ever called from the replica's thread too.
+     */
+    public static class Replica<U> {
+        private final McmcOptimizer<U> optimizer;
+        private final U initialX;
+        private final Function<U, U> generateFrom;
+        private final Function<U, Float> computeCost;
+        private final Function<U, Boolean> validate;
+
+        public Replica(McmcOptimizer<U> optimizer, U initialX, Function<U, U> generateFrom,
+                Function<U, Float> computeCost, Function<U, Boolean> validate) {
+            this.optimizer = optimizer;
+            this.initialX = initialX;
+            this.generateFrom = generateFrom;
+            this.computeCost = computeCost;
+            this.validate = validate;
+        }
+
+        private McmcOptimizer<U>.Chain makeChain(float targetCost) {
+            return optimizer.new Chain(initialX, generateFrom, computeCost, targetCost, validate);
+        }
+    }
+
+    /**
+     * Replica exchange (parallel tempering): run one chain per replica, each at a
+     * different beta, on executor. The coldest chain runs at beta = 1, same as
+     * optimize(), and the rest are spaced geometrically down to minBeta, so the
+     * hot chains wander over much more of the space. Every swapInterval
+     * iterations the chains all pause and neighbouring temperatures are offered a
+     * swap, which lets a good state found by a hot chain get refined by a cold
+     * one.
+     * 
+     * Rather than moving states between chains we swap their betas, which is
+     * equivalent and means a state never leaves the optimizer whose buffers it
+     * was built from.
+     * 
+     * @param maxIterations the iteration limit for each chain
+     * @param rng           drives the swap decisions; only used on the calling
+     *                      thread
+     * @return the best result over all chains, preferring valid ones; iterations
+     *         is the total over all chains
+     */
+    public static <U> OptimizationResult<U> optimizeTempered(List<Replica<U>> replicas, float minBeta,
+            float targetCost, long maxIterations, long swapInterval, ExecutorService executor, Xoshiro256SS rng)
+            throws InterruptedException {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one replica");
+        }
+        if (!(minBeta > 0f && minBeta <= 1f)) {
+            throw new IllegalArgumentException("minBeta must be in (0, 1]");
+        }
+        if (swapInterval <= 0) {
+            throw new IllegalArgumentException("swapInterval must be positive");
+        }
+        logger.log(Level.INFO, "Begin tempered MCMC optimize with {0} chains, target cost {1}, max iterations {2}",
+                new Object[] { replicas.size(), targetCost, maxIterations });
+
+        int n = replicas.size();
+        var chains = new ArrayList<McmcOptimizer<U>.Chain>(n);
+        for (var r : replicas) {
+            chains.add(r.makeChain(targetCost));
+        }
+        // ladder[k] is the chain currently running at the k'th coldest temperature
+        var ladder = new int[n];
+        for (int k = 0; k < n; ++k) {
+            ladder[k] = k;
+            chains.get(k).beta = n == 1 ? 1f : (float) Math.pow(minBeta, (double) k / (n - 1));
+        }
+
+        var stop = new AtomicBoolean(false);
+        var tasks = new ArrayList<Callable<Void>>(n);
+        long roundEnd = 0;
+        for (var c : chains) {
+            tasks.add(() -> {
+                try {
+                    c.run(Math.min(c.iterations + swapInterval, maxIterations), stop);
+                    if (c.finished()) {
+                        stop.set(true);
+                    }
+                } catch (InterruptedException e) {
+                    stop.set(true);
+                    throw e;
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (int round = 0; roundEnd < maxIterations && !stop.get(); ++round) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Thread interrupted during McmcOptimizer::optimizeTempered()");
+                }
+                roundEnd = Math.min(roundEnd + swapInterval, maxIterations);
+                for (var f : executor.invokeAll(tasks)) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof InterruptedException) {
+                            throw (InterruptedException) e.getCause();
+                        }
+                        throw new IllegalStateException("MCMC chain failed", e.getCause());
+                    }
+                }
+
+                // Alternate between offering swaps to the even and odd pairs, so every
+                // neighbouring pair gets a chance but no chain is in two swaps at once
+                for (int k = round & 1; k + 1 < n; k += 2) {
+                    var cold = chains.get(ladder[k]);
+                    var hot = chains.get(ladder[k + 1]);
+                    if (shouldSwap(cold, hot, rng)) {
+                        var tmpBeta = cold.beta;
+                        cold.beta = hot.beta;
+                        hot.beta = tmpBeta;
+                        var tmp = ladder[k];
+                        ladder[k] = ladder[k + 1];
+                        ladder[k + 1] = tmp;
+                    }
+                }
+                logger.log(Level.FINE, "MCMC tempering round {0}: coldest cost {1}",
+                        new Object[] { round, chains.get(ladder[0]).curCost });
+                Metrics.sample("mcmc.bestCost", chains.stream().mapToDouble(c -> c.bestCost).min().getAsDouble());
+            }
+        } finally {
+            // If we're bailing out early, make sure nothing is left running
+            stop.set(true);
+        }
+
+        McmcOptimizer<U>.Chain best = null;
+        long iterations = 0;
+        for (var c : chains) {
+            c.recordMetrics();
+            iterations += c.iterations;
+            var r = c.result();
+            if (best == null || (r.bestIsValid() && !best.result().bestIsValid())
+                    || (r.bestIsValid() == best.result().bestIsValid() && c.bestCost < best.bestCost)) {
+                best = c;
+            }
+        }
+        var r = best.result();
+        return new OptimizationResult<U>(r.reachedTargetCost(), r.bestX(), r.bestCost(), r.bestIsValid(),
+                iterations);
+    }
+
+    /**
+     * The usual replica exchange criterion is min(1, exp((beta_cold - beta_hot) *
+     * (E_cold - E_hot))); the energies here are normalized by the cold chain's
+     * current cost, the same way acceptProbability() normalizes by the current
+     * cost, so the swap rate doesn't depend on the scale of the cost function.
+     */
+    private static <U> boolean shouldSwap(McmcOptimizer<U>.Chain cold, McmcOptimizer<U>.Chain hot,
+            Xoshiro256SS rng) {
+        if (hot.curCost <= cold.curCost) {
+            return true;
+        }
+        if (cold.curCost <= 0f) {
+            return false;
+        }
+        double p = Math.exp(-(cold.beta - hot.beta) * (hot.curCost - cold.curCost) / cold.curCost);
+        return rng.nextFloat() < p;
     }
 
 }
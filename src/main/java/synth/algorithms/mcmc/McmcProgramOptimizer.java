@@ -1,13 +1,16 @@
 package synth.algorithms.mcmc;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import synth.algorithms.classify.Classification;
 import synth.algorithms.rng.Xoshiro256SS;
 import synth.core.Environment;
 import synth.core.Example;
+import synth.core.ExampleColumns;
 import synth.dsl.*;
 
 public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
@@ -46,6 +49,8 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
         // The rest of the symbols in the table are null, i.e. no-op
     }
 
+    private static final long SWAP_INTERVAL = 4096;
+
     private Symbol[] spare;
 
     public McmcProgramOptimizer(Xoshiro256SS rng) {
@@ -65,28 +70,120 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
         return x;
     }
 
-    public static Function<Symbol[], Float> examplesCostFunction(Collection<Example> examples) {
-        return x -> {
-            int cost = 0;
-            for (var e : examples) {
-                int eval = Semantics.evaluateExprPostOrder(x, e.input());
-                if (eval > e.output()) {
-                    cost += 20;
-                } else {
-                    cost += Math.min(20, e.output() - eval);
+    /**
+     * Optimize with one replica per initial program in parallel on executor, see
+     * McmcOptimizer.optimizeTempered(). This optimizer runs the first chain, and
+     * the others get subsequences of splitRng (our own rng is usually a
+     * subsequence already, so it can't be split further). makeCost is called once
+     * per replica, since the batch cost functions can't be shared between
+     * threads.
+     */
+    public OptimizationResult<Symbol[]> optimize(List<Symbol[]> initialXs, Symbol[] symbolPool,
+            Supplier<Function<Symbol[], Float>> makeCost, float targetCost, Function<Symbol[], Boolean> validate,
+            long maxIterations, float minBeta, ExecutorService executor, Xoshiro256SS splitRng) throws InterruptedException {
+        var replicas = new ArrayList<Replica<Symbol[]>>(initialXs.size());
+        for (var x : initialXs) {
+            var opt = replicas.isEmpty() ? this : new McmcProgramOptimizer(splitRng.nextSubsequence());
+            replicas.add(new Replica<>(opt, x, opt.generateFromFunction(symbolPool), makeCost.get(), validate));
+        }
+        return optimizeTempered(replicas, minBeta, targetCost, maxIterations, SWAP_INTERVAL, executor,
+                splitRng.nextSubsequence());
+    }
+
+    /**
+     * Below this many examples, IncrementalEvaluator's bookkeeping costs more than
+     * the evaluation it saves, and the batch cost functions use a PackedEvaluator
+     * instead.
+     */
+    private static final int INCREMENTAL_MIN_EXAMPLES = 256;
+
+    /**
+     * The costs of the last couple of distinct results from an
+     * IncrementalEvaluator, by result version. Most MCMC candidates either
+     * differ from the current program only in dead code, and so have the same
+     * result, or get rejected, so these two cover most repeats.
+     */
+    private static final class CostCache {
+        private final long[] versions = new long[] { -1, -1 };
+        private final float[] costs = new float[2];
+        private int next = 0;
+
+        /**
+         * @return the cached cost, or NaN if there isn't one
+         */
+        float lookup(long version) {
+            for (int i = 0; i < 2; ++i) {
+                if (versions[i] == version) {
+                    next = 1 - i;
+                    return costs[i];
                 }
             }
-            return (float) cost;
+            return Float.NaN;
+        }
+
+        void store(long version, float cost) {
+            versions[next] = version;
+            costs[next] = cost;
+            next = 1 - next;
+        }
+    }
+
+    /**
+     * Note the returned function holds scratch buffers and its own evaluator, so
+     * it must not be shared between threads. For big example sets it evaluates
+     * incrementally, reusing whatever it can from the last couple of programs it
+     * saw.
+     */
+    public static Function<Symbol[], Float> examplesCostFunction(Collection<Example> examples) {
+        var columns = ExampleColumns.of(examples);
+        var outputs = columns.outputs();
+        var values = new int[columns.size()];
+        if (columns.size() >= INCREMENTAL_MIN_EXAMPLES) {
+            var evaluator = new IncrementalEvaluator(columns);
+            var cache = new CostCache();
+            return x -> {
+                long version = evaluator.evaluateExpr(x);
+                float cost = cache.lookup(version);
+                if (Float.isNaN(cost)) {
+                    evaluator.exprResult(values);
+                    cost = examplesCost(values, outputs);
+                    cache.store(version, cost);
+                }
+                return cost;
+            };
+        }
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
+        return x -> {
+            packed.repack(x);
+            evaluator.evaluateExprBatch(packed, columns, values);
+            return examplesCost(values, outputs);
         };
     }
 
+    private static float examplesCost(int[] values, int[] outputs) {
+        int cost = 0;
+        for (int i = 0; i < values.length; ++i) {
+            int eval = values[i];
+            if (eval > outputs[i]) {
+                cost += 20;
+            } else {
+                cost += Math.min(20, outputs[i] - eval);
+            }
+        }
+        return (float) cost;
+    }
+
     public static Function<Symbol[], Float> examplesCostFunction(List<Example> examples, Xoshiro256SS rng,
             int sampleCount) {
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
         return x -> {
+            packed.repack(x);
             int cost = 0;
             for (int i = 0; i < sampleCount; ++i) {
                 var e = examples.get(rng.nextInt(examples.size()));
-                int eval = Semantics.evaluateExprPostOrder(x, e.input());
+                int eval = evaluator.evaluateExpr(packed, e.input());
                 if (eval > e.output()) {
                     cost += 40;
                 } else if (eval < e.output()) {
@@ -113,8 +210,8 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
 
     public static Function<Symbol[], Float> confusionCostFunction(Classification classification,
             float falsePositiveBias, float falseNegativeBias) {
-        var inSize = classification.included().size();
-        var exSize = classification.excluded().size();
+        var inSize = classification.includedCount();
+        var exSize = classification.excludedCount();
         if (inSize == 0 && exSize == 0) {
             throw new IllegalArgumentException("classification is empty");
         }
@@ -142,24 +239,19 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
     }
 
     public static Function<Symbol[], Float> inclusionsCostFunction(Collection<Environment> included) {
-        return x -> {
-            int failures = 0;
-            for (var e : included) {
-                if (!Semantics.evaluateBoolPostOrder(x, e)) {
-                    ++failures;
-                }
-            }
-            return (float) failures;
-        };
+        return failuresCostFunction(included, true);
     }
 
     public static Function<Symbol[], Float> inclusionsCostFunction(List<Environment> included, Xoshiro256SS rng,
             int sampleCount) {
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
         return x -> {
+            packed.repack(x);
             int failures = 0;
             for (int i = 0; i < sampleCount; ++i) {
                 var e = included.get(rng.nextInt(included.size()));
-                if (!Semantics.evaluateBoolPostOrder(x, e)) {
+                if (!evaluator.evaluateBool(packed, e)) {
                     ++failures;
                 }
             }
@@ -168,24 +260,19 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
     }
 
     public static Function<Symbol[], Float> exclusionsCostFunction(Collection<Environment> excluded) {
-        return x -> {
-            int failures = 0;
-            for (var e : excluded) {
-                if (Semantics.evaluateBoolPostOrder(x, e)) {
-                    ++failures;
-                }
-            }
-            return (float) failures;
-        };
+        return failuresCostFunction(excluded, false);
     }
 
     public static Function<Symbol[], Float> exclusionsCostFunction(List<Environment> excluded, Xoshiro256SS rng,
             int sampleCount) {
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
         return x -> {
+            packed.repack(x);
             int failures = 0;
             for (int i = 0; i < sampleCount; ++i) {
                 var e = excluded.get(rng.nextInt(excluded.size()));
-                if (Semantics.evaluateBoolPostOrder(x, e)) {
+                if (evaluator.evaluateBool(packed, e)) {
                     ++failures;
                 }
             }
@@ -193,6 +280,47 @@ public class McmcProgramOptimizer extends McmcOptimizer<Symbol[]> {
         };
     }
 
+    /**
+     * The number of inputs the condition doesn't give the expected value for; see
+     * examplesCostFunction() about threads.
+     */
+    private static Function<Symbol[], Float> failuresCostFunction(Collection<Environment> inputs,
+            boolean expected) {
+        var columns = ExampleColumns.ofInputs(inputs);
+        var values = new boolean[columns.size()];
+        if (columns.size() >= INCREMENTAL_MIN_EXAMPLES) {
+            var evaluator = new IncrementalEvaluator(columns);
+            var cache = new CostCache();
+            return x -> {
+                long version = evaluator.evaluateBool(x);
+                float cost = cache.lookup(version);
+                if (Float.isNaN(cost)) {
+                    evaluator.boolResult(values);
+                    cost = countFailures(values, expected);
+                    cache.store(version, cost);
+                }
+                return cost;
+            };
+        }
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
+        return x -> {
+            packed.repack(x);
+            evaluator.evaluateBoolBatch(packed, columns, values);
+            return countFailures(values, expected);
+        };
+    }
+
+    private static float countFailures(boolean[] values, boolean expected) {
+        int failures = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] != expected) {
+                ++failures;
+            }
+        }
+        return (float) failures;
+    }
+
     private static final Map<Symbol, Symbol> ROTATE_LEFT_MAP = Map.of(
             Symbol.Const1, Symbol.Const2,
             Symbol.Const2, Symbol.Const3,
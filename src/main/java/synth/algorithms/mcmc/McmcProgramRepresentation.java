@@ -3,6 +3,7 @@ package synth.algorithms.mcmc;
 import synth.algorithms.ast.*;
 import synth.algorithms.representation.*;
 import synth.core.Environment;
+import synth.core.ExampleColumns;
 import synth.core.ParseNode;
 import synth.dsl.*;
 
@@ -30,6 +31,11 @@ public class McmcProgramRepresentation implements ExprRepresentation, BoolRepres
         return Semantics.evaluateBoolPostOrder(program, env);
     }
 
+    @Override
+    public void evalBoolBatch(ExampleColumns inputs, boolean[] out) {
+        Semantics.evaluateBoolPostOrderBatch(program, inputs, out);
+    }
+
     @Override
     public ExprNode reifyAsExprAst() {
         return Asts.makeExprAstFromParse(Semantics.makeParseTreeFromExprPostOrder(program));
@@ -44,5 +50,10 @@ public class McmcProgramRepresentation implements ExprRepresentation, BoolRepres
     public int evalExpr(Environment env) {
         return Semantics.evaluateExprPostOrder(program, env);
     }
+
+    @Override
+    public void evalExprBatch(ExampleColumns inputs, int[] out) {
+        Semantics.evaluateExprPostOrderBatch(program, inputs, out);
+    }
     
 }
@@ -7,4 +7,10 @@ public interface BoolRepresentation {
     public BoolNode reifyAsBoolAst();
     public ParseNode reifyAsBoolParse();
     public boolean evalBool(Environment env);
+
+    public default void evalBoolBatch(ExampleColumns inputs, boolean[] out) {
+        for (int i = 0; i < inputs.size(); ++i) {
+            out[i] = evalBool(inputs.input(i));
+        }
+    }
 }
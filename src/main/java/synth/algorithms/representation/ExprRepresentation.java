@@ -7,4 +7,10 @@ public interface ExprRepresentation {
     public ExprNode reifyAsExprAst();
     public ParseNode reifyAsExprParse();
     public int evalExpr(Environment env);
+
+    public default void evalExprBatch(ExampleColumns inputs, int[] out) {
+        for (int i = 0; i < inputs.size(); ++i) {
+            out[i] = evalExpr(inputs.input(i));
+        }
+    }
 }
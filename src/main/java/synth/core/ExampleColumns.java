@@ -0,0 +1,76 @@
+package synth.core;
+
+import java.util.*;
+
+/**
+ * A set of examples (or just inputs) stored column-wise as primitive arrays,
+ * for evaluating one program over all of them at once with the batch
+ * evaluators in Semantics. Build one of these up front and reuse it -- the
+ * whole point is to not touch the boxed Example/Environment objects in the
+ * inner loop.
+ */
+public final class ExampleColumns {
+    private final Environment[] inputs;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    private final int[] outputs;
+
+    private ExampleColumns(Environment[] inputs, int[] outputs) {
+        int n = inputs.length;
+        this.inputs = inputs;
+        this.xs = new int[n];
+        this.ys = new int[n];
+        this.zs = new int[n];
+        this.outputs = outputs;
+        for (int i = 0; i < n; ++i) {
+            xs[i] = inputs[i].x();
+            ys[i] = inputs[i].y();
+            zs[i] = inputs[i].z();
+        }
+    }
+
+    public static ExampleColumns of(Collection<Example> examples) {
+        var inputs = new Environment[examples.size()];
+        var outputs = new int[examples.size()];
+        int i = 0;
+        for (var ex : examples) {
+            inputs[i] = ex.input();
+            outputs[i] = ex.output();
+            ++i;
+        }
+        return new ExampleColumns(inputs, outputs);
+    }
+
+    /**
+     * Columns for inputs with no expected outputs, e.g. for classifying inputs
+     * with a predicate. outputs() will be null.
+     */
+    public static ExampleColumns ofInputs(Collection<Environment> inputs) {
+        return new ExampleColumns(inputs.toArray(Environment[]::new), null);
+    }
+
+    public int size() {
+        return inputs.length;
+    }
+
+    public Environment input(int index) {
+        return inputs[index];
+    }
+
+    public int[] xs() {
+        return xs;
+    }
+
+    public int[] ys() {
+        return ys;
+    }
+
+    public int[] zs() {
+        return zs;
+    }
+
+    public int[] outputs() {
+        return outputs;
+    }
+}
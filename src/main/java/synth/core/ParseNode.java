@@ -4,33 +4,132 @@ import java.util.List;
 
 import synth.dsl.Symbol;
 
+/**
+ * A node of a program's parse tree. Equality and hashing are structural, and
+ * the hash is computed once up front, so nodes are cheap to use as keys.
+ * 
+ * Nodes built with intern() are canonical: there's only ever one live interned
+ * node for any given tree, so identical subtrees are shared and, between
+ * interned nodes, == is structural equality (which makes IdentityHashMap a fine
+ * cache keyed on subprograms). Nodes built with the constructors are ordinary
+ * objects that are just equals() to the interned node with the same structure.
+ */
 public class ParseNode {
     public static final List<ParseNode> NO_CHILDREN = List.of();
+    private static final ParseNode[] NO_CHILDREN_ARRAY = new ParseNode[0];
 
-    public static final ParseNode CONST_1 = new ParseNode(Symbol.Const1, ParseNode.NO_CHILDREN);
-    public static final ParseNode CONST_2 = new ParseNode(Symbol.Const2, ParseNode.NO_CHILDREN);
-    public static final ParseNode CONST_3 = new ParseNode(Symbol.Const3, ParseNode.NO_CHILDREN);
+    private static final ParseNodeInterner interner = new ParseNodeInterner();
 
-    public static final ParseNode VAR_X = new ParseNode(Symbol.VarX, ParseNode.NO_CHILDREN);
-    public static final ParseNode VAR_Y = new ParseNode(Symbol.VarY, ParseNode.NO_CHILDREN);
-    public static final ParseNode VAR_Z = new ParseNode(Symbol.VarZ, ParseNode.NO_CHILDREN);
+    public static final ParseNode CONST_1 = intern(Symbol.Const1);
+    public static final ParseNode CONST_2 = intern(Symbol.Const2);
+    public static final ParseNode CONST_3 = intern(Symbol.Const3);
 
-    public static final ParseNode CONST_TRUE = new ParseNode(Symbol.Eq, List.of(CONST_1, CONST_1));
-    public static final ParseNode CONST_FALSE = new ParseNode(Symbol.Eq, List.of(CONST_1, CONST_2));
+    public static final ParseNode VAR_X = intern(Symbol.VarX);
+    public static final ParseNode VAR_Y = intern(Symbol.VarY);
+    public static final ParseNode VAR_Z = intern(Symbol.VarZ);
+
+    public static final ParseNode CONST_TRUE = intern(Symbol.Eq, CONST_1, CONST_1);
+    public static final ParseNode CONST_FALSE = intern(Symbol.Eq, CONST_1, CONST_2);
 
     private final Symbol symbol;
     private final List<ParseNode> children;
+    private final int hash;
+    private final boolean interned;
 
     public ParseNode(Symbol symbol) {
         assert symbol.operatorArguments().size() == 0;
         this.symbol = symbol;
         this.children = NO_CHILDREN;
+        this.hash = computeHash(symbol, NO_CHILDREN_ARRAY);
+        this.interned = false;
     }
 
     public ParseNode(Symbol symbol, List<ParseNode> children) {
         assert children.size() == symbol.operatorArguments().size();
         this.symbol = symbol;
         this.children = children;
+        this.hash = computeHash(symbol, children);
+        this.interned = false;
+    }
+
+    private ParseNode(Symbol symbol, List<ParseNode> children, int hash) {
+        this.symbol = symbol;
+        this.children = children;
+        this.hash = hash;
+        this.interned = true;
+    }
+
+    static ParseNode makeInterned(Symbol symbol, ParseNode[] children, int hash) {
+        return new ParseNode(symbol, children.length == 0 ? NO_CHILDREN : List.of(children), hash);
+    }
+
+    private static int computeHash(Symbol symbol, ParseNode[] children) {
+        int h = symbol.ordinal() + 1;
+        for (var c : children) {
+            h = h * 1000003 + c.hash;
+        }
+        return h;
+    }
+
+    private static int computeHash(Symbol symbol, List<ParseNode> children) {
+        int h = symbol.ordinal() + 1;
+        for (var c : children) {
+            h = h * 1000003 + c.hash;
+        }
+        return h;
+    }
+
+    /**
+     * The canonical node for symbol applied to children. Children that aren't
+     * interned yet get interned first. When everything is already interned this
+     * doesn't allocate unless the node is new.
+     */
+    public static ParseNode intern(Symbol symbol, ParseNode... children) {
+        assert children.length == symbol.operatorArguments().size();
+        ParseNode[] canonical = children;
+        for (int i = 0; i < children.length; ++i) {
+            if (!children[i].interned) {
+                if (canonical == children) {
+                    canonical = children.clone();
+                }
+                canonical[i] = intern(children[i]);
+            }
+        }
+        return interner.intern(symbol, canonical, computeHash(symbol, canonical));
+    }
+
+    public static ParseNode intern(Symbol symbol, List<ParseNode> children) {
+        return intern(symbol, children.toArray(NO_CHILDREN_ARRAY));
+    }
+
+    /**
+     * @return the canonical node with the same structure as node
+     */
+    public static ParseNode intern(ParseNode node) {
+        return node.interned ? node : intern(node.symbol, node.children);
+    }
+
+    public boolean isInterned() {
+        return interned;
+    }
+
+    /**
+     * How many distinct interned nodes are alive; mostly for testing.
+     */
+    public static int internedCount() {
+        return interner.size();
+    }
+
+    boolean matches(Symbol symbol, ParseNode[] children) {
+        if (this.symbol != symbol || this.children.size() != children.length) {
+            return false;
+        }
+        for (int i = 0; i < children.length; ++i) {
+            if (this.children.get(i) != children[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public Symbol getSymbol() {
@@ -46,6 +145,11 @@ public class ParseNode {
     }
 
     public ParseNode withChild(int index, ParseNode newChild) {
+        if (interned) {
+            ParseNode[] newChildren = children.toArray(NO_CHILDREN_ARRAY);
+            newChildren[index] = newChild;
+            return intern(symbol, newChildren);
+        }
         if (this.children.size() == 1 && index == 0) {
             return new ParseNode(symbol, List.of(newChild));
         } else if (this.children.size() == 2) {
@@ -69,6 +173,27 @@ public class ParseNode {
         return new ParseNode(symbol, children);
     }
 
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || !(obj instanceof ParseNode)) {
+            return false;
+        }
+        ParseNode nodeObj = (ParseNode) obj;
+        if (nodeObj.hash != hash || nodeObj.symbol != symbol || (nodeObj.interned && interned)) {
+            // Two distinct interned nodes are never equal
+            return false;
+        }
+        return nodeObj.children.equals(children);
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
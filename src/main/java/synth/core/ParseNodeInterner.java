@@ -0,0 +1,120 @@
+package synth.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import synth.dsl.Symbol;
+
+/**
+ * The weak table behind ParseNode.intern(). It's keyed directly on (symbol,
+ * children) so that a lookup that hits doesn't allocate anything, which is most
+ * of the point; the entries are weak so that interned nodes nobody is using any
+ * more can still be collected. Striped into segments so parallel enumerators
+ * don't all queue up on one lock.
+ */
+final class ParseNodeInterner {
+    private static final int SEGMENT_BITS = 4;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    ParseNodeInterner() {
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x45d9f3b;
+    }
+
+    /**
+     * @param children must all be interned already, since they're compared by
+     *                 identity; the array isn't retained
+     */
+    ParseNode intern(Symbol symbol, ParseNode[] children, int hash) {
+        int h = spread(hash);
+        return segments[h >>> (32 - SEGMENT_BITS)].intern(symbol, children, hash, h);
+    }
+
+    int size() {
+        int size = 0;
+        for (var s : segments) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    private static final class Entry extends WeakReference<ParseNode> {
+        final int hash;
+        Entry next;
+
+        Entry(ParseNode node, int hash, Entry next, ReferenceQueue<ParseNode> queue) {
+            super(node, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment {
+        private final ReferenceQueue<ParseNode> queue = new ReferenceQueue<>();
+        private Entry[] table = new Entry[64];
+        private int size = 0;
+
+        synchronized int size() {
+            expunge();
+            return size;
+        }
+
+        synchronized ParseNode intern(Symbol symbol, ParseNode[] children, int hash, int spreadHash) {
+            expunge();
+            int i = spreadHash & (table.length - 1);
+            for (var e = table[i]; e != null; e = e.next) {
+                if (e.hash == hash) {
+                    var node = e.get();
+                    if (node != null && node.matches(symbol, children)) {
+                        return node;
+                    }
+                }
+            }
+            var node = ParseNode.makeInterned(symbol, children, hash);
+            table[i] = new Entry(node, hash, table[i], queue);
+            if (++size > table.length - (table.length >>> 2)) {
+                resize();
+            }
+            return node;
+        }
+
+        private void expunge() {
+            for (Object ref; (ref = queue.poll()) != null;) {
+                var dead = (Entry) ref;
+                int i = spread(dead.hash) & (table.length - 1);
+                Entry prev = null;
+                for (var e = table[i]; e != null; prev = e, e = e.next) {
+                    if (e == dead) {
+                        if (prev == null) {
+                            table[i] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        --size;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void resize() {
+            var newTable = new Entry[table.length * 2];
+            for (var head : table) {
+                for (var e = head; e != null;) {
+                    var next = e.next;
+                    int i = spread(e.hash) & (newTable.length - 1);
+                    e.next = newTable[i];
+                    newTable[i] = e;
+                    e = next;
+                }
+            }
+            table = newTable;
+        }
+    }
+}
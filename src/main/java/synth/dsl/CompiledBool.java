@@ -0,0 +1,19 @@
+package synth.dsl;
+
+import synth.core.Environment;
+
+/**
+ * A predicate program compiled to JVM bytecode by Semantics.compileBool().
+ *
+ * @see CompiledExpr
+ */
+public abstract class CompiledBool {
+    protected CompiledBool() {
+    }
+
+    public abstract boolean eval(int x, int y, int z);
+
+    public boolean eval(Environment env) {
+        return eval(env.x(), env.y(), env.z());
+    }
+}
@@ -0,0 +1,20 @@
+package synth.dsl;
+
+import synth.core.Environment;
+
+/**
+ * An expression program compiled to JVM bytecode by Semantics.compileExpr().
+ * Each instance is a generated subclass whose eval() is straight-line code, so
+ * after the first few hundred calls it runs as JIT-compiled native code with
+ * no interpretation overhead at all.
+ */
+public abstract class CompiledExpr {
+    protected CompiledExpr() {
+    }
+
+    public abstract int eval(int x, int y, int z);
+
+    public int eval(Environment env) {
+        return eval(env.x(), env.y(), env.z());
+    }
+}
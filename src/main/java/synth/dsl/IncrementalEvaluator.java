@@ -0,0 +1,469 @@
+package synth.dsl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import synth.core.ExampleColumns;
+
+/**
+ * Batch-evaluates post-order programs over a fixed set of columns, keeping the
+ * value of every node of the last couple of programs it evaluated so that the
+ * next program only has to compute the nodes that changed. Results are exactly
+ * those of Semantics.evaluateExprPostOrderBatch() and friends.
+ *
+ * A post-order program's tree structure falls out of a quick pass over the
+ * symbols with a stack of node positions (node p is the value symbol p
+ * pushes). A node can reuse the cached value at its position if it has the
+ * same symbol, the same child positions, and children that could reuse their
+ * values too. Only nodes the result actually depends on are computed at all.
+ * So when an MCMC chain mutates one symbol of its current program, only the
+ * path from that symbol up to the root gets recomputed, and a mutation in dead
+ * code costs nothing but the structural pass.
+ *
+ * There are two cached evaluations ("slots"). A program reuses values from
+ * whichever slot has more symbols in common with it and is written into the
+ * other, so the chain's current program stays cached while candidates come
+ * and go, and neither the evaluator nor the optimizer needs to know which
+ * candidates were accepted. Value columns are pooled; a column may be shared
+ * between the slots (at the same position), so it's only recycled when the
+ * other slot isn't using it. Constants are folded and input columns are
+ * referenced rather than copied, as in PackedEvaluator.
+ *
+ * Like PackedEvaluator, an evaluator isn't thread-safe.
+ */
+public final class IncrementalEvaluator {
+    private static final class Slot {
+        Symbol[] program = new Symbol[0];
+        int length = 0;
+        // Child positions of each node, -1 where the stack was empty
+        int[] child0 = new int[0];
+        int[] child1 = new int[0];
+        int[] child2 = new int[0];
+        // Whether node p's value was computed in this slot
+        boolean[] valid = new boolean[0];
+        long[] version = new long[0];
+        int[][] exprCol = new int[0][];
+        int[] exprConst = new int[0];
+        boolean[] exprOwned = new boolean[0];
+        boolean[][] boolCol = new boolean[0][];
+        boolean[] boolConst = new boolean[0];
+        boolean[] boolOwned = new boolean[0];
+
+        void ensureCapacity(int length) {
+            if (program.length < length) {
+                int capacity = Math.max(length, program.length * 2);
+                program = Arrays.copyOf(program, capacity);
+                child0 = Arrays.copyOf(child0, capacity);
+                child1 = Arrays.copyOf(child1, capacity);
+                child2 = Arrays.copyOf(child2, capacity);
+                valid = Arrays.copyOf(valid, capacity);
+                version = Arrays.copyOf(version, capacity);
+                exprCol = Arrays.copyOf(exprCol, capacity);
+                exprConst = Arrays.copyOf(exprConst, capacity);
+                exprOwned = Arrays.copyOf(exprOwned, capacity);
+                boolCol = Arrays.copyOf(boolCol, capacity);
+                boolConst = Arrays.copyOf(boolConst, capacity);
+                boolOwned = Arrays.copyOf(boolOwned, capacity);
+            }
+        }
+
+        int matches(Symbol[] x) {
+            int limit = Math.min(length, x.length);
+            int count = 0;
+            for (int i = 0; i < limit; ++i) {
+                if (program[i] == x[i]) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+
+    private final int n;
+    private final int[] xs, ys, zs;
+    private final Slot[] slots = new Slot[] { new Slot(), new Slot() };
+    private final ArrayDeque<int[]> freeExprCols = new ArrayDeque<>();
+    private final ArrayDeque<boolean[]> freeBoolCols = new ArrayDeque<>();
+    private int lastWritten = 0;
+    private long nextVersion = 1;
+    private Slot resultSlot;
+    private int resultRoot = -1;
+
+    // Scratch for the structural pass
+    private int[] exprStack = new int[0];
+    private int[] boolStack = new int[0];
+    private int[] c0 = new int[0], c1 = new int[0], c2 = new int[0];
+    private boolean[] reusable = new boolean[0]; // only meaningful for live nodes
+    private boolean[] live = new boolean[0];
+
+    private long evaluatedNodes = 0;
+    private long totalNodes = 0;
+
+    public IncrementalEvaluator(ExampleColumns columns) {
+        this.n = columns.size();
+        this.xs = columns.xs();
+        this.ys = columns.ys();
+        this.zs = columns.zs();
+    }
+
+    public void evaluateExprBatch(Symbol[] program, int[] out) {
+        evaluateExpr(program);
+        exprResult(out);
+    }
+
+    public void evaluateBoolBatch(Symbol[] program, boolean[] out) {
+        evaluateBool(program);
+        boolResult(out);
+    }
+
+    /**
+     * Evaluate program as an expression without copying out the result yet, see
+     * exprResult().
+     *
+     * @return the result's version: a later result with the same version is
+     *         identical, so e.g. a cost function can skip recomputing the cost
+     */
+    public long evaluateExpr(Symbol[] program) {
+        resultRoot = structure(program, false);
+        resultSlot = evaluate(program, resultRoot);
+        return resultRoot >= 0 ? resultSlot.version[resultRoot] : 0;
+    }
+
+    public long evaluateBool(Symbol[] program) {
+        resultRoot = structure(program, true);
+        resultSlot = evaluate(program, resultRoot);
+        return resultRoot >= 0 ? resultSlot.version[resultRoot] : 0;
+    }
+
+    /**
+     * Copy out the result of the last evaluateExpr().
+     */
+    public void exprResult(int[] out) {
+        if (resultRoot < 0) {
+            Arrays.fill(out, 0, n, 1);
+        } else if (resultSlot.exprCol[resultRoot] == null) {
+            Arrays.fill(out, 0, n, resultSlot.exprConst[resultRoot]);
+        } else {
+            System.arraycopy(resultSlot.exprCol[resultRoot], 0, out, 0, n);
+        }
+    }
+
+    /**
+     * Copy out the result of the last evaluateBool().
+     */
+    public void boolResult(boolean[] out) {
+        if (resultRoot < 0) {
+            Arrays.fill(out, 0, n, false);
+        } else if (resultSlot.boolCol[resultRoot] == null) {
+            Arrays.fill(out, 0, n, resultSlot.boolConst[resultRoot]);
+        } else {
+            System.arraycopy(resultSlot.boolCol[resultRoot], 0, out, 0, n);
+        }
+    }
+
+    /**
+     * The fraction of non-null symbols evaluated since this was created, the rest
+     * having been reused or dead.
+     */
+    public float evaluatedFraction() {
+        return totalNodes == 0 ? 0f : (float) evaluatedNodes / totalNodes;
+    }
+
+    /**
+     * Work out the children of every node and which ones the root depends on.
+     *
+     * @return the root node, or -1 if the stack is empty at the end
+     */
+    private int structure(Symbol[] program, boolean bool) {
+        int length = program.length;
+        if (exprStack.length < length) {
+            int capacity = Math.max(length, exprStack.length * 2);
+            exprStack = new int[capacity];
+            boolStack = new int[capacity];
+            c0 = new int[capacity];
+            c1 = new int[capacity];
+            c2 = new int[capacity];
+            reusable = new boolean[capacity];
+            live = new boolean[capacity];
+        }
+        int et = 0, bt = 0;
+        for (int p = 0; p < length; ++p) {
+            int a = -1, b = -1, c = -1;
+            var s = program[p];
+            if (s == null) {
+                continue;
+            }
+            switch (s) {
+                case Ite:
+                    a = bt > 0 ? boolStack[--bt] : -1;
+                    b = et > 0 ? exprStack[--et] : -1;
+                    c = et > 0 ? exprStack[--et] : -1;
+                    exprStack[et++] = p;
+                    break;
+                case Add:
+                case Multiply:
+                    a = et > 0 ? exprStack[--et] : -1;
+                    b = et > 0 ? exprStack[--et] : -1;
+                    exprStack[et++] = p;
+                    break;
+                case Lt:
+                case Eq:
+                    a = et > 0 ? exprStack[--et] : -1;
+                    b = et > 0 ? exprStack[--et] : -1;
+                    boolStack[bt++] = p;
+                    break;
+                case And:
+                case Or:
+                    a = bt > 0 ? boolStack[--bt] : -1;
+                    b = bt > 0 ? boolStack[--bt] : -1;
+                    boolStack[bt++] = p;
+                    break;
+                case Not:
+                    a = bt > 0 ? boolStack[--bt] : -1;
+                    boolStack[bt++] = p;
+                    break;
+                case Const1:
+                case Const2:
+                case Const3:
+                case VarX:
+                case VarY:
+                case VarZ:
+                    exprStack[et++] = p;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected symbol " + s + " in post-order program");
+            }
+            c0[p] = a;
+            c1[p] = b;
+            c2[p] = c;
+        }
+
+        int root = bool ? (bt > 0 ? boolStack[bt - 1] : -1) : (et > 0 ? exprStack[et - 1] : -1);
+        Arrays.fill(live, 0, length, false);
+        if (root >= 0) {
+            live[root] = true;
+        }
+        // Children always come before their parents
+        for (int p = root; p >= 0; --p) {
+            if (live[p]) {
+                if (c0[p] >= 0) {
+                    live[c0[p]] = true;
+                }
+                if (c1[p] >= 0) {
+                    live[c1[p]] = true;
+                }
+                if (c2[p] >= 0) {
+                    live[c2[p]] = true;
+                }
+            }
+        }
+        return root;
+    }
+
+    private Slot evaluate(Symbol[] program, int root) {
+        int length = program.length;
+        int matches0 = slots[0].matches(program);
+        int matches1 = slots[1].matches(program);
+        // Reuse the better match and overwrite the other; on a tie, overwrite the
+        // last one written, since that's most likely a rejected candidate
+        int from;
+        if (matches0 != matches1) {
+            from = matches0 > matches1 ? 0 : 1;
+        } else {
+            from = 1 - lastWritten;
+        }
+        var source = slots[from];
+        var target = slots[1 - from];
+        lastWritten = 1 - from;
+
+        target.ensureCapacity(length);
+        for (int p = 0; p < length; ++p) {
+            var symbol = program[p];
+            if (!live[p]) {
+                // Most symbols are no-ops or dead code, so keep this quick: any column left
+                // here gets released when this position is next computed
+                target.program[p] = symbol;
+                target.valid[p] = false;
+                if (symbol != null) {
+                    ++totalNodes;
+                }
+                continue;
+            }
+            int a = c0[p], b = c1[p], c = c2[p];
+            boolean r = p < source.length && source.valid[p] && source.program[p] == symbol
+                    && source.child0[p] == a && source.child1[p] == b && source.child2[p] == c
+                    && (a < 0 || reusable[a]) && (b < 0 || reusable[b]) && (c < 0 || reusable[c]);
+            reusable[p] = r;
+            if (r) {
+                share(source, target, p);
+            } else {
+                release(target, p);
+                target.program[p] = symbol;
+                target.child0[p] = a;
+                target.child1[p] = b;
+                target.child2[p] = c;
+                target.valid[p] = true;
+                target.version[p] = nextVersion++;
+                compute(target, p, symbol, a, b, c);
+                ++evaluatedNodes;
+            }
+            ++totalNodes;
+        }
+        target.length = length;
+        return target;
+    }
+
+    private void release(Slot slot, int p) {
+        var peer = slot == slots[0] ? slots[1] : slots[0];
+        boolean shared = p < peer.program.length;
+        if (slot.exprOwned[p] && !(shared && peer.exprCol[p] == slot.exprCol[p])) {
+            freeExprCols.push(slot.exprCol[p]);
+        }
+        if (slot.boolOwned[p] && !(shared && peer.boolCol[p] == slot.boolCol[p])) {
+            freeBoolCols.push(slot.boolCol[p]);
+        }
+        slot.exprCol[p] = null;
+        slot.exprOwned[p] = false;
+        slot.boolCol[p] = null;
+        slot.boolOwned[p] = false;
+    }
+
+    private void share(Slot source, Slot target, int p) {
+        if (target.valid[p] && target.version[p] == source.version[p]) {
+            // Already shared
+            return;
+        }
+        if (target.exprCol[p] != source.exprCol[p] || target.boolCol[p] != source.boolCol[p]) {
+            release(target, p);
+        }
+        target.program[p] = source.program[p];
+        target.child0[p] = source.child0[p];
+        target.child1[p] = source.child1[p];
+        target.child2[p] = source.child2[p];
+        target.valid[p] = true;
+        target.version[p] = source.version[p];
+        target.exprCol[p] = source.exprCol[p];
+        target.exprConst[p] = source.exprConst[p];
+        target.exprOwned[p] = source.exprOwned[p];
+        target.boolCol[p] = source.boolCol[p];
+        target.boolConst[p] = source.boolConst[p];
+        target.boolOwned[p] = source.boolOwned[p];
+    }
+
+    private int[] newExprCol(Slot slot, int p) {
+        var col = freeExprCols.poll();
+        if (col == null) {
+            col = new int[n];
+        }
+        slot.exprCol[p] = col;
+        slot.exprOwned[p] = true;
+        return col;
+    }
+
+    private boolean[] newBoolCol(Slot slot, int p) {
+        var col = freeBoolCols.poll();
+        if (col == null) {
+            col = new boolean[n];
+        }
+        slot.boolCol[p] = col;
+        slot.boolOwned[p] = true;
+        return col;
+    }
+
+    /**
+     * Compute node p from its children, which are already computed. The first
+     * child is the one that was on top of its stack; an empty stack pops 1 or
+     * false.
+     */
+    private void compute(Slot s, int p, Symbol symbol, int a, int b, int c) {
+        switch (symbol) {
+            case Const1:
+                s.exprConst[p] = 1;
+                break;
+            case Const2:
+                s.exprConst[p] = 2;
+                break;
+            case Const3:
+                s.exprConst[p] = 3;
+                break;
+            case VarX:
+                s.exprCol[p] = xs;
+                break;
+            case VarY:
+                s.exprCol[p] = ys;
+                break;
+            case VarZ:
+                s.exprCol[p] = zs;
+                break;
+            case Add:
+            case Multiply: {
+                boolean add = symbol == Symbol.Add;
+                int[] x = a >= 0 ? s.exprCol[a] : null, y = b >= 0 ? s.exprCol[b] : null;
+                int xk = a >= 0 ? s.exprConst[a] : 1, yk = b >= 0 ? s.exprConst[b] : 1;
+                if (x == null && y == null) {
+                    s.exprConst[p] = add ? xk + yk : xk * yk;
+                } else {
+                    PackedEvaluator.arith(add, x, xk, y, yk, newExprCol(s, p), n);
+                }
+                break;
+            }
+            case Ite: {
+                boolean[] cond = a >= 0 ? s.boolCol[a] : null;
+                boolean condk = a >= 0 && s.boolConst[a];
+                int[] x = b >= 0 ? s.exprCol[b] : null, y = c >= 0 ? s.exprCol[c] : null;
+                int xk = b >= 0 ? s.exprConst[b] : 1, yk = c >= 0 ? s.exprConst[c] : 1;
+                if (cond == null) {
+                    // Constant condition, the result is just the branch it picks
+                    s.exprCol[p] = condk ? x : y;
+                    s.exprConst[p] = condk ? xk : yk;
+                } else {
+                    PackedEvaluator.ite(cond, x, xk, y, yk, newExprCol(s, p), n);
+                }
+                break;
+            }
+            case Lt:
+            case Eq: {
+                boolean lt = symbol == Symbol.Lt;
+                int[] x = a >= 0 ? s.exprCol[a] : null, y = b >= 0 ? s.exprCol[b] : null;
+                int xk = a >= 0 ? s.exprConst[a] : 1, yk = b >= 0 ? s.exprConst[b] : 1;
+                if (x == null && y == null) {
+                    s.boolConst[p] = lt ? xk < yk : xk == yk;
+                } else {
+                    PackedEvaluator.compare(lt, x, xk, y, yk, newBoolCol(s, p), n);
+                }
+                break;
+            }
+            case And:
+            case Or: {
+                boolean and = symbol == Symbol.And;
+                boolean[] x = a >= 0 ? s.boolCol[a] : null, y = b >= 0 ? s.boolCol[b] : null;
+                boolean xk = a >= 0 && s.boolConst[a], yk = b >= 0 && s.boolConst[b];
+                if (x == null && y == null) {
+                    s.boolConst[p] = and ? xk && yk : xk || yk;
+                } else if (x == null || y == null) {
+                    // One constant: it either decides the result, or the result is the other
+                    boolean k = x == null ? xk : yk;
+                    if (k != and) {
+                        s.boolConst[p] = k;
+                    } else {
+                        s.boolCol[p] = x == null ? y : x;
+                    }
+                } else {
+                    PackedEvaluator.andOr(and, x, y, newBoolCol(s, p), n);
+                }
+                break;
+            }
+            case Not: {
+                boolean[] x = a >= 0 ? s.boolCol[a] : null;
+                if (x == null) {
+                    s.boolConst[p] = !(a >= 0 && s.boolConst[a]);
+                } else {
+                    PackedEvaluator.not(x, newBoolCol(s, p), n);
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unexpected symbol " + symbol + " in post-order program");
+        }
+    }
+}
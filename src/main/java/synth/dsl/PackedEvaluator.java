@@ -0,0 +1,460 @@
+package synth.dsl;
+
+import java.util.Arrays;
+
+import synth.core.Environment;
+import synth.core.ExampleColumns;
+
+import static synth.dsl.PackedProgram.*;
+
+/**
+ * Evaluates PackedPrograms, with exactly the semantics of the post-order
+ * evaluators in Semantics (including popping 1 or false off an empty stack).
+ * Unlike those there's no ThreadLocal: an evaluator holds its own scratch
+ * space, sized to the longest program it has seen, and the caller holds the
+ * evaluator. So one evaluator per thread.
+ * 
+ * The batch evaluator keeps constants and input columns on its stack by
+ * reference instead of filling or copying whole columns for them. Each
+ * operator has a loop specialized for constant operands, and operators with
+ * only constant operands are folded to a constant. MCMC programs are full of
+ * those, and the batch evaluator in Semantics spends most of its time filling
+ * columns of 2s and copying xs.
+ */
+public final class PackedEvaluator {
+    // Scalar stacks
+    private int[] exprStack = new int[16];
+    private boolean[] boolStack = new boolean[16];
+
+    // Batch stacks: each entry is either a column or, if the column is null, a
+    // constant. Columns are either one of the input columns, which are never
+    // written, or the scratch column belonging to that depth of the stack.
+    private int n;
+    private int[] xs, ys, zs;
+    private int[][] exprCols = new int[16][];
+    private int[] exprConsts = new int[16];
+    private int[][] exprScratch = new int[16][];
+    private boolean[][] boolCols = new boolean[16][];
+    private boolean[] boolConsts = new boolean[16];
+    private boolean[][] boolScratch = new boolean[16][];
+
+    private void ensureCapacity(int length) {
+        if (exprStack.length < length) {
+            int capacity = Math.max(length, exprStack.length * 2);
+            exprStack = new int[capacity];
+            boolStack = new boolean[capacity];
+            exprCols = new int[capacity][];
+            exprConsts = new int[capacity];
+            exprScratch = Arrays.copyOf(exprScratch, capacity);
+            boolCols = new boolean[capacity][];
+            boolConsts = new boolean[capacity];
+            boolScratch = Arrays.copyOf(boolScratch, capacity);
+        }
+    }
+
+    public int evaluateExpr(PackedProgram program, Environment env) {
+        return evaluateExpr(program, env.x(), env.y(), env.z());
+    }
+
+    public int evaluateExpr(PackedProgram program, int x, int y, int z) {
+        run(program, x, y, z);
+        return exprTop > 0 ? exprStack[exprTop - 1] : 1;
+    }
+
+    public boolean evaluateBool(PackedProgram program, Environment env) {
+        return evaluateBool(program, env.x(), env.y(), env.z());
+    }
+
+    public boolean evaluateBool(PackedProgram program, int x, int y, int z) {
+        run(program, x, y, z);
+        return boolTop > 0 ? boolStack[boolTop - 1] : false;
+    }
+
+    private int exprTop, boolTop;
+
+    private void run(PackedProgram program, int x, int y, int z) {
+        ensureCapacity(program.length());
+        final byte[] code = program.code();
+        final int length = program.length();
+        final int[] es = exprStack;
+        final boolean[] bs = boolStack;
+        int et = 0, bt = 0;
+        for (int p = 0; p < length; ++p) {
+            int a, b;
+            boolean c, d;
+            switch (code[p]) {
+                case CONST_1:
+                    es[et++] = 1;
+                    break;
+                case CONST_2:
+                    es[et++] = 2;
+                    break;
+                case CONST_3:
+                    es[et++] = 3;
+                    break;
+                case VAR_X:
+                    es[et++] = x;
+                    break;
+                case VAR_Y:
+                    es[et++] = y;
+                    break;
+                case VAR_Z:
+                    es[et++] = z;
+                    break;
+                case ADD:
+                    a = et > 0 ? es[--et] : 1;
+                    b = et > 0 ? es[--et] : 1;
+                    es[et++] = a + b;
+                    break;
+                case MULTIPLY:
+                    a = et > 0 ? es[--et] : 1;
+                    b = et > 0 ? es[--et] : 1;
+                    es[et++] = a * b;
+                    break;
+                case ITE:
+                    c = bt > 0 ? bs[--bt] : false;
+                    a = et > 0 ? es[--et] : 1;
+                    b = et > 0 ? es[--et] : 1;
+                    es[et++] = c ? a : b;
+                    break;
+                case LT:
+                    a = et > 0 ? es[--et] : 1;
+                    b = et > 0 ? es[--et] : 1;
+                    bs[bt++] = a < b;
+                    break;
+                case EQ:
+                    a = et > 0 ? es[--et] : 1;
+                    b = et > 0 ? es[--et] : 1;
+                    bs[bt++] = a == b;
+                    break;
+                case AND:
+                    c = bt > 0 ? bs[--bt] : false;
+                    d = bt > 0 ? bs[--bt] : false;
+                    bs[bt++] = c && d;
+                    break;
+                case OR:
+                    c = bt > 0 ? bs[--bt] : false;
+                    d = bt > 0 ? bs[--bt] : false;
+                    bs[bt++] = c || d;
+                    break;
+                case NOT:
+                    c = bt > 0 ? bs[--bt] : false;
+                    bs[bt++] = !c;
+                    break;
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[p]);
+            }
+        }
+        exprTop = et;
+        boolTop = bt;
+    }
+
+    public void evaluateExprBatch(PackedProgram program, ExampleColumns inputs, int[] out) {
+        runBatch(program, inputs);
+        final int n = this.n;
+        if (exprTop == 0) {
+            Arrays.fill(out, 0, n, 1);
+        } else if (exprCols[exprTop - 1] == null) {
+            Arrays.fill(out, 0, n, exprConsts[exprTop - 1]);
+        } else {
+            System.arraycopy(exprCols[exprTop - 1], 0, out, 0, n);
+        }
+    }
+
+    public void evaluateBoolBatch(PackedProgram program, ExampleColumns inputs, boolean[] out) {
+        runBatch(program, inputs);
+        final int n = this.n;
+        if (boolTop == 0) {
+            Arrays.fill(out, 0, n, false);
+        } else if (boolCols[boolTop - 1] == null) {
+            Arrays.fill(out, 0, n, boolConsts[boolTop - 1]);
+        } else {
+            System.arraycopy(boolCols[boolTop - 1], 0, out, 0, n);
+        }
+    }
+
+    private int[] exprScratch(int depth) {
+        var col = exprScratch[depth];
+        if (col == null || col.length < n) {
+            col = new int[n];
+            exprScratch[depth] = col;
+        }
+        return col;
+    }
+
+    private boolean[] boolScratch(int depth) {
+        var col = boolScratch[depth];
+        if (col == null || col.length < n) {
+            col = new boolean[n];
+            boolScratch[depth] = col;
+        }
+        return col;
+    }
+
+    private boolean isInput(int[] col) {
+        return col == xs || col == ys || col == zs;
+    }
+
+    private void runBatch(PackedProgram program, ExampleColumns inputs) {
+        ensureCapacity(program.length());
+        final int n = this.n = inputs.size();
+        xs = inputs.xs();
+        ys = inputs.ys();
+        zs = inputs.zs();
+        final byte[] code = program.code();
+        final int length = program.length();
+        final int[][] ec = exprCols;
+        final int[] ek = exprConsts;
+        final boolean[][] bc = boolCols;
+        final boolean[] bk = boolConsts;
+        int et = 0, bt = 0;
+        for (int p = 0; p < length; ++p) {
+            byte op = code[p];
+            switch (op) {
+                case CONST_1:
+                case CONST_2:
+                case CONST_3:
+                    ec[et] = null;
+                    ek[et++] = op - CONST_1 + 1;
+                    break;
+                case VAR_X:
+                    ec[et++] = xs;
+                    break;
+                case VAR_Y:
+                    ec[et++] = ys;
+                    break;
+                case VAR_Z:
+                    ec[et++] = zs;
+                    break;
+                case ADD:
+                case MULTIPLY:
+                case LT:
+                case EQ: {
+                    // x is the top of the stack, y below it; an empty stack pops 1
+                    int[] x = null, y = null;
+                    int xk = 1, yk = 1;
+                    if (et > 0) {
+                        x = ec[--et];
+                        xk = ek[et];
+                    }
+                    if (et > 0) {
+                        y = ec[--et];
+                        yk = ek[et];
+                    }
+                    if (op == ADD || op == MULTIPLY) {
+                        if (x == null && y == null) {
+                            ec[et] = null;
+                            ek[et] = op == ADD ? xk + yk : xk * yk;
+                        } else {
+                            ec[et] = arith(op == ADD, x, xk, y, yk, exprScratch(et), n);
+                        }
+                        ++et;
+                    } else {
+                        if (x == null && y == null) {
+                            bc[bt] = null;
+                            bk[bt] = op == LT ? xk < yk : xk == yk;
+                        } else {
+                            bc[bt] = compare(op == LT, x, xk, y, yk, boolScratch(bt), n);
+                        }
+                        ++bt;
+                    }
+                    break;
+                }
+                case ITE: {
+                    boolean[] c = null;
+                    boolean ck = false;
+                    if (bt > 0) {
+                        c = bc[--bt];
+                        ck = bk[bt];
+                    }
+                    int[] x = null, y = null;
+                    int xk = 1, yk = 1;
+                    if (et > 0) {
+                        x = ec[--et];
+                        xk = ek[et];
+                    }
+                    if (et > 0) {
+                        y = ec[--et];
+                        yk = ek[et];
+                    }
+                    if (c == null) {
+                        // Constant condition, just keep the branch it picks
+                        var keep = ck ? x : y;
+                        ek[et] = ck ? xk : yk;
+                        ec[et] = (keep == null || isInput(keep) || keep == exprScratch[et]) ? keep
+                                : copyTo(keep, exprScratch(et), n);
+                    } else {
+                        ec[et] = ite(c, x, xk, y, yk, exprScratch(et), n);
+                    }
+                    ++et;
+                    break;
+                }
+                case AND:
+                case OR: {
+                    boolean[] x = null, y = null;
+                    boolean xk = false, yk = false;
+                    if (bt > 0) {
+                        x = bc[--bt];
+                        xk = bk[bt];
+                    }
+                    if (bt > 0) {
+                        y = bc[--bt];
+                        yk = bk[bt];
+                    }
+                    boolean and = op == AND;
+                    if (x == null && y == null) {
+                        bc[bt] = null;
+                        bk[bt] = and ? xk && yk : xk || yk;
+                    } else if (x == null || y == null) {
+                        // One constant: it either decides the result, or the result is the other
+                        boolean k = x == null ? xk : yk;
+                        var col = x == null ? y : x;
+                        if (k != and) {
+                            bc[bt] = null;
+                            bk[bt] = k;
+                        } else {
+                            bc[bt] = col == boolScratch[bt] ? col : copyTo(col, boolScratch(bt), n);
+                        }
+                    } else {
+                        bc[bt] = andOr(and, x, y, boolScratch(bt), n);
+                    }
+                    ++bt;
+                    break;
+                }
+                case NOT: {
+                    boolean[] x = null;
+                    boolean xk = false;
+                    if (bt > 0) {
+                        x = bc[--bt];
+                        xk = bk[bt];
+                    }
+                    if (x == null) {
+                        bc[bt] = null;
+                        bk[bt] = !xk;
+                    } else {
+                        bc[bt] = not(x, boolScratch(bt), n);
+                    }
+                    ++bt;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Bad opcode " + op);
+            }
+        }
+        exprTop = et;
+        boolTop = bt;
+    }
+
+    // The column kernels, shared with IncrementalEvaluator. A null column means
+    // the constant operand (xk, yk) is used instead; at least one operand of
+    // arith() and compare() must be a column. They return out.
+
+    static int[] arith(boolean add, int[] x, int xk, int[] y, int yk, int[] out, int n) {
+        if (x == null || y == null) {
+            int k = x == null ? xk : yk;
+            var col = x == null ? y : x;
+            if (add) {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = col[i] + k;
+                }
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = col[i] * k;
+                }
+            }
+        } else if (add) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] + y[i];
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] * y[i];
+            }
+        }
+        return out;
+    }
+
+    static boolean[] compare(boolean lt, int[] x, int xk, int[] y, int yk, boolean[] out, int n) {
+        if (x == null) {
+            if (lt) {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = xk < y[i];
+                }
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = xk == y[i];
+                }
+            }
+        } else if (y == null) {
+            if (lt) {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = x[i] < yk;
+                }
+            } else {
+                for (int i = 0; i < n; ++i) {
+                    out[i] = x[i] == yk;
+                }
+            }
+        } else if (lt) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] < y[i];
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] == y[i];
+            }
+        }
+        return out;
+    }
+
+    static int[] ite(boolean[] c, int[] x, int xk, int[] y, int yk, int[] out, int n) {
+        if (x == null && y == null) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = c[i] ? xk : yk;
+            }
+        } else if (x == null) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = c[i] ? xk : y[i];
+            }
+        } else if (y == null) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = c[i] ? x[i] : yk;
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                out[i] = c[i] ? x[i] : y[i];
+            }
+        }
+        return out;
+    }
+
+    static boolean[] andOr(boolean and, boolean[] x, boolean[] y, boolean[] out, int n) {
+        if (and) {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] & y[i];
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                out[i] = x[i] | y[i];
+            }
+        }
+        return out;
+    }
+
+    static boolean[] not(boolean[] x, boolean[] out, int n) {
+        for (int i = 0; i < n; ++i) {
+            out[i] = !x[i];
+        }
+        return out;
+    }
+
+    private static int[] copyTo(int[] from, int[] to, int n) {
+        System.arraycopy(from, 0, to, 0, n);
+        return to;
+    }
+
+    private static boolean[] copyTo(boolean[] from, boolean[] to, int n) {
+        System.arraycopy(from, 0, to, 0, n);
+        return to;
+    }
+}
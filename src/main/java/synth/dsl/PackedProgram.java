@@ -0,0 +1,100 @@
+package synth.dsl;
+
+import java.util.Arrays;
+
+/**
+ * A post-order program (see Semantics.evaluateExprPostOrder()) packed one
+ * opcode byte per symbol, with the null no-op slots squeezed out, for
+ * PackedEvaluator. The buffer is reused by repack(), so something like an MCMC
+ * cost function can keep one of these around and pack each candidate into it
+ * without allocating.
+ */
+public final class PackedProgram {
+    public static final byte CONST_1 = 0;
+    public static final byte CONST_2 = 1;
+    public static final byte CONST_3 = 2;
+    public static final byte VAR_X = 3;
+    public static final byte VAR_Y = 4;
+    public static final byte VAR_Z = 5;
+    public static final byte ADD = 6;
+    public static final byte MULTIPLY = 7;
+    public static final byte ITE = 8;
+    public static final byte LT = 9;
+    public static final byte EQ = 10;
+    public static final byte AND = 11;
+    public static final byte OR = 12;
+    public static final byte NOT = 13;
+
+    private static final byte[] OPCODES = new byte[Symbol.values().length];
+    private static final Symbol[] SYMBOLS = new Symbol[] { Symbol.Const1, Symbol.Const2, Symbol.Const3,
+            Symbol.VarX, Symbol.VarY, Symbol.VarZ, Symbol.Add, Symbol.Multiply, Symbol.Ite, Symbol.Lt, Symbol.Eq,
+            Symbol.And, Symbol.Or, Symbol.Not };
+
+    static {
+        Arrays.fill(OPCODES, (byte) -1);
+        for (int i = 0; i < SYMBOLS.length; ++i) {
+            OPCODES[SYMBOLS[i].ordinal()] = (byte) i;
+        }
+    }
+
+    private byte[] code;
+    private int length;
+
+    public PackedProgram() {
+        this.code = new byte[16];
+        this.length = 0;
+    }
+
+    public static PackedProgram pack(Symbol[] program) {
+        var packed = new PackedProgram();
+        packed.repack(program);
+        return packed;
+    }
+
+    public static byte opcode(Symbol symbol) {
+        byte op = OPCODES[symbol.ordinal()];
+        if (op < 0) {
+            throw new IllegalArgumentException("No opcode for " + symbol);
+        }
+        return op;
+    }
+
+    public static Symbol symbol(byte opcode) {
+        return SYMBOLS[opcode];
+    }
+
+    /**
+     * Replace the contents of this with program.
+     */
+    public void repack(Symbol[] program) {
+        if (code.length < program.length) {
+            code = new byte[Math.max(program.length, code.length * 2)];
+        }
+        int n = 0;
+        for (var s : program) {
+            if (s != null) {
+                code[n++] = opcode(s);
+            }
+        }
+        length = n;
+    }
+
+    /**
+     * The opcodes; only the first length() are meaningful. Don't modify it.
+     */
+    public byte[] code() {
+        return code;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public Symbol[] unpack() {
+        var program = new Symbol[length];
+        for (int i = 0; i < length; ++i) {
+            program[i] = SYMBOLS[code[i]];
+        }
+        return program;
+    }
+}
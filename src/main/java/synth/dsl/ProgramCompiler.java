@@ -0,0 +1,341 @@
+package synth.dsl;
+
+import java.io.*;
+import java.util.*;
+
+import synth.core.*;
+
+/**
+ * Translates a parse tree into a tiny generated class with a single eval(x, y,
+ * z) method. Expressions become stack arithmetic on the three int arguments,
+ * and predicates become conditional branches (so And/Or short-circuit and Ite
+ * only evaluates the branch it takes, just like the tree interpreter).
+ *
+ * Each compiled program gets its own class loader, so the generated class is
+ * unloaded once the CompiledExpr/CompiledBool instance is unreachable --
+ * enumerators can compile millions of candidates without leaking metaspace.
+ */
+class ProgramCompiler {
+    // Version 49 (Java 5) class files are verified by type inference, so we don't
+    // have to emit StackMapTable frames for our branches
+    private static final int CLASS_VERSION = 49;
+    private static final String GENERATED_NAME = "synth.dsl.generated.Program";
+
+    // Keeping the whole method under 32k means every branch offset fits in the
+    // 16-bit goto/if_icmp* encodings; anything larger falls back to interpreting
+    private static final int MAX_CODE_LENGTH = Short.MAX_VALUE;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int ICONST_2 = 0x05;
+    private static final int ICONST_3 = 0x06;
+    private static final int ILOAD_1 = 0x1b;
+    private static final int ILOAD_2 = 0x1c;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int IADD = 0x60;
+    private static final int IMUL = 0x68;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    private static class ProgramClassLoader extends ClassLoader {
+        ProgramClassLoader() {
+            super(ProgramCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] classBytes) {
+            return defineClass(GENERATED_NAME, classBytes, 0, classBytes.length);
+        }
+    }
+
+    private static class CodeGenerator {
+        private byte[] code = new byte[64];
+        private int length = 0;
+        private int depth = 0;
+        private int maxDepth = 0;
+        private int[] labels = new int[16];
+        private int labelCount = 0;
+        // Pairs of (branch instruction offset, target label)
+        private int[] fixups = new int[32];
+        private int fixupCount = 0;
+
+        private void emit(int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) b;
+        }
+
+        private void push(int opcode) {
+            emit(opcode);
+            if (++depth > maxDepth) {
+                maxDepth = depth;
+            }
+        }
+
+        private int newLabel() {
+            if (labelCount == labels.length) {
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        private void mark(int label) {
+            labels[label] = length;
+        }
+
+        private void branch(int opcode, int label) {
+            if (fixupCount + 2 > fixups.length) {
+                fixups = Arrays.copyOf(fixups, fixups.length * 2);
+            }
+            fixups[fixupCount++] = length;
+            fixups[fixupCount++] = label;
+            emit(opcode);
+            emit(0);
+            emit(0);
+        }
+
+        void emitExpr(ParseNode expr) {
+            switch (expr.getSymbol()) {
+                case Const1:
+                    push(ICONST_1);
+                    break;
+                case Const2:
+                    push(ICONST_2);
+                    break;
+                case Const3:
+                    push(ICONST_3);
+                    break;
+                case VarX:
+                    push(ILOAD_1);
+                    break;
+                case VarY:
+                    push(ILOAD_2);
+                    break;
+                case VarZ:
+                    push(ILOAD_3);
+                    break;
+                case Add:
+                    emitExpr(expr.getChild(0));
+                    emitExpr(expr.getChild(1));
+                    emit(IADD);
+                    --depth;
+                    break;
+                case Multiply:
+                    emitExpr(expr.getChild(0));
+                    emitExpr(expr.getChild(1));
+                    emit(IMUL);
+                    --depth;
+                    break;
+                case Ite: {
+                    int elseLabel = newLabel(), endLabel = newLabel();
+                    emitJump(expr.getChild(0), elseLabel, false);
+                    emitExpr(expr.getChild(1));
+                    branch(GOTO, endLabel);
+                    // The else branch starts from the same stack depth the then branch did
+                    --depth;
+                    mark(elseLabel);
+                    emitExpr(expr.getChild(2));
+                    mark(endLabel);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Cannot compile expression " + expr);
+            }
+        }
+
+        /**
+         * Emit code that jumps to label if pred evaluates to jumpIf, and falls through
+         * otherwise. Leaves the stack depth unchanged.
+         */
+        void emitJump(ParseNode pred, int label, boolean jumpIf) {
+            switch (pred.getSymbol()) {
+                case Lt:
+                    emitExpr(pred.getChild(0));
+                    emitExpr(pred.getChild(1));
+                    branch(jumpIf ? IF_ICMPLT : IF_ICMPGE, label);
+                    depth -= 2;
+                    break;
+                case Eq:
+                    emitExpr(pred.getChild(0));
+                    emitExpr(pred.getChild(1));
+                    branch(jumpIf ? IF_ICMPEQ : IF_ICMPNE, label);
+                    depth -= 2;
+                    break;
+                case Not:
+                    emitJump(pred.getChild(0), label, !jumpIf);
+                    break;
+                case And:
+                    if (jumpIf) {
+                        int skipLabel = newLabel();
+                        emitJump(pred.getChild(0), skipLabel, false);
+                        emitJump(pred.getChild(1), label, true);
+                        mark(skipLabel);
+                    } else {
+                        emitJump(pred.getChild(0), label, false);
+                        emitJump(pred.getChild(1), label, false);
+                    }
+                    break;
+                case Or:
+                    if (jumpIf) {
+                        emitJump(pred.getChild(0), label, true);
+                        emitJump(pred.getChild(1), label, true);
+                    } else {
+                        int skipLabel = newLabel();
+                        emitJump(pred.getChild(0), skipLabel, true);
+                        emitJump(pred.getChild(1), label, false);
+                        mark(skipLabel);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Cannot compile predicate " + pred);
+            }
+        }
+
+        boolean fits() {
+            return length <= MAX_CODE_LENGTH;
+        }
+
+        byte[] finish() {
+            for (int i = 0; i < fixupCount; i += 2) {
+                int at = fixups[i];
+                int offset = labels[fixups[i + 1]] - at;
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+            return Arrays.copyOf(code, length);
+        }
+
+        int maxStack() {
+            return maxDepth;
+        }
+    }
+
+    static CompiledExpr compileExpr(ParseNode program) {
+        var gen = new CodeGenerator();
+        gen.emitExpr(program);
+        gen.emit(IRETURN);
+        if (!gen.fits()) {
+            return new CompiledExpr() {
+                @Override
+                public int eval(int x, int y, int z) {
+                    return Semantics.evaluate(program, new Environment(x, y, z));
+                }
+            };
+        }
+        return (CompiledExpr) instantiate(CompiledExpr.class, "(III)I", gen);
+    }
+
+    static CompiledBool compileBool(ParseNode program) {
+        var gen = new CodeGenerator();
+        int falseLabel = gen.newLabel();
+        gen.emitJump(program, falseLabel, false);
+        gen.push(ICONST_1);
+        gen.emit(IRETURN);
+        gen.mark(falseLabel);
+        gen.emit(ICONST_0);
+        gen.emit(IRETURN);
+        if (!gen.fits()) {
+            return new CompiledBool() {
+                @Override
+                public boolean eval(int x, int y, int z) {
+                    return Semantics.evaluateBool(program, new Environment(x, y, z));
+                }
+            };
+        }
+        return (CompiledBool) instantiate(CompiledBool.class, "(III)Z", gen);
+    }
+
+    private static Object instantiate(Class<?> superclass, String evalDescriptor, CodeGenerator gen) {
+        var classBytes = makeClass(superclass.getName().replace('.', '/'), evalDescriptor, gen);
+        try {
+            return new ProgramClassLoader().define(classBytes).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Generated program class failed to load", e);
+        }
+    }
+
+    private static byte[] makeClass(String superName, String evalDescriptor, CodeGenerator gen) {
+        var bytes = new ByteArrayOutputStream(256);
+        var out = new DataOutputStream(bytes);
+        var code = gen.finish();
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+
+            // Constant pool; entries are numbered from 1
+            out.writeShort(12);
+            writeUtf8(out, GENERATED_NAME.replace('.', '/')); // #1
+            writeClass(out, 1); // #2
+            writeUtf8(out, superName); // #3
+            writeClass(out, 3); // #4
+            writeUtf8(out, "<init>"); // #5
+            writeUtf8(out, "()V"); // #6
+            out.writeByte(12); // #7 NameAndType <init>:()V
+            out.writeShort(5);
+            out.writeShort(6);
+            out.writeByte(10); // #8 Methodref super.<init>
+            out.writeShort(4);
+            out.writeShort(7);
+            writeUtf8(out, "eval"); // #9
+            writeUtf8(out, evalDescriptor); // #10
+            writeUtf8(out, "Code"); // #11
+
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            // public <init>() { super(); }
+            out.writeShort(0x0001);
+            out.writeShort(5);
+            out.writeShort(6);
+            writeCode(out, 1, 1, new byte[] { (byte) ALOAD_0, (byte) INVOKESPECIAL, 0, 8, (byte) RETURN });
+
+            // public final eval(int x, int y, int z)
+            out.writeShort(0x0001 | 0x0010);
+            out.writeShort(9);
+            out.writeShort(10);
+            writeCode(out, Math.max(gen.maxStack(), 1), 4, code);
+
+            out.writeShort(0); // class attributes
+        } catch (IOException e) {
+            // Can't happen writing to a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUtf8(DataOutputStream out, String s) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(s);
+    }
+
+    private static void writeClass(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+
+    private static void writeCode(DataOutputStream out, int maxStack, int maxLocals, byte[] code)
+            throws IOException {
+        out.writeShort(1); // method attributes: just Code
+        out.writeShort(11);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+}
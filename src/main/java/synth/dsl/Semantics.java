@@ -347,29 +347,29 @@ public class Semantics {
                         c = popBoolNode();
                         x = popExprNode();
                         y = popExprNode();
-                        pushExprNode(new ParseNode(Symbol.Ite, List.of(c, x, y)));
+                        pushExprNode(ParseNode.intern(Symbol.Ite, c, x, y));
                         break;
                     case Add:
                     case Multiply:
                         x = popExprNode();
                         y = popExprNode();
-                        pushExprNode(new ParseNode(s, List.of(x, y)));
+                        pushExprNode(ParseNode.intern(s, x, y));
                         break;
                     case Lt:
                     case Eq:
                         x = popExprNode();
                         y = popExprNode();
-                        pushBoolNode(new ParseNode(s, List.of(x, y)));
+                        pushBoolNode(ParseNode.intern(s, x, y));
                         break;
                     case And:
                     case Or:
                         x = popBoolNode();
                         y = popBoolNode();
-                        pushBoolNode(new ParseNode(s, List.of(x, y)));
+                        pushBoolNode(ParseNode.intern(s, x, y));
                         break;
                     case Not:
                         x = popBoolNode();
-                        pushBoolNode(new ParseNode(Symbol.Not, List.of(x)));
+                        pushBoolNode(ParseNode.intern(Symbol.Not, x));
                         break;
                     default:
                         throw new UnsupportedOperationException("Cannot evaluate expression " + s);
@@ -552,6 +552,384 @@ public class Semantics {
         return postOrderEvaluator.get().measureBoolSize(program);
     }
 
+    private static class BatchEvaluator {
+        private int n;
+        private int[] xs, ys, zs;
+
+        // Scratch columns, used in strict stack order: the tree evaluator acquires
+        // temporaries on the way down and releases them on the way back up, and the
+        // post-order evaluator uses them directly as its operand stack
+        private int[][] exprCols = new int[16][];
+        private int exprTop;
+        private boolean[][] boolCols = new boolean[16][];
+        private int boolTop;
+        private int[] onesCol = new int[0];
+        private boolean[] falseCol = new boolean[0];
+
+        private void reset(int[] xs, int[] ys, int[] zs, int n) {
+            if (xs.length < n || ys.length < n || zs.length < n) {
+                throw new IllegalArgumentException("Input columns must all be the same size");
+            }
+            this.n = n;
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+            this.exprTop = 0;
+            this.boolTop = 0;
+        }
+
+        private int[] acquireExpr() {
+            if (exprTop == exprCols.length) {
+                exprCols = Arrays.copyOf(exprCols, exprCols.length * 2);
+            }
+            var col = exprCols[exprTop];
+            if (col == null || col.length < n) {
+                col = new int[n];
+                exprCols[exprTop] = col;
+            }
+            ++exprTop;
+            return col;
+        }
+
+        private boolean[] acquireBool() {
+            if (boolTop == boolCols.length) {
+                boolCols = Arrays.copyOf(boolCols, boolCols.length * 2);
+            }
+            var col = boolCols[boolTop];
+            if (col == null || col.length < n) {
+                col = new boolean[n];
+                boolCols[boolTop] = col;
+            }
+            ++boolTop;
+            return col;
+        }
+
+        public void evalExpr(ParseNode expr, int[] out) {
+            final int n = this.n;
+            int[] tmp;
+            switch (expr.getSymbol()) {
+                case Ite: {
+                    var cond = acquireBool();
+                    evalBool(expr.getChild(0), cond);
+                    evalExpr(expr.getChild(1), out);
+                    tmp = acquireExpr();
+                    evalExpr(expr.getChild(2), tmp);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] = cond[i] ? out[i] : tmp[i];
+                    }
+                    --exprTop;
+                    --boolTop;
+                    break;
+                }
+                case Add:
+                    evalExpr(expr.getChild(0), out);
+                    tmp = acquireExpr();
+                    evalExpr(expr.getChild(1), tmp);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] += tmp[i];
+                    }
+                    --exprTop;
+                    break;
+                case Multiply:
+                    evalExpr(expr.getChild(0), out);
+                    tmp = acquireExpr();
+                    evalExpr(expr.getChild(1), tmp);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] *= tmp[i];
+                    }
+                    --exprTop;
+                    break;
+                case VarX:
+                    System.arraycopy(xs, 0, out, 0, n);
+                    break;
+                case VarY:
+                    System.arraycopy(ys, 0, out, 0, n);
+                    break;
+                case VarZ:
+                    System.arraycopy(zs, 0, out, 0, n);
+                    break;
+                case Const1:
+                    Arrays.fill(out, 0, n, 1);
+                    break;
+                case Const2:
+                    Arrays.fill(out, 0, n, 2);
+                    break;
+                case Const3:
+                    Arrays.fill(out, 0, n, 3);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Cannot evaluate expression " + expr);
+            }
+        }
+
+        public void evalBool(ParseNode pred, boolean[] out) {
+            final int n = this.n;
+            int[] a, b;
+            boolean[] tmp;
+            switch (pred.getSymbol()) {
+                case Lt:
+                    a = acquireExpr();
+                    b = acquireExpr();
+                    evalExpr(pred.getChild(0), a);
+                    evalExpr(pred.getChild(1), b);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] = a[i] < b[i];
+                    }
+                    exprTop -= 2;
+                    break;
+                case Eq:
+                    a = acquireExpr();
+                    b = acquireExpr();
+                    evalExpr(pred.getChild(0), a);
+                    evalExpr(pred.getChild(1), b);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] = a[i] == b[i];
+                    }
+                    exprTop -= 2;
+                    break;
+                case And:
+                    evalBool(pred.getChild(0), out);
+                    tmp = acquireBool();
+                    evalBool(pred.getChild(1), tmp);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] &= tmp[i];
+                    }
+                    --boolTop;
+                    break;
+                case Or:
+                    evalBool(pred.getChild(0), out);
+                    tmp = acquireBool();
+                    evalBool(pred.getChild(1), tmp);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] |= tmp[i];
+                    }
+                    --boolTop;
+                    break;
+                case Not:
+                    evalBool(pred.getChild(0), out);
+                    for (int i = 0; i < n; ++i) {
+                        out[i] = !out[i];
+                    }
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Cannot evaluate predicate " + pred);
+            }
+        }
+
+        // The post-order stack discipline matches PostOrderEvaluator exactly,
+        // including the defaults for popping an empty stack: 1 for exprs, false for
+        // bools.
+
+        private int[] popExprCol() {
+            if (exprTop > 0) {
+                return exprCols[--exprTop];
+            }
+            if (onesCol.length < n) {
+                onesCol = new int[n];
+                Arrays.fill(onesCol, 1);
+            }
+            return onesCol;
+        }
+
+        private boolean[] popBoolCol() {
+            if (boolTop > 0) {
+                return boolCols[--boolTop];
+            }
+            if (falseCol.length < n) {
+                falseCol = new boolean[n];
+            }
+            return falseCol;
+        }
+
+        public void evaluateProgram(Symbol[] program) {
+            final int n = this.n;
+            for (int p = 0; p < program.length; ++p) {
+                var s = program[p];
+                if (s == null) {
+                    continue;
+                }
+                int[] ex, ey, eo;
+                boolean[] bx, by, bo;
+                switch (s) {
+                    case Const1:
+                        Arrays.fill(acquireExpr(), 0, n, 1);
+                        break;
+                    case Const2:
+                        Arrays.fill(acquireExpr(), 0, n, 2);
+                        break;
+                    case Const3:
+                        Arrays.fill(acquireExpr(), 0, n, 3);
+                        break;
+                    case VarX:
+                        System.arraycopy(xs, 0, acquireExpr(), 0, n);
+                        break;
+                    case VarY:
+                        System.arraycopy(ys, 0, acquireExpr(), 0, n);
+                        break;
+                    case VarZ:
+                        System.arraycopy(zs, 0, acquireExpr(), 0, n);
+                        break;
+                    case Ite:
+                        bx = popBoolCol();
+                        ex = popExprCol();
+                        ey = popExprCol();
+                        // Writes in place over ey (or a fresh column if ey was a default)
+                        eo = acquireExpr();
+                        for (int i = 0; i < n; ++i) {
+                            eo[i] = bx[i] ? ex[i] : ey[i];
+                        }
+                        break;
+                    case Add:
+                        ex = popExprCol();
+                        ey = popExprCol();
+                        eo = acquireExpr();
+                        for (int i = 0; i < n; ++i) {
+                            eo[i] = ex[i] + ey[i];
+                        }
+                        break;
+                    case Multiply:
+                        ex = popExprCol();
+                        ey = popExprCol();
+                        eo = acquireExpr();
+                        for (int i = 0; i < n; ++i) {
+                            eo[i] = ex[i] * ey[i];
+                        }
+                        break;
+                    case Lt:
+                        ex = popExprCol();
+                        ey = popExprCol();
+                        bo = acquireBool();
+                        for (int i = 0; i < n; ++i) {
+                            bo[i] = ex[i] < ey[i];
+                        }
+                        break;
+                    case Eq:
+                        ex = popExprCol();
+                        ey = popExprCol();
+                        bo = acquireBool();
+                        for (int i = 0; i < n; ++i) {
+                            bo[i] = ex[i] == ey[i];
+                        }
+                        break;
+                    case And:
+                        bx = popBoolCol();
+                        by = popBoolCol();
+                        bo = acquireBool();
+                        for (int i = 0; i < n; ++i) {
+                            bo[i] = bx[i] & by[i];
+                        }
+                        break;
+                    case Or:
+                        bx = popBoolCol();
+                        by = popBoolCol();
+                        bo = acquireBool();
+                        for (int i = 0; i < n; ++i) {
+                            bo[i] = bx[i] | by[i];
+                        }
+                        break;
+                    case Not:
+                        bx = popBoolCol();
+                        bo = acquireBool();
+                        for (int i = 0; i < n; ++i) {
+                            bo[i] = !bx[i];
+                        }
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Cannot evaluate expression " + s);
+                }
+            }
+        }
+
+        public void evaluateExprPostOrder(Symbol[] program, int[] out) {
+            evaluateProgram(program);
+            System.arraycopy(popExprCol(), 0, out, 0, n);
+        }
+
+        public void evaluateBoolPostOrder(Symbol[] program, boolean[] out) {
+            evaluateProgram(program);
+            System.arraycopy(popBoolCol(), 0, out, 0, n);
+        }
+    }
+
+    private static ThreadLocal<BatchEvaluator> batchEvaluator = ThreadLocal.withInitial(BatchEvaluator::new);
+
+    /**
+     * Evaluate a program over a whole batch of inputs at once. Each node is
+     * dispatched once per batch instead of once per input, and the per-node work
+     * is a simple loop over primitive columns which the JIT can unroll and
+     * vectorize.
+     *
+     * Unlike evaluate(), both branches of every Ite and both sides of every
+     * And/Or are computed; there are no side effects so the results are the same.
+     *
+     * @param program the program to be evaluated
+     * @param xs      x value of each input
+     * @param ys      y value of each input
+     * @param zs      z value of each input
+     * @param out     receives the value of the program for each input; its length
+     *                determines how many inputs are evaluated
+     */
+    public static void evaluateBatch(ParseNode program, int[] xs, int[] ys, int[] zs, int[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(xs, ys, zs, out.length);
+        evaluator.evalExpr(program, out);
+    }
+
+    public static void evaluateBatch(ParseNode program, ExampleColumns inputs, int[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(inputs.xs(), inputs.ys(), inputs.zs(), inputs.size());
+        evaluator.evalExpr(program, out);
+    }
+
+    public static void evaluateBoolBatch(ParseNode program, int[] xs, int[] ys, int[] zs, boolean[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(xs, ys, zs, out.length);
+        evaluator.evalBool(program, out);
+    }
+
+    public static void evaluateBoolBatch(ParseNode program, ExampleColumns inputs, boolean[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(inputs.xs(), inputs.ys(), inputs.zs(), inputs.size());
+        evaluator.evalBool(program, out);
+    }
+
+    public static void evaluateExprPostOrderBatch(Symbol[] program, ExampleColumns inputs, int[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(inputs.xs(), inputs.ys(), inputs.zs(), inputs.size());
+        evaluator.evaluateExprPostOrder(program, out);
+    }
+
+    public static void evaluateBoolPostOrderBatch(Symbol[] program, ExampleColumns inputs, boolean[] out) {
+        var evaluator = batchEvaluator.get();
+        evaluator.reset(inputs.xs(), inputs.ys(), inputs.zs(), inputs.size());
+        evaluator.evaluateBoolPostOrder(program, out);
+    }
+
+    /**
+     * Compile a program to JVM bytecode. Compilation costs far more than a single
+     * interpreted evaluation, so this pays off for programs which are going to be
+     * evaluated against many inputs, like a candidate which has survived the first
+     * few examples in a validation loop.
+     *
+     * @param program the expression program to compile
+     * @return an evaluator computing the same function as evaluate(program, env)
+     */
+    public static CompiledExpr compileExpr(ParseNode program) {
+        return ProgramCompiler.compileExpr(program);
+    }
+
+    public static CompiledBool compileBool(ParseNode program) {
+        return ProgramCompiler.compileBool(program);
+    }
+
+    public static CompiledExpr compileExprPostOrder(Symbol[] program) {
+        return ProgramCompiler.compileExpr(makeParseTreeFromExprPostOrder(program));
+    }
+
+    public static CompiledBool compileBoolPostOrder(Symbol[] program) {
+        return ProgramCompiler.compileBool(makeParseTreeFromBoolPostOrder(program));
+    }
+
     public static int measureParseTreeSize(ParseNode node) {
         int sum = 1;
         for (var c : node.getChildren()) {
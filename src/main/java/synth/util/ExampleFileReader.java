@@ -0,0 +1,199 @@
+package synth.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+import synth.core.Environment;
+import synth.core.Example;
+
+/**
+ * Reads an examples file straight from a channel into Examples, scanning the
+ * "x=a, y=b, z=c -> d" grammar a byte at a time out of a direct buffer. It
+ * accepts the same files as Parser.parseAllExamples(FileUtils.readLinesFromFile())
+ * and produces the same examples, without building a String (let alone the
+ * half-dozen split() pieces) for every line.
+ *
+ * Blank lines and lines starting with '#' are skipped; variables other than x,
+ * y and z are ignored, and any of them left out are 0. Unlike Parser, which
+ * only checks the format with assertions, a malformed line is always an error.
+ */
+public class ExampleFileReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    // The byte under the cursor, or -1 at end of input
+    private int peek;
+    private int line = 1;
+
+    private ExampleFileReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).flip();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the file isn't a well-formed examples
+     *                                  file
+     */
+    public static List<Example> readExamples(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // Most example files are a few kB, and allocating the full buffer for
+            // those would cost more than reading them
+            int bufferSize = (int) Math.max(1, Math.min(channel.size(), BUFFER_SIZE));
+            return new ExampleFileReader(channel, bufferSize).readAll();
+        }
+    }
+
+    /**
+     * Read examples from channel until it runs out, without closing it.
+     *
+     * @throws IllegalArgumentException if the input isn't well-formed
+     */
+    public static List<Example> readExamples(ReadableByteChannel channel) throws IOException {
+        return new ExampleFileReader(channel, BUFFER_SIZE).readAll();
+    }
+
+    private List<Example> readAll() throws IOException {
+        var examples = new ArrayList<Example>();
+        advance();
+        while (peek >= 0) {
+            skipBlanks();
+            if (peek == '#') {
+                while (peek >= 0 && peek != '\n') {
+                    advance();
+                }
+            } else if (peek >= 0 && peek != '\r' && peek != '\n') {
+                examples.add(readExample());
+            }
+            endLine();
+        }
+        return examples;
+    }
+
+    private Example readExample() throws IOException {
+        int x = 0, y = 0, z = 0;
+        while (true) {
+            int name = readName();
+            skipBlanks();
+            expect('=');
+            int value = readInt();
+            if (name == 'x') {
+                x = value;
+            } else if (name == 'y') {
+                y = value;
+            } else if (name == 'z') {
+                z = value;
+            }
+            skipBlanks();
+            if (peek == ',') {
+                advance();
+                skipBlanks();
+            } else if (peek == '-') {
+                advance();
+                expect('>');
+                break;
+            } else {
+                throw error("Expected ',' or '->'");
+            }
+        }
+        return new Example(new Environment(x, y, z), readInt());
+    }
+
+    /**
+     * @return the name's only character if it's one character long, -1 otherwise
+     */
+    private int readName() throws IOException {
+        int first = peek;
+        int length = 0;
+        while (Character.isLetterOrDigit(peek) || peek == '_') {
+            advance();
+            ++length;
+        }
+        if (length == 0) {
+            throw error("Expected a variable name");
+        }
+        return length == 1 ? first : -1;
+    }
+
+    private int readInt() throws IOException {
+        skipBlanks();
+        boolean negative = false;
+        if (peek == '-' || peek == '+') {
+            negative = peek == '-';
+            advance();
+        }
+        if (peek < '0' || peek > '9') {
+            throw error("Expected a number");
+        }
+        long value = 0;
+        while (peek >= '0' && peek <= '9') {
+            value = value * 10 + (peek - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw error("Number out of range");
+            }
+            advance();
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw error("Number out of range");
+        }
+        return (int) value;
+    }
+
+    private void endLine() throws IOException {
+        skipBlanks();
+        if (peek == '\r') {
+            advance();
+        }
+        if (peek == '\n') {
+            advance();
+            ++line;
+        } else if (peek >= 0) {
+            throw error("Unexpected text at end of line");
+        }
+    }
+
+    private void skipBlanks() throws IOException {
+        while (peek == ' ' || peek == '\t') {
+            advance();
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek != c) {
+            throw error("Expected '" + c + "'");
+        }
+        advance();
+    }
+
+    private void advance() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n < 0) {
+                peek = -1;
+                return;
+            }
+        }
+        peek = buffer.get() & 0xff;
+    }
+
+    private IllegalArgumentException error(String message) {
+        String found;
+        if (peek < 0) {
+            found = "end of input";
+        } else if (peek == '\n' || peek == '\r') {
+            found = "end of line";
+        } else {
+            found = "'" + (char) peek + "'";
+        }
+        return new IllegalArgumentException(String.format("Line %d: %s, found %s", line, message, found));
+    }
+}
@@ -0,0 +1,56 @@
+package synth.util;
+
+import java.util.*;
+
+import synth.core.Environment;
+import synth.core.Example;
+
+/**
+ * Cleans up a parsed example list before it's handed to the synthesizers:
+ * repeated examples are merged, two examples giving the same input different
+ * outputs are rejected up front (no program can satisfy both, so there's no
+ * point searching), and the rest are reordered so checking a candidate against
+ * them in order tends to find a failure early.
+ *
+ * The order is round-robin over the distinct outputs, in order of first
+ * appearance, each output's examples otherwise keeping their file order. A
+ * candidate that only gets one kind of behaviour right, which is most of them,
+ * then fails within the first few examples instead of after a long run of
+ * examples that all share one output.
+ */
+public class ExamplePreprocessor {
+    private ExamplePreprocessor() {
+    }
+
+    /**
+     * @return examples deduplicated and reordered as described above
+     * @throws IllegalArgumentException if two examples have the same input but
+     *                                  different outputs
+     */
+    public static List<Example> preprocess(List<Example> examples) {
+        var outputs = new HashMap<Environment, Example>(examples.size() * 2);
+        var byOutput = new LinkedHashMap<Integer, ArrayDeque<Example>>();
+        for (var e : examples) {
+            var previous = outputs.putIfAbsent(e.input(), e);
+            if (previous == null) {
+                byOutput.computeIfAbsent(e.output(), k -> new ArrayDeque<>()).add(e);
+            } else if (previous.output() != e.output()) {
+                throw new IllegalArgumentException(
+                        String.format("Contradictory examples: %s and %s", previous, e));
+            }
+        }
+
+        var result = new ArrayList<Example>(outputs.size());
+        var queues = new ArrayList<>(byOutput.values());
+        while (!queues.isEmpty()) {
+            for (var it = queues.iterator(); it.hasNext();) {
+                var queue = it.next();
+                result.add(queue.removeFirst());
+                if (queue.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,203 @@
+package synth.util;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Process-wide counters, timers and sampled series, for seeing where the time
+ * goes on a problem without turning on the (very chatty) synthesizer logging.
+ * Names are dotted paths, like "lia.cp.order2.solve".
+ *
+ * Recording is off until setEnabled(true), and while it's off every recording
+ * call is one volatile read. It's meant for one problem at a time: reset()
+ * before, toJson() after. Hot loops should count locally and add their totals
+ * in batches rather than calling count() per item.
+ */
+public final class Metrics {
+    /**
+     * Samples kept per series; after that, every other sample is dropped and
+     * only every other new one is kept, so a long run still covers its whole
+     * length at lower resolution.
+     */
+    private static final int MAX_SAMPLES = 256;
+
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNs = new LongAdder();
+        final LongAccumulator maxNs = new LongAccumulator(Math::max, 0);
+    }
+
+    private static final class Series {
+        final ArrayList<double[]> samples = new ArrayList<>();
+        int stride = 1;
+        int skipped = 0;
+
+        synchronized void add(double ms, double value) {
+            if (++skipped < stride) {
+                return;
+            }
+            skipped = 0;
+            if (samples.size() >= MAX_SAMPLES) {
+                for (int i = 0; i < samples.size() / 2; ++i) {
+                    samples.set(i, samples.get(i * 2 + 1));
+                }
+                samples.subList(samples.size() / 2, samples.size()).clear();
+                stride *= 2;
+            }
+            samples.add(new double[] { ms, value });
+        }
+    }
+
+    private static volatile boolean enabled = false;
+    private static volatile long startNs = System.nanoTime();
+    private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Forget everything recorded so far and restart the clock series are
+     * sampled against.
+     */
+    public static void reset() {
+        counters.clear();
+        timers.clear();
+        series.clear();
+        startNs = System.nanoTime();
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long n) {
+        if (enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(n);
+        }
+    }
+
+    /**
+     * @return the counter's total since reset(), or 0 if nothing was counted
+     */
+    public static long counter(String name) {
+        var counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * @return a start time to pass to stopTimer()
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since startNs (from startTimer()) against name.
+     */
+    public static void stopTimer(String name, long startNs) {
+        if (enabled && startNs != 0) {
+            long ns = System.nanoTime() - startNs;
+            var timer = timers.computeIfAbsent(name, k -> new Timer());
+            timer.count.increment();
+            timer.totalNs.add(ns);
+            timer.maxNs.accumulate(ns);
+        }
+    }
+
+    /**
+     * Add a point to a series, timestamped with the time since reset().
+     */
+    public static void sample(String name, double value) {
+        if (enabled) {
+            double ms = (System.nanoTime() - startNs) / 1e6;
+            series.computeIfAbsent(name, k -> new Series()).add(ms, value);
+        }
+    }
+
+    /**
+     * Everything recorded since reset(), as one JSON object:
+     *
+     * {"elapsedMs": ..., "counters": {name: n, ...}, "timers": {name: {"count":
+     * n, "totalMs": t, "maxMs": t}, ...}, "series": {name: [[ms, value], ...],
+     * ...}}
+     *
+     * Names are sorted, so dumps of different problems line up.
+     */
+    public static String toJson() {
+        var sb = new StringBuilder();
+        sb.append("{\"elapsedMs\": ").append(formatNumber((System.nanoTime() - startNs) / 1e6));
+
+        sb.append(", \"counters\": {");
+        var sep = "";
+        for (var e : new TreeMap<>(counters).entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(": ").append(e.getValue().sum());
+            sep = ", ";
+        }
+
+        sb.append("}, \"timers\": {");
+        sep = "";
+        for (var e : new TreeMap<>(timers).entrySet()) {
+            var t = e.getValue();
+            sb.append(sep).append(quote(e.getKey())).append(": {\"count\": ").append(t.count.sum())
+                    .append(", \"totalMs\": ").append(formatNumber(t.totalNs.sum() / 1e6))
+                    .append(", \"maxMs\": ").append(formatNumber(t.maxNs.get() / 1e6)).append("}");
+            sep = ", ";
+        }
+
+        sb.append("}, \"series\": {");
+        sep = "";
+        for (var e : new TreeMap<>(series).entrySet()) {
+            sb.append(sep).append(quote(e.getKey())).append(": [");
+            var s = e.getValue();
+            synchronized (s) {
+                var pointSep = "";
+                for (var p : s.samples) {
+                    sb.append(pointSep).append("[").append(formatNumber(p[0])).append(", ")
+                            .append(formatNumber(p[1])).append("]");
+                    pointSep = ", ";
+                }
+            }
+            sb.append("]");
+            sep = ", ";
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    /**
+     * @return s as a JSON string literal
+     */
+    public static String quote(String s) {
+        var sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String formatNumber(double v) {
+        if (!Double.isFinite(v)) {
+            // JSON has no infinities; costs can be, though
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+}
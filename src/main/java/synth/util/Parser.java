@@ -2,6 +2,9 @@ package synth.util;
 
 import synth.core.Environment;
 import synth.core.Example;
+import synth.core.ParseNode;
+import synth.core.Program;
+import synth.dsl.Symbol;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -73,6 +76,79 @@ public class Parser {
         return examples;
     }
 
+    /**
+     * Parse a program in the form Program.toString() prints it, e.g.
+     * Add(Multiply(Const2, VarX), VarY).
+     * 
+     * @param text the program text
+     * @return the program
+     * @throws IllegalArgumentException if text isn't a well-formed program
+     */
+    public static Program parseProgram(String text) {
+        int[] pos = { 0 };
+        var root = parseNode(text, pos);
+        skipSpaces(text, pos);
+        if (pos[0] != text.length()) {
+            throw new IllegalArgumentException("Unexpected text after program at " + pos[0] + ": " + text);
+        }
+        if (root.getSymbol().returnSymbol() != Symbol.E) {
+            throw new IllegalArgumentException("Program must be an expression: " + text);
+        }
+        return new Program(root);
+    }
+
+    private static ParseNode parseNode(String text, int[] pos) {
+        skipSpaces(text, pos);
+        int start = pos[0];
+        while (pos[0] < text.length() && Character.isLetterOrDigit(text.charAt(pos[0]))) {
+            ++pos[0];
+        }
+        var name = text.substring(start, pos[0]);
+        Symbol symbol;
+        try {
+            symbol = Symbol.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown symbol '" + name + "' at " + start + ": " + text);
+        }
+        if (!symbol.isTerminalProduction()) {
+            throw new IllegalArgumentException("Nonterminal '" + name + "' at " + start + ": " + text);
+        }
+        var args = symbol.operatorArguments();
+        if (args.isEmpty()) {
+            return ParseNode.intern(symbol);
+        }
+
+        expect(text, pos, '(');
+        var children = new ArrayList<ParseNode>(args.size());
+        for (int i = 0; i < args.size(); ++i) {
+            if (i > 0) {
+                expect(text, pos, ',');
+            }
+            var child = parseNode(text, pos);
+            if (child.getSymbol().returnSymbol() != args.get(i)) {
+                throw new IllegalArgumentException(
+                        "Argument " + i + " of " + name + " must be " + args.get(i) + ": " + text);
+            }
+            children.add(child);
+        }
+        expect(text, pos, ')');
+        return ParseNode.intern(symbol, children);
+    }
+
+    private static void skipSpaces(String text, int[] pos) {
+        while (pos[0] < text.length() && Character.isWhitespace(text.charAt(pos[0]))) {
+            ++pos[0];
+        }
+    }
+
+    private static void expect(String text, int[] pos, char c) {
+        skipSpaces(text, pos);
+        if (pos[0] >= text.length() || text.charAt(pos[0]) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + pos[0] + ": " + text);
+        }
+        ++pos[0];
+    }
+
     /**
      * Parse a pair of variable name and value.
      * 
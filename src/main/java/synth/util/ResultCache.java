@@ -0,0 +1,203 @@
+package synth.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.*;
+
+import synth.core.Example;
+import synth.core.Program;
+import synth.dsl.Semantics;
+
+/**
+ * Remembers synthesized programs across runs, keyed by a fingerprint of the
+ * example set. The file is append-only: one "fingerprint program" line per
+ * result. When it grows to twice maxEntries lines it's compacted down to the
+ * maxEntries most recently stored results, so the oldest results are the first
+ * to go.
+ * 
+ * The fingerprint is a SHA-256 of the distinct examples in sorted order, so the
+ * same examples in a different order (or with repeats) hit the same entry.
+ * Cached programs are always revalidated against the examples before being
+ * returned -- a stale or corrupt entry is a miss, never a wrong answer.
+ * 
+ * A cache whose file can't be read or written logs a warning and carries on
+ * without persistence, since it's only ever an optimization.
+ */
+public class ResultCache {
+    private static Logger logger = Logger.getLogger(ResultCache.class.getName());
+
+    private static final Comparator<Example> EXAMPLE_ORDER = Comparator.comparing(Example::input)
+            .thenComparingInt(Example::output);
+
+    private final Path file;
+    private final int maxEntries;
+    // Insertion order is storage order, oldest first
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+    private int fileLines = 0;
+    private boolean persistent = true;
+
+    public ResultCache(Path file, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.file = file;
+        this.maxEntries = maxEntries;
+        load();
+    }
+
+    public static String fingerprint(Collection<Example> examples) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        var sorted = examples.stream().distinct().sorted(EXAMPLE_ORDER).toArray(Example[]::new);
+        var buf = new byte[16];
+        for (var ex : sorted) {
+            putInt(buf, 0, ex.input().x());
+            putInt(buf, 4, ex.input().y());
+            putInt(buf, 8, ex.input().z());
+            putInt(buf, 12, ex.output());
+            digest.update(buf);
+        }
+        var hash = digest.digest();
+        var sb = new StringBuilder(hash.length * 2);
+        for (var b : hash) {
+            sb.append(Character.forDigit((b >>> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the cached program for examples, or null if there isn't one that
+     *         satisfies them
+     */
+    public synchronized Program lookup(List<Example> examples) {
+        var key = fingerprint(examples);
+        var text = entries.get(key);
+        if (text == null) {
+            return null;
+        }
+        Program program;
+        try {
+            program = Parser.parseProgram(text);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Dropping unparseable cache entry {0}: {1}", new Object[] { key, text });
+            entries.remove(key);
+            return null;
+        }
+        for (var e : examples) {
+            if (Semantics.evaluate(program, e.input()) != e.output()) {
+                logger.log(Level.WARNING, "Dropping cache entry {0}, it fails example {1}", new Object[] { key, e });
+                entries.remove(key);
+                return null;
+            }
+        }
+        return program;
+    }
+
+    public synchronized void store(List<Example> examples, Program program) {
+        var key = fingerprint(examples);
+        var text = program.toString();
+        if (text.equals(entries.get(key))) {
+            return;
+        }
+        // Re-inserting moves the entry to the young end
+        entries.remove(key);
+        entries.put(key, text);
+        while (entries.size() > maxEntries) {
+            var it = entries.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        if (!persistent) {
+            return;
+        }
+        if (fileLines + 1 >= 2 * maxEntries) {
+            compact();
+        } else {
+            append(key, text);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++fileLines;
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    // Most likely a line truncated by a crash mid-append
+                    continue;
+                }
+                var key = line.substring(0, space);
+                entries.remove(key);
+                entries.put(key, line.substring(space + 1));
+            }
+        } catch (IOException e) {
+            disablePersistence("reading", e);
+            return;
+        }
+        while (entries.size() > maxEntries) {
+            var it = entries.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void append(String key, String text) {
+        try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            writer.write(key + " " + text + "\n");
+            ++fileLines;
+        } catch (IOException e) {
+            disablePersistence("writing", e);
+        }
+    }
+
+    /**
+     * Rewrite the file with just the live entries, replacing the old one
+     * atomically so a crash mid-compaction can't lose the cache.
+     */
+    private void compact() {
+        try {
+            var parent = file.toAbsolutePath().getParent();
+            var temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (var writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (var entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileLines = entries.size();
+        } catch (IOException e) {
+            disablePersistence("compacting", e);
+        }
+    }
+
+    private void disablePersistence(String what, IOException e) {
+        logger.log(Level.WARNING, "Error " + what + " result cache " + file + ", continuing without it", e);
+        persistent = false;
+    }
+}
@@ -0,0 +1,69 @@
+package synth;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import synth.core.Example;
+import synth.util.Tests;
+
+public class SynthesisServerTests {
+    private static String request(int port, String text) throws IOException {
+        try (var channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+            var out = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.shutdownOutput();
+            var response = new StringBuilder();
+            var in = ByteBuffer.allocate(256);
+            while (channel.read(in) >= 0) {
+                in.flip();
+                response.append(StandardCharsets.UTF_8.decode(in));
+                in.clear();
+            }
+            return response.toString();
+        }
+    }
+
+    @Test
+    public void testAnswersEachConnection() throws Exception {
+        var rng = Tests.makeRng(-1);
+        // Stands in for the synthesizers: answers with a summary of the examples
+        var server = new SynthesisServer(0, 2, () -> examples -> examples.size() + " "
+                + examples.stream().mapToInt(Example::output).sum());
+        var serving = Executors.newSingleThreadExecutor();
+        try {
+            var done = serving.submit(() -> {
+                server.serve();
+                return null;
+            });
+            int port = server.port();
+            for (int n = 0; n < 20; ++n) {
+                var text = new StringBuilder("# comment\n");
+                int count = rng.nextInt(50), sum = 0;
+                for (var env : Tests.makeRandomEnvs(rng, count)) {
+                    int output = rng.nextInt(100);
+                    sum += output;
+                    text.append(String.format("x=%d, y=%d, z=%d -> %d\n", env.x(), env.y(), env.z(), output));
+                }
+                Assert.assertEquals(count + " " + sum + "\n", request(port, text.toString()));
+            }
+            Assert.assertEquals("error: bad examples!\n", request(port, "x=1, y=2 => 3\n"));
+
+            server.close();
+            // serve() returns once the server is closed
+            done.get(10, TimeUnit.SECONDS);
+        } finally {
+            server.close();
+            serving.shutdownNow();
+        }
+    }
+}
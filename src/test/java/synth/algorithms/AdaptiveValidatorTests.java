@@ -0,0 +1,61 @@
+package synth.algorithms;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class AdaptiveValidatorTests {
+    private static ParseNode makeRandomExpr(Random rng) {
+        return Semantics.makeParseTreeFromExprPostOrder(Tests.makeRandomProgram(rng, 1 + rng.nextInt(10)));
+    }
+
+    private static boolean validateInOrder(List<Example> examples, ParseNode program) {
+        for (var e : examples) {
+            if (Semantics.evaluate(program, e.input()) != e.output()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testMatchesInOrderValidation() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 50; ++n) {
+            var target = makeRandomExpr(rng);
+            var examples = new ArrayList<Example>();
+            for (var env : Tests.makeRandomEnvs(rng, 1 + rng.nextInt(100))) {
+                examples.add(new Example(env, Semantics.evaluate(target, env)));
+            }
+            var validator = new AdaptiveValidator(examples);
+            Assert.assertTrue(validator.validate(target));
+            for (int k = 0; k < 200; ++k) {
+                var cand = makeRandomExpr(rng);
+                Assert.assertEquals(validateInOrder(examples, cand), validator.validate(cand));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectingExampleMovesToFront() {
+        var rng = Tests.makeRng(-1);
+        var examples = new ArrayList<Example>();
+        var envs = Tests.makeRandomEnvs(rng, 1000);
+        for (var env : envs) {
+            examples.add(new Example(env, env.x()));
+        }
+        // Only the last example tells VarX apart from this
+        var last = examples.size() - 1;
+        examples.set(last, new Example(envs.get(last), envs.get(last).x() + 1));
+
+        var validator = new AdaptiveValidator(examples);
+        Assert.assertFalse(validator.validate(ParseNode.VAR_X));
+        Assert.assertEquals(examples.size(), validator.evaluations());
+        Assert.assertFalse(validator.validate(ParseNode.VAR_X));
+        Assert.assertEquals(examples.size() + 1, validator.evaluations());
+    }
+}
@@ -0,0 +1,93 @@
+package synth.algorithms;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class CegisSynthesizerTests {
+    private static final ParseNode X_PLUS_1 = new ParseNode(Symbol.Add,
+            List.of(ParseNode.VAR_X, new ParseNode(Symbol.Const1)));
+
+    private static void assertOneRoundThenAll(List<Example> examples, List<Integer> sizes) {
+        Assert.assertEquals(sizes.toString(), 2, sizes.size());
+        Assert.assertTrue(sizes.toString(), sizes.get(0) <= 16);
+        Assert.assertEquals(examples.size(), (int) sizes.get(1));
+    }
+
+    @Test
+    public void testFindsProgramValidOnAllExamples() {
+        var rng = Tests.makeRng(-1);
+        var largestSubset = new int[1];
+        var inner = new DFSEnum2Synthesizer();
+        var synthesizer = new CegisSynthesizer(examples -> {
+            largestSubset[0] = Math.max(largestSubset[0], examples.size());
+            return inner.synthesize(examples);
+        }, 16, 4, 16);
+        for (int n = 0; n < 20; ++n) {
+            var examples = Tests.makeExamples(rng, Tests.pickProgram(rng, 1 + rng.nextInt(2)), 500);
+            largestSubset[0] = 0;
+            var program = synthesizer.synthesize(examples);
+            Assert.assertNotNull(program);
+            for (var e : examples) {
+                Assert.assertEquals(e.output(), Semantics.evaluate(program, e.input()));
+            }
+            Assert.assertTrue(largestSubset[0] < examples.size());
+        }
+    }
+
+    @Test
+    public void testFailureOnSubsetFallsBackToAllExamples() {
+        var examples = Tests.makeExamples(Tests.makeRng(-1), X_PLUS_1, 200);
+        var sizes = new ArrayList<Integer>();
+        // Like a heuristic solver that only gets there with enough examples
+        var synthesizer = new CegisSynthesizer(subset -> {
+            sizes.add(subset.size());
+            return subset.size() < examples.size() ? null : new Program(X_PLUS_1);
+        }, 16, 4, 16);
+        var program = synthesizer.synthesize(examples);
+        Assert.assertNotNull(program);
+        assertOneRoundThenAll(examples, sizes);
+    }
+
+    @Test
+    public void testFallsBackWhenRoundsRunOut() {
+        var examples = Tests.makeExamples(Tests.makeRng(-1), X_PLUS_1, 200);
+        var sizes = new ArrayList<Integer>();
+        // Wrong on every example, so each round finds new counterexamples until
+        // the rounds run out
+        var synthesizer = new CegisSynthesizer(subset -> {
+            sizes.add(subset.size());
+            return new Program(subset.size() < examples.size() ? ParseNode.VAR_X : X_PLUS_1);
+        }, 16, 4, 3);
+        var program = synthesizer.synthesize(examples);
+        Assert.assertEquals(X_PLUS_1.toString(), program.getRoot().toString());
+        Assert.assertEquals(sizes.toString(), 4, sizes.size());
+        for (int i = 1; i < sizes.size(); ++i) {
+            Assert.assertTrue(sizes.toString(), sizes.get(i - 1) < sizes.get(i));
+        }
+        Assert.assertEquals(examples.size(), (int) sizes.get(3));
+    }
+
+    @Test
+    public void testFallsBackWhenWrongOnItsOwnSubset() {
+        // All outputs 0 but one, which is in the initial subset since it's the
+        // only example of its output
+        var examples = new ArrayList<Example>();
+        for (int i = 0; i < 100; ++i) {
+            examples.add(new Example(new Environment(0, i, -i), i == 50 ? 7 : 0));
+        }
+        var sizes = new ArrayList<Integer>();
+        var synthesizer = new CegisSynthesizer(subset -> {
+            sizes.add(subset.size());
+            return new Program(subset.size() < examples.size() ? ParseNode.VAR_X : ParseNode.VAR_Y);
+        }, 16, 4, 16);
+        var program = synthesizer.synthesize(examples);
+        // Its only failure is already in the subset, so it stops after one round
+        Assert.assertEquals(ParseNode.VAR_Y.toString(), program.getRoot().toString());
+        assertOneRoundThenAll(examples, sizes);
+    }
+}
@@ -0,0 +1,88 @@
+package synth.algorithms;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Metrics;
+import synth.util.Tests;
+
+public class DFSEnum2SynthesizerTests {
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        var rng = Tests.makeRng(-1);
+        var pool = new ForkJoinPool(4);
+        try {
+            var sequential = new DFSEnum2Synthesizer(false, 2, Long.MAX_VALUE);
+            var parallel = new DFSEnum2Synthesizer(false, 2, Long.MAX_VALUE, pool);
+            for (int n = 0; n < 20; ++n) {
+                var examples = Tests.makeExamples(rng, Tests.pickProgram(rng, 1 + rng.nextInt(2)), 20);
+                var expected = sequential.synthesize(examples);
+                var actual = parallel.synthesize(examples);
+                Assert.assertNotNull(expected);
+                Assert.assertEquals(expected.toString(), actual.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testBottomUpFindsProgram() {
+        var rng = Tests.makeRng(-1);
+        var synthesizer = new DFSEnum2Synthesizer();
+        for (int n = 0; n < 20; ++n) {
+            var examples = Tests.makeExamples(rng, Tests.pickProgram(rng, 1 + rng.nextInt(2)), 20);
+            var program = synthesizer.synthesize(examples);
+            Assert.assertNotNull(program);
+            for (var e : examples) {
+                Assert.assertEquals(e.output(), Semantics.evaluate(program, e.input()));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsMetricsWhenStoppingEarly() {
+        var rng = Tests.makeRng(-1);
+        var target = new ParseNode(Symbol.Add, List.of(ParseNode.VAR_X, ParseNode.VAR_Y));
+        var examples = Tests.makeExamples(rng, target, 20);
+        var pool = new ForkJoinPool(2);
+        Metrics.setEnabled(true);
+        try {
+            // Far fewer candidates than a metrics batch before the answer turns up
+            Metrics.reset();
+            Assert.assertNotNull(new DFSEnum2Synthesizer().synthesize(examples));
+            long candidates = Metrics.counter("enumerator.bottomUp.candidates");
+            Assert.assertTrue(candidates > 0);
+            Assert.assertEquals(candidates, Metrics.counter("validate.candidates"));
+            Assert.assertEquals(1, Metrics.counter("validate.accepted"));
+
+            Metrics.reset();
+            Assert.assertNotNull(new DFSEnum2Synthesizer(false, 2, Long.MAX_VALUE).synthesize(examples));
+            candidates = Metrics.counter("enumerator.topDown.candidates");
+            Assert.assertTrue(candidates > 0);
+            Assert.assertEquals(candidates, Metrics.counter("validate.candidates"));
+            Assert.assertEquals(1, Metrics.counter("validate.accepted"));
+
+            Metrics.reset();
+            Assert.assertNotNull(new DFSEnum2Synthesizer(false, 2, Long.MAX_VALUE, pool).synthesize(examples));
+            // The parallel search also enumerates the children it builds from, and
+            // slices after the answer's may check a few more candidates
+            Assert.assertTrue(Metrics.counter("validate.candidates") > 0);
+            Assert.assertTrue(Metrics.counter("enumerator.topDown.candidates")
+                    >= Metrics.counter("validate.candidates"));
+            Assert.assertTrue(Metrics.counter("validate.accepted") >= 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
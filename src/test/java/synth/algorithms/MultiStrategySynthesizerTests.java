@@ -0,0 +1,144 @@
+package synth.algorithms;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class MultiStrategySynthesizerTests {
+    /**
+     * Never finishes on its own; records whether it was interrupted.
+     */
+    private static class StuckSynthesizer implements Synthesizer {
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+
+        /**
+         * A strategy cancelled before it gets a thread never starts at all
+         */
+        boolean stoppedCleanly() {
+            return !started.get() || interrupted.get();
+        }
+
+        @Override
+        public Program synthesize(List<Example> examples) {
+            started.set(true);
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void testFirstValidCandidateCancelsTheRest() {
+        var rng = Tests.makeRng(-1);
+        var pool = Executors.newCachedThreadPool();
+        try {
+            var stuck = new StuckSynthesizer();
+            var wrong = new Program(Tests.pickProgram(rng, 1));
+            var synthesizer = new MultiStrategySynthesizer(pool, Integer.MAX_VALUE, List.of(
+                    new MultiStrategySynthesizer.Strategy("Stuck", stuck),
+                    new MultiStrategySynthesizer.Strategy("Wrong", examples -> wrong),
+                    new MultiStrategySynthesizer.Strategy("Enum", new DFSEnum2Synthesizer())));
+            for (int n = 0; n < 10; ++n) {
+                stuck.started.set(false);
+                stuck.interrupted.set(false);
+                var target = Tests.pickProgram(rng, 1 + rng.nextInt(2));
+                var examples = Tests.makeExamples(rng, target, 20);
+                var program = synthesizer.synthesize(examples);
+                Assert.assertNotNull(program);
+                for (var e : examples) {
+                    Assert.assertEquals(e.output(), Semantics.evaluate(program, e.input()));
+                }
+                // synthesize() waits for every strategy to stop before returning
+                Assert.assertTrue(stuck.stoppedCleanly());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeadlineGivesUp() {
+        var pool = Executors.newCachedThreadPool();
+        try {
+            var stuck = new StuckSynthesizer();
+            var synthesizer = new MultiStrategySynthesizer(pool, Integer.MAX_VALUE,
+                    List.of(new MultiStrategySynthesizer.Strategy("Stuck", stuck, 50)));
+            var examples = Tests.makeExamples(Tests.makeRng(-1), Tests.pickProgram(Tests.makeRng(-1), 1), 5);
+            Assert.assertNull(synthesizer.synthesize(examples));
+            Assert.assertTrue(stuck.stoppedCleanly());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Records whether a real synthesizer's synthesize() has returned.
+     */
+    private static class TrackedSynthesizer implements Synthesizer {
+        final Synthesizer inner;
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean returned = new AtomicBoolean();
+
+        TrackedSynthesizer(Synthesizer inner) {
+            this.inner = inner;
+        }
+
+        boolean stoppedCleanly() {
+            return !started.get() || returned.get();
+        }
+
+        @Override
+        public Program synthesize(List<Example> examples) {
+            started.set(true);
+            try {
+                return inner.synthesize(examples);
+            } finally {
+                returned.set(true);
+            }
+        }
+    }
+
+    // Each of these strategies would keep going for minutes if it ignored
+    // interrupts; this is only a backstop against the test hanging
+    @Test(timeout = 120000)
+    public void testDeadlineStopsRealSynthesizers() {
+        // Random outputs, with no program small enough to find among the
+        // enumerators' budgets
+        var rng = Tests.makeRng(-1);
+        var examples = new ArrayList<Example>();
+        for (var env : Tests.makeRandomEnvs(rng, 200)) {
+            examples.add(new Example(env, rng.nextInt(1000)));
+        }
+        var pool = Executors.newCachedThreadPool();
+        var forkJoinPool = new ForkJoinPool(2);
+        try {
+            var tracked = List.of(new TrackedSynthesizer(new DFSEnum2Synthesizer(false, 5, Long.MAX_VALUE)),
+                    new TrackedSynthesizer(new DFSEnum2Synthesizer(true, 3, Long.MAX_VALUE)),
+                    new TrackedSynthesizer(new DFSEnum2Synthesizer(false, 5, Long.MAX_VALUE, forkJoinPool)),
+                    new TrackedSynthesizer(new VoltronSynthesizer()));
+            var strategies = new ArrayList<MultiStrategySynthesizer.Strategy>();
+            for (var t : tracked) {
+                strategies.add(new MultiStrategySynthesizer.Strategy(t.inner.getClass().getSimpleName(), t, 200));
+            }
+            var synthesizer = new MultiStrategySynthesizer(pool, Integer.MAX_VALUE, strategies);
+            Assert.assertNull(synthesizer.synthesize(examples));
+            // synthesize() only returns once they've all given up
+            for (var t : tracked) {
+                Assert.assertTrue(t.stoppedCleanly());
+            }
+        } finally {
+            pool.shutdownNow();
+            forkJoinPool.shutdownNow();
+        }
+    }
+}
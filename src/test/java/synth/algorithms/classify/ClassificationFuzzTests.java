@@ -0,0 +1,61 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.algorithms.ast.*;
+import synth.algorithms.representation.*;
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class ClassificationFuzzTests {
+    private static BoolRepresentation makeRandomCond(Random rng) {
+        Symbol[] postOrder = Tests.makeRandomProgram(rng, 30);
+        return Asts.makeBoolAstFromParse(Semantics.makeParseTreeFromBoolPostOrder(postOrder));
+    }
+
+    @Test
+    public void testClassificationMatchesCondition() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            var inputs = Tests.makeRandomEnvs(rng, 1 + rng.nextInt(150));
+            var cond = makeRandomCond(rng);
+            var c = Classification.makeFromCondition(cond, inputs);
+            for (var env : inputs) {
+                boolean expected = cond.evalBool(env);
+                Assert.assertEquals(expected, c.includes(env));
+                Assert.assertEquals(!expected, c.excludes(env));
+                Assert.assertEquals(expected, c.included().contains(env));
+                Assert.assertEquals(!expected, c.excluded().contains(env));
+                Assert.assertEquals(!expected, c.inverted().includes(env));
+            }
+            Assert.assertEquals(c.included().size(), c.includedCount());
+            Assert.assertEquals(c.excluded().size(), c.excludedCount());
+        }
+    }
+
+    @Test
+    public void testWordwiseComparisons() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            var inputs = Tests.makeRandomEnvs(rng, 1 + rng.nextInt(150));
+            var a = Classification.makeFromCondition(makeRandomCond(rng), inputs);
+            var b = Classification.makeFromCondition(makeRandomCond(rng), inputs);
+
+            // Same inputs in a different order make an equal universe
+            var shuffled = new ArrayList<>(inputs);
+            Collections.shuffle(shuffled, rng);
+            var aShuffled = Classification.makeFromBits(InputUniverse.of(shuffled), a.bits().clone());
+            Assert.assertEquals(a, aShuffled);
+            Assert.assertEquals(a.hashCode(), aShuffled.hashCode());
+
+            Assert.assertEquals(a.included().equals(b.included()), a.equals(b));
+            Assert.assertEquals(a.included().equals(b.excluded()), a.equalsInverted(b));
+            Assert.assertEquals(b.included().containsAll(a.included()), a.isSubsetOf(b));
+            Assert.assertTrue(a.equalsInverted(a.inverted()));
+            Assert.assertEquals(a, a.inverted().inverted());
+        }
+    }
+}
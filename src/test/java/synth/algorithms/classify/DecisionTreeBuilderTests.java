@@ -0,0 +1,85 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.algorithms.ast.*;
+import synth.algorithms.lia.*;
+import synth.algorithms.representation.*;
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class DecisionTreeBuilderTests {
+    private static BoolRepresentation makeRandomCond(Random rng) {
+        Symbol[] postOrder = Tests.makeRandomProgram(rng, 30);
+        return Asts.optimizeBoolAst(Asts.makeBoolAstFromParse(Semantics.makeParseTreeFromBoolPostOrder(postOrder)));
+    }
+
+    private static ExprRepresentation makeRandomTree(Random rng, int depth, InputUniverse universe,
+            List<Discriminator> discriminators, List<ExprRepresentation> leaves) {
+        if (depth == 0 || rng.nextInt(4) == 0) {
+            var leaf = LinearSolutionFuzzTests.makeRandomLinearSolution(rng).reifyAsExprAst();
+            leaves.add(leaf);
+            return leaf;
+        }
+        var d = new Discriminator(makeRandomCond(rng), universe);
+        discriminators.add(d);
+        return new DecisionTree(d, makeRandomTree(rng, depth - 1, universe, discriminators, leaves),
+                makeRandomTree(rng, depth - 1, universe, discriminators, leaves));
+    }
+
+    /**
+     * With the discriminators and leaves of a tree that produced the examples
+     * available, some discriminator always splits any set of inputs no single
+     * leaf covers, so the greedy builder has to succeed.
+     */
+    @Test
+    public void testRebuildsRandomTrees() throws InterruptedException {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 200; ++n) {
+            var inputs = Tests.makeRandomEnvs(rng, 1 + rng.nextInt(300));
+            var universe = InputUniverse.of(inputs);
+            var discriminators = new ArrayList<Discriminator>();
+            var leaves = new ArrayList<ExprRepresentation>();
+            var tree = makeRandomTree(rng, 4, universe, discriminators, leaves);
+            var examples = new ArrayList<Example>();
+            for (var env : inputs) {
+                examples.add(new Example(env, tree.evalExpr(env)));
+            }
+            // Some unrelated discriminators to ignore
+            for (int i = 0; i < 10; ++i) {
+                discriminators.add(new Discriminator(makeRandomCond(rng), universe));
+            }
+            Collections.shuffle(discriminators, rng);
+            var solutions = new ArrayList<PartialSolution>();
+            var columns = ExampleColumns.of(examples);
+            for (var leaf : leaves) {
+                solutions.add(new PartialSolution(leaf, Classification.makeFromExamples(leaf, columns, universe)));
+            }
+
+            var built = new DecisionTreeBuilder(solutions, discriminators).build();
+            Assert.assertNotNull(built);
+            for (var ex : examples) {
+                Assert.assertEquals(ex.output(), built.evalExpr(ex.input()));
+            }
+        }
+    }
+
+    @Test
+    public void testUncoveredInputFails() throws InterruptedException {
+        var rng = Tests.makeRng(-1);
+        var inputs = Tests.makeRandomEnvs(rng, 50);
+        var universe = InputUniverse.of(inputs);
+        var examples = new ArrayList<Example>();
+        for (var env : inputs) {
+            examples.add(new Example(env, env.x() + env.y() * env.z() + 1000));
+        }
+        ExprRepresentation expr = new ExprConstNode(1);
+        var solution = new PartialSolution(expr,
+                Classification.makeFromExamples(expr, ExampleColumns.of(examples), universe));
+        var discriminator = new Discriminator(makeRandomCond(rng), universe);
+        Assert.assertNull(new DecisionTreeBuilder(List.of(solution), List.of(discriminator)).build());
+    }
+}
@@ -0,0 +1,66 @@
+package synth.algorithms.classify;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.util.Tests;
+
+public class SubsetIndexTests {
+    private static long[] makeRandomBits(Random rng, int words, int bits) {
+        var result = new long[words];
+        // Sparse-ish, so there are plenty of subset relationships to find
+        for (int k = rng.nextInt(bits / 4 + 2); k > 0; --k) {
+            int i = rng.nextInt(bits);
+            result[i >>> 6] |= 1L << i;
+        }
+        return result;
+    }
+
+    private static boolean isSubset(long[] a, long[] b) {
+        for (int w = 0; w < a.length; ++w) {
+            if ((a[w] & ~b[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 200; ++n) {
+            int bits = 1 + rng.nextInt(200);
+            int words = (bits + 63) >>> 6;
+            var index = new SubsetIndex(words);
+            var stored = new ArrayList<long[]>();
+            for (int k = 0; k < 100; ++k) {
+                var q = makeRandomBits(rng, words, bits);
+                boolean expected = stored.stream().anyMatch(s -> isSubset(s, q));
+                Assert.assertEquals(expected, index.containsSubsetOf(q));
+                if (!expected) {
+                    index.add(q);
+                    stored.add(q);
+                }
+            }
+            // Everything added was minimal when it went in, so only supersets of
+            // later additions can have been dropped
+            Assert.assertTrue(index.size() <= stored.size());
+            for (var s : stored) {
+                Assert.assertTrue(index.containsSubsetOf(s));
+            }
+        }
+    }
+
+    @Test
+    public void testAddDropsSupersets() {
+        var index = new SubsetIndex(2);
+        index.add(new long[] { 0b111, 1 });
+        index.add(new long[] { 0b1000, 0 });
+        Assert.assertEquals(2, index.size());
+        index.add(new long[] { 0b011, 0 });
+        Assert.assertEquals(2, index.size());
+        Assert.assertTrue(index.containsSubsetOf(new long[] { 0b011, 0 }));
+        Assert.assertFalse(index.containsSubsetOf(new long[] { 0b101, 1 }));
+    }
+}
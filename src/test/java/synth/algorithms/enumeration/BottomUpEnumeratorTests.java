@@ -0,0 +1,84 @@
+package synth.algorithms.enumeration;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class BottomUpEnumeratorTests {
+    private static int envCount = 8;
+
+    private static List<Integer> exprKey(ParseNode program, ExampleColumns inputs) {
+        var key = new ArrayList<Integer>(inputs.size());
+        for (int i = 0; i < inputs.size(); ++i) {
+            key.add(Semantics.evaluate(program, inputs.input(i)));
+        }
+        return key;
+    }
+
+    private static List<Boolean> boolKey(ParseNode program, ExampleColumns inputs) {
+        var key = new ArrayList<Boolean>(inputs.size());
+        for (int i = 0; i < inputs.size(); ++i) {
+            key.add(Semantics.evaluateBool(program, inputs.input(i)));
+        }
+        return key;
+    }
+
+    @Test
+    public void testExprValuesMatchSemantics() {
+        var rng = Tests.makeRng(-1);
+        var inputs = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+        var be = new BottomUpEnumerator(2, inputs, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var seen = new HashSet<List<Integer>>();
+        while (be.hasNext()) {
+            var program = be.next();
+            var values = be.lastExprValues();
+            for (int i = 0; i < inputs.size(); ++i) {
+                Assert.assertEquals(Semantics.evaluate(program, inputs.input(i)), values[i]);
+            }
+            Assert.assertTrue("Duplicate behaviour: " + program, seen.add(exprKey(program, inputs)));
+        }
+    }
+
+    @Test
+    public void testBoolValuesMatchSemantics() {
+        var rng = Tests.makeRng(-1);
+        var inputs = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+        var be = new BottomUpEnumerator(2, inputs, ProgramEnumerator.B_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var seen = new HashSet<List<Boolean>>();
+        while (be.hasNext()) {
+            var program = be.next();
+            var values = be.lastBoolValues();
+            for (int i = 0; i < inputs.size(); ++i) {
+                Assert.assertEquals(Semantics.evaluateBool(program, inputs.input(i)),
+                        ((values[i >>> 6] >>> i) & 1) != 0);
+            }
+            Assert.assertTrue("Duplicate behaviour: " + program, seen.add(boolKey(program, inputs)));
+        }
+    }
+
+    @Test
+    public void testCoversTopDownEnumeration() {
+        var rng = Tests.makeRng(-1);
+        var inputs = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+        var be = new BottomUpEnumerator(2, inputs, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var found = new HashSet<List<Integer>>();
+        while (be.hasNext()) {
+            found.add(exprKey(be.next(), inputs));
+        }
+        for (int h = 0; h <= 2; ++h) {
+            var pe = new ProgramEnumerator(h, h, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                    ProgramEnumerator.B_SYMBOLS);
+            while (pe.hasNext()) {
+                var program = pe.next();
+                Assert.assertTrue("Missing behaviour of " + program, found.contains(exprKey(program, inputs)));
+            }
+        }
+    }
+}
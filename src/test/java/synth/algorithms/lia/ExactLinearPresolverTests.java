@@ -0,0 +1,116 @@
+package synth.algorithms.lia;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.util.Tests;
+
+public class ExactLinearPresolverTests {
+    private static final List<Term> TERMS = Term.makeUpToOrder(2);
+    private static final int MAX_CONST = 16;
+
+    private static LinearSolution makeRandomSolution(Random rng, int support) {
+        var coeffs = new HashMap<Term, Integer>();
+        while (coeffs.size() < support) {
+            coeffs.put(TERMS.get(rng.nextInt(TERMS.size())), rng.nextInt(MAX_CONST) + 1);
+        }
+        return new LinearSolution(coeffs);
+    }
+
+    private static List<Example> makeExamples(Random rng, LinearSolution sol, int count) {
+        var examples = new ArrayList<Example>();
+        for (var env : Tests.makeRandomEnvs(rng, count)) {
+            examples.add(new Example(env, sol.evalExpr(env)));
+        }
+        return examples;
+    }
+
+    private static void assertSolves(LinearSolution sol, List<Example> examples) {
+        for (var e : examples) {
+            Assert.assertEquals(e.output(), sol.evalExpr(e.input()));
+        }
+        for (var c : sol.coefficients().values()) {
+            Assert.assertTrue(c > 0 && c <= MAX_CONST);
+        }
+    }
+
+    @Test
+    public void testSmallSolutionsFound() {
+        var rng = Tests.makeRng(-1);
+        var presolver = new ExactLinearPresolver(TERMS, MAX_CONST, 3);
+        for (int n = 0; n < 1000; ++n) {
+            var examples = makeExamples(rng, makeRandomSolution(rng, rng.nextInt(3) + 1), rng.nextInt(8) + 1);
+            var result = presolver.presolve(examples);
+            Assert.assertNotEquals(ExactLinearPresolver.Outcome.INFEASIBLE, result.outcome());
+            if (result.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+                assertSolves(result.solution(), examples);
+            }
+        }
+    }
+
+    @Test
+    public void testDeterminedSystemsSolved() {
+        var rng = Tests.makeRng(-1);
+        // Few enough terms that the outputs don't overflow
+        var terms = Term.makeUpToOrder(1);
+        var presolver = new ExactLinearPresolver(terms, MAX_CONST, 0);
+        int solved = 0;
+        for (int n = 0; n < 200; ++n) {
+            var coeffs = new HashMap<Term, Integer>();
+            for (var t : terms) {
+                coeffs.put(t, rng.nextInt(MAX_CONST) + 1);
+            }
+            var sol = new LinearSolution(coeffs);
+            var result = presolver.presolve(makeExamples(rng, sol, 3 * terms.size()));
+            // Random inputs can be degenerate, but that only leaves it undetermined
+            Assert.assertNotEquals(ExactLinearPresolver.Outcome.INFEASIBLE, result.outcome());
+            if (result.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+                Assert.assertEquals(sol, result.solution());
+                ++solved;
+            }
+        }
+        Assert.assertTrue(solved > 100);
+    }
+
+    @Test
+    public void testNeverWrongAboutRandomOutputs() {
+        var rng = Tests.makeRng(-1);
+        var presolver = new ExactLinearPresolver(TERMS, MAX_CONST, 3);
+        var bigPresolver = new ExactLinearPresolver(Term.makeUpToOrder(3), 1000, 0);
+        for (int n = 0; n < 1000; ++n) {
+            var examples = new ArrayList<Example>();
+            for (var env : Tests.makeRandomEnvs(rng, rng.nextInt(8) + 1)) {
+                examples.add(new Example(env, rng.nextInt(200) - 100));
+            }
+            var result = presolver.presolve(examples);
+            if (result.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+                assertSolves(result.solution(), examples);
+            }
+            result = bigPresolver.presolve(examples);
+            if (result.outcome() == ExactLinearPresolver.Outcome.SOLVED) {
+                for (var e : examples) {
+                    Assert.assertEquals(e.output(), result.solution().evalExpr(e.input()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testContradictionsInfeasible() {
+        var presolver = new ExactLinearPresolver(TERMS, MAX_CONST, 3);
+        var env = new Environment(3, -2, 5);
+        Assert.assertEquals(ExactLinearPresolver.Outcome.INFEASIBLE,
+                presolver.presolve(List.of(new Example(env, 4), new Example(env, 5))).outcome());
+        // Only the constant term is nonzero at the origin, and it can't be negative
+        var origin = new Environment(0, 0, 0);
+        Assert.assertEquals(ExactLinearPresolver.Outcome.INFEASIBLE,
+                presolver.presolve(List.of(new Example(origin, -3))).outcome());
+        Assert.assertEquals(ExactLinearPresolver.Outcome.INFEASIBLE,
+                presolver.presolve(List.of(new Example(origin, MAX_CONST + 1))).outcome());
+        var result = presolver.presolve(List.of(new Example(origin, 7)));
+        Assert.assertEquals(ExactLinearPresolver.Outcome.SOLVED, result.outcome());
+        Assert.assertEquals(new LinearSolution(Map.of(Term.TERM_1, 7)), result.solution());
+    }
+}
@@ -29,4 +29,30 @@ public class LinearSolutionFuzzTests {
                     (env) -> Assert.assertEquals(Semantics.evaluate(parseNode, env), linSol.evalExpr(env)));
         }
     }
+
+    @Test
+    public void testTermMatrixBatchEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 100; ++n) {
+            var examples = new ArrayList<Example>();
+            for (var env : Tests.makeRandomEnvs(rng, rng.nextInt(200) + 1)) {
+                examples.add(new Example(env, rng.nextInt(100)));
+            }
+            var matrix = new TermMatrix(examples);
+            var values = new int[examples.size()];
+            for (int k = 0; k < 10; ++k) {
+                var linSol = makeRandomLinearSolution(rng);
+                linSol.evalExprBatch(matrix, values);
+                for (int i = 0; i < examples.size(); ++i) {
+                    var e = examples.get(i);
+                    Assert.assertEquals(linSol.evalExpr(e.input()), values[i]);
+                    Assert.assertEquals(e, matrix.example(matrix.exampleIndex(e)));
+                    for (var t : linSol.coefficients().keySet()) {
+                        Assert.assertEquals(t.evalTerm(e.input()), matrix.values(t)[i]);
+                    }
+                }
+            }
+            Assert.assertEquals(-1, matrix.exampleIndex(new Example(new Environment(0, 0, 0), -1)));
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package synth.algorithms.lia;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import synth.algorithms.classify.PartialSolution;
+import synth.algorithms.representation.ExprRepresentation;
+import synth.algorithms.rng.Xoshiro256SS;
+import synth.core.*;
+import synth.util.Tests;
+
+public class LinearSolverTests {
+    private static final List<LinearSolution> PIECES = List.of(
+            new LinearSolution(Map.of(Term.TERM_X, 1)),
+            new LinearSolution(Map.of(Term.TERM_Y, 2)),
+            new LinearSolution(Map.of(Term.TERM_1, 3, Term.TERM_Z, 1)));
+
+    /**
+     * Solves a subset exactly when all of it fits one of PIECES.
+     */
+    private static class PiecewiseSolver extends LinearSolver {
+        PiecewiseSolver(Xoshiro256SS rng, ExecutorService executor, int parallelSeeds) {
+            super(rng, executor, parallelSeeds);
+        }
+
+        @Override
+        protected LinearSolution solveSubset(Collection<Example> exampleSubset) {
+            for (var sol : PIECES) {
+                if (exampleSubset.stream().allMatch(e -> sol.evalExpr(e.input()) == e.output())) {
+                    return sol;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static List<Example> makePiecewiseExamples(Random rng, int count) {
+        var examples = new ArrayList<Example>();
+        for (var env : Tests.makeRandomEnvs(rng, count)) {
+            var piece = PIECES.get(Math.floorMod(env.x() + env.y() + env.z(), PIECES.size()));
+            examples.add(new Example(env, piece.evalExpr(env)));
+        }
+        return examples;
+    }
+
+    private static Set<ExprRepresentation> solutionsOf(Collection<PartialSolution> partials) {
+        var result = new HashSet<ExprRepresentation>();
+        for (var ps : partials) {
+            result.add(ps.solution());
+        }
+        return result;
+    }
+
+    private static void assertCoversAll(Collection<PartialSolution> partials, List<Example> examples) {
+        for (var e : examples) {
+            Assert.assertTrue(partials.stream().anyMatch(ps -> ps.application().includes(e.input())));
+        }
+    }
+
+    @Test
+    public void testParallelSeedsCoverEverything() throws Exception {
+        var rng = Tests.makeRng(-1);
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int n = 0; n < 20; ++n) {
+                var examples = makePiecewiseExamples(rng, rng.nextInt(300) + 1);
+                long seed = rng.nextLong();
+
+                var sequential = new PiecewiseSolver(new Xoshiro256SS(seed), null, 1).computeSolutionSets(examples);
+                // Solvers are usually handed a subsequence, like in VoltronSynthesizer
+                var parallel = new PiecewiseSolver(new Xoshiro256SS(seed).nextSubsequence(), pool, 4)
+                        .computeSolutionSets(examples);
+
+                assertCoversAll(sequential, examples);
+                assertCoversAll(parallel, examples);
+                // Pieces can coincide on a few inputs, so exactly which ones get used can
+                // differ between runs
+                Assert.assertTrue(PIECES.containsAll(solutionsOf(sequential)));
+                Assert.assertTrue(PIECES.containsAll(solutionsOf(parallel)));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
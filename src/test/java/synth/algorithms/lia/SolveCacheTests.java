@@ -0,0 +1,117 @@
+package synth.algorithms.lia;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.algorithms.classify.PartialSolution;
+import synth.algorithms.representation.ExprRepresentation;
+import synth.algorithms.rng.Xoshiro256SS;
+import synth.core.*;
+import synth.util.Tests;
+
+public class SolveCacheTests {
+    private static final LinearSolution SOL_X = new LinearSolution(Map.of(Term.TERM_X, 1));
+    private static final LinearSolution SOL_Y = new LinearSolution(Map.of(Term.TERM_Y, 1));
+
+    /**
+     * Solves a subset exactly when all of it fits x or all of it fits y, and
+     * counts how often it actually got asked.
+     */
+    private static class CountingSolver extends LinearSolver {
+        int solved = 0;
+        int failed = 0;
+
+        CountingSolver(Xoshiro256SS rng) {
+            super(rng);
+        }
+
+        @Override
+        protected LinearSolution solveSubset(Collection<Example> exampleSubset) {
+            for (var sol : List.of(SOL_X, SOL_Y)) {
+                if (exampleSubset.stream().allMatch(e -> sol.evalExpr(e.input()) == e.output())) {
+                    ++solved;
+                    return sol;
+                }
+            }
+            ++failed;
+            return null;
+        }
+    }
+
+    private static List<Example> makeMinExamples(Random rng, int count) {
+        var examples = new ArrayList<Example>();
+        for (var env : Tests.makeRandomEnvs(rng, count)) {
+            if (env.x() != env.y()) {
+                examples.add(new Example(env, Math.min(env.x(), env.y())));
+            }
+        }
+        return examples;
+    }
+
+    private static Set<ExprRepresentation> solutionsOf(Collection<PartialSolution> partials) {
+        var result = new HashSet<ExprRepresentation>();
+        for (var ps : partials) {
+            result.add(ps.solution());
+        }
+        return result;
+    }
+
+    @Test
+    public void testKnownSolutionFitsSubset() {
+        var rng = Tests.makeRng(-1);
+        var cache = new SolveCache(4);
+        cache.addSolution(SOL_X);
+        for (var env : Tests.makeRandomEnvs(rng, 100)) {
+            Assert.assertEquals(SOL_X, cache.findSolution(List.of(new Example(env, env.x()))));
+            if (env.x() != env.y()) {
+                Assert.assertNull(cache.findSolution(List.of(new Example(env, env.y()))));
+            }
+        }
+    }
+
+    @Test
+    public void testSupersetOfUnsolvableRejected() {
+        var rng = Tests.makeRng(-1);
+        var examples = makeMinExamples(rng, 20);
+        var cache = new SolveCache(4);
+        var unsolvable = examples.subList(0, 3);
+        cache.addUnsolvable(unsolvable);
+        Assert.assertTrue(cache.isKnownUnsolvable(unsolvable));
+        Assert.assertTrue(cache.isKnownUnsolvable(examples));
+        Assert.assertTrue(cache.isKnownUnsolvable(new HashSet<>(examples.subList(0, 5))));
+        Assert.assertFalse(cache.isKnownUnsolvable(examples.subList(1, 5)));
+        Assert.assertFalse(cache.isKnownUnsolvable(examples.subList(0, 2)));
+    }
+
+    @Test
+    public void testCapacityDropsOldest() {
+        var cache = new SolveCache(2);
+        cache.addSolution(SOL_X);
+        cache.addSolution(SOL_Y);
+        cache.addSolution(SOL_X);
+        Assert.assertEquals(2, cache.solutionCount());
+        cache.addSolution(new LinearSolution(Map.of(Term.TERM_Z, 1)));
+        Assert.assertEquals(2, cache.solutionCount());
+        var env = new Environment(1, 2, 3);
+        Assert.assertNull(cache.findSolution(List.of(new Example(env, 1))));
+        Assert.assertEquals(SOL_Y, cache.findSolution(List.of(new Example(env, 2))));
+    }
+
+    @Test
+    public void testRepeatedSolveUsesCache() throws InterruptedException {
+        var rng = Tests.makeRng(-1);
+        var examples = makeMinExamples(rng, 200);
+        var solver = new CountingSolver(new Xoshiro256SS(rng.nextLong()));
+
+        var first = solver.computeSolutionSets(examples);
+        Assert.assertNotNull(first);
+        Assert.assertTrue(solver.solved > 0);
+
+        // Every subset the solver could solve now fits a remembered solution
+        solver.solved = 0;
+        var second = solver.computeSolutionSets(examples);
+        Assert.assertEquals(solutionsOf(first), solutionsOf(second));
+        Assert.assertEquals(0, solver.solved);
+    }
+}
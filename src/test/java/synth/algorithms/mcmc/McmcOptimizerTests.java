@@ -0,0 +1,68 @@
+package synth.algorithms.mcmc;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+
+import synth.algorithms.Mcmc1Synthesizer;
+import synth.algorithms.rng.Xoshiro256SS;
+import synth.core.*;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class McmcOptimizerTests {
+    private static class WalkOptimizer extends McmcOptimizer<Integer> {
+        WalkOptimizer(Xoshiro256SS rng) {
+            super(rng);
+        }
+
+        Integer step(Integer x) {
+            return x + rng().nextInt(21) - 10;
+        }
+    }
+
+    @Test
+    public void testTemperedFindsTarget() throws InterruptedException {
+        var rng = new Xoshiro256SS(Tests.makeRng(-1).nextLong());
+        var pool = new ForkJoinPool(4);
+        try {
+            for (int n = 0; n < 20; ++n) {
+                final int target = rng.nextInt(2000) - 1000;
+                var replicas = new ArrayList<McmcOptimizer.Replica<Integer>>();
+                for (int i = 0; i < 4; ++i) {
+                    var opt = new WalkOptimizer(rng.nextSubsequence());
+                    replicas.add(new McmcOptimizer.Replica<>(opt, 0, opt::step,
+                            x -> (float) Math.abs(x - target) + 1f, x -> x == target));
+                }
+                var result = McmcOptimizer.optimizeTempered(replicas, 0.1f, 1f, 1000000, 100, pool,
+                        rng.nextSubsequence());
+                Assert.assertTrue(result.bestIsValid());
+                Assert.assertEquals(target, (int) result.bestX());
+                Assert.assertTrue(result.iterations() > 0);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTemperedSynthesizerProducesValidPrograms() {
+        var rng = Tests.makeRng(-1);
+        var synthesizer = new Mcmc1Synthesizer(rng.nextLong(), 4);
+        var targets = List.of(
+                new ParseNode(Symbol.Add, List.of(new ParseNode(Symbol.VarX), new ParseNode(Symbol.VarY))),
+                new ParseNode(Symbol.Multiply, List.of(new ParseNode(Symbol.VarZ), new ParseNode(Symbol.Const2))));
+        for (var target : targets) {
+            var examples = new ArrayList<Example>();
+            for (var env : Tests.makeRandomEnvs(rng, 20)) {
+                examples.add(new Example(env, Semantics.evaluate(target, env)));
+            }
+            var program = synthesizer.synthesize(examples);
+            Assert.assertNotNull(program);
+            for (var e : examples) {
+                Assert.assertEquals(e.output(), Semantics.evaluate(program, e.input()));
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package synth.core;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.algorithms.enumeration.ProgramEnumerator;
+import synth.dsl.*;
+import synth.util.Tests;
+
+public class ParseNodeTests {
+    private static ParseNode copy(ParseNode node) {
+        if (node.getChildren().isEmpty()) {
+            return new ParseNode(node.getSymbol());
+        }
+        var children = new ArrayList<ParseNode>();
+        for (var c : node.getChildren()) {
+            children.add(copy(c));
+        }
+        return new ParseNode(node.getSymbol(), children);
+    }
+
+    @Test
+    public void testInternIsCanonical() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            var program = Tests.makeRandomProgram(rng, 1 + rng.nextInt(30));
+            var a = Semantics.makeParseTreeFromExprPostOrder(program);
+            var b = Semantics.makeParseTreeFromExprPostOrder(program.clone());
+            Assert.assertTrue(a.isInterned());
+            Assert.assertSame(a, b);
+
+            var fresh = copy(a);
+            Assert.assertFalse(fresh.isInterned());
+            Assert.assertNotSame(a, fresh);
+            Assert.assertEquals(a, fresh);
+            Assert.assertEquals(fresh, a);
+            Assert.assertEquals(a.hashCode(), fresh.hashCode());
+            Assert.assertSame(a, ParseNode.intern(fresh));
+        }
+    }
+
+    @Test
+    public void testStructuralEquality() {
+        var xy = new ParseNode(Symbol.Add, List.of(ParseNode.VAR_X, ParseNode.VAR_Y));
+        var yx = new ParseNode(Symbol.Add, List.of(ParseNode.VAR_Y, ParseNode.VAR_X));
+        var xyTimes = new ParseNode(Symbol.Multiply, List.of(ParseNode.VAR_X, ParseNode.VAR_Y));
+        Assert.assertEquals(xy, new ParseNode(Symbol.Add, List.of(new ParseNode(Symbol.VarX), ParseNode.VAR_Y)));
+        Assert.assertNotEquals(xy, yx);
+        Assert.assertNotEquals(xy, xyTimes);
+        Assert.assertNotSame(ParseNode.intern(xy), ParseNode.intern(yx));
+
+        var set = new HashSet<ParseNode>(List.of(xy, yx, xyTimes));
+        Assert.assertTrue(set.contains(ParseNode.intern(Symbol.Add, ParseNode.VAR_X, ParseNode.VAR_Y)));
+        Assert.assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testWithChildStaysInterned() {
+        var xy = ParseNode.intern(Symbol.Add, ParseNode.VAR_X, ParseNode.VAR_Y);
+        var zy = xy.withChild(0, new ParseNode(Symbol.VarZ));
+        Assert.assertTrue(zy.isInterned());
+        Assert.assertSame(ParseNode.intern(Symbol.Add, ParseNode.VAR_Z, ParseNode.VAR_Y), zy);
+        Assert.assertSame(xy, zy.withChild(0, ParseNode.VAR_X));
+    }
+
+    @Test
+    public void testEnumeratorSharesSubtrees() {
+        var pe = new ProgramEnumerator(2, 2, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var seen = new HashMap<ParseNode, ParseNode>();
+        var programs = new HashSet<ParseNode>();
+        while (pe.hasNext()) {
+            var node = pe.next();
+            Assert.assertTrue(programs.add(node));
+            for (var c : node.getChildren()) {
+                Assert.assertTrue(c.isInterned());
+                Assert.assertSame(seen.computeIfAbsent(c, k -> k), c);
+            }
+        }
+    }
+}
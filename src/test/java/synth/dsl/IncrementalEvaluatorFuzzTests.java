@@ -0,0 +1,98 @@
+package synth.dsl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.util.Tests;
+
+public class IncrementalEvaluatorFuzzTests {
+    private static int programLength = 40;
+    private static int envCount = 100;
+
+    /**
+     * Evaluate a chain of mutated programs the way MCMC would, checking every
+     * result against the non-incremental evaluator.
+     */
+    @Test
+    public void testMutationChainEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int run = 0; run < 20; ++run) {
+            var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+            var evaluator = new IncrementalEvaluator(columns);
+            var expectedExpr = new int[columns.size()];
+            var actualExpr = new int[columns.size()];
+            var expectedBool = new boolean[columns.size()];
+            var actualBool = new boolean[columns.size()];
+            var current = Tests.makeRandomProgram(rng, programLength);
+            var donor = Tests.makeRandomProgram(rng, programLength);
+            // Results with the same version must be identical
+            var exprVersions = new HashMap<Long, int[]>();
+            var boolVersions = new HashMap<Long, boolean[]>();
+            for (int n = 0; n < 500; ++n) {
+                var candidate = current.clone();
+                switch (rng.nextInt(4)) {
+                    case 0:
+                        candidate[rng.nextInt(programLength)] = donor[rng.nextInt(programLength)];
+                        break;
+                    case 1:
+                        for (int i = rng.nextInt(4); i >= 0; --i) {
+                            candidate[rng.nextInt(programLength)] = donor[rng.nextInt(programLength)];
+                        }
+                        break;
+                    case 2:
+                        System.arraycopy(current, 1, candidate, 0, programLength - 1);
+                        candidate[programLength - 1] = current[0];
+                        break;
+                    default:
+                        // Unchanged
+                        break;
+                }
+                if (rng.nextBoolean()) {
+                    Semantics.evaluateExprPostOrderBatch(candidate, columns, expectedExpr);
+                    long version = evaluator.evaluateExpr(candidate);
+                    evaluator.exprResult(actualExpr);
+                    Assert.assertArrayEquals(expectedExpr, actualExpr);
+                    var previous = exprVersions.putIfAbsent(version, actualExpr.clone());
+                    if (previous != null) {
+                        Assert.assertArrayEquals(previous, actualExpr);
+                    }
+                } else {
+                    Semantics.evaluateBoolPostOrderBatch(candidate, columns, expectedBool);
+                    long version = evaluator.evaluateBool(candidate);
+                    evaluator.boolResult(actualBool);
+                    Assert.assertArrayEquals(expectedBool, actualBool);
+                    var previous = boolVersions.putIfAbsent(version, actualBool.clone());
+                    if (previous != null) {
+                        Assert.assertArrayEquals(previous, actualBool);
+                    }
+                }
+                if (rng.nextInt(4) == 0) {
+                    current = candidate;
+                }
+            }
+            Assert.assertTrue(evaluator.evaluatedFraction() < 1f);
+        }
+    }
+
+    @Test
+    public void testVaryingLengths() {
+        var rng = Tests.makeRng(-1);
+        var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+        var evaluator = new IncrementalEvaluator(columns);
+        var expected = new int[columns.size()];
+        var actual = new int[columns.size()];
+        var base = Tests.makeRandomProgram(rng, 100);
+        for (int n = 0; n < 1000; ++n) {
+            var program = Arrays.copyOf(base, rng.nextInt(101));
+            if (program.length > 0 && rng.nextBoolean()) {
+                program[rng.nextInt(program.length)] = Tests.makeRandomProgram(rng, 1)[0];
+            }
+            Semantics.evaluateExprPostOrderBatch(program, columns, expected);
+            evaluator.evaluateExprBatch(program, actual);
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package synth.dsl;
+
+import java.util.Random;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.util.Tests;
+
+public class PackedEvaluatorFuzzTests {
+    private static int envCount = 100;
+
+    // Short programs too, they exercise the empty stack and constant folding
+    private static Symbol[] makeProgram(Random rng) {
+        return Tests.makeRandomProgram(rng, 1 + rng.nextInt(100));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        var rng = Tests.makeRng(-1);
+        var packed = new PackedProgram();
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = makeProgram(rng);
+            packed.repack(postOrder);
+            var unpacked = packed.unpack();
+            int j = 0;
+            for (var s : postOrder) {
+                if (s != null) {
+                    Assert.assertEquals(s, unpacked[j++]);
+                }
+            }
+            Assert.assertEquals(j, unpacked.length);
+        }
+    }
+
+    @Test
+    public void testExprEquivalence() {
+        var rng = Tests.makeRng(-1);
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = makeProgram(rng);
+            packed.repack(postOrder);
+            var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+            var expected = new int[columns.size()];
+            var batchOut = new int[columns.size()];
+            Semantics.evaluateExprPostOrderBatch(postOrder, columns, expected);
+            evaluator.evaluateExprBatch(packed, columns, batchOut);
+            Assert.assertArrayEquals(expected, batchOut);
+            for (int i = 0; i < columns.size(); ++i) {
+                var env = columns.input(i);
+                Assert.assertEquals(Semantics.evaluateExprPostOrder(postOrder, env), evaluator.evaluateExpr(packed, env));
+            }
+        }
+    }
+
+    @Test
+    public void testBoolEquivalence() {
+        var rng = Tests.makeRng(-1);
+        var evaluator = new PackedEvaluator();
+        var packed = new PackedProgram();
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = makeProgram(rng);
+            packed.repack(postOrder);
+            var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+            var expected = new boolean[columns.size()];
+            var batchOut = new boolean[columns.size()];
+            Semantics.evaluateBoolPostOrderBatch(postOrder, columns, expected);
+            evaluator.evaluateBoolBatch(packed, columns, batchOut);
+            Assert.assertArrayEquals(expected, batchOut);
+            for (int i = 0; i < columns.size(); ++i) {
+                var env = columns.input(i);
+                Assert.assertEquals(Semantics.evaluateBoolPostOrder(postOrder, env), evaluator.evaluateBool(packed, env));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package synth.dsl;
+
+import java.util.Arrays;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.util.TestData;
+import synth.util.Tests;
+
+public class SemanticsBatchFuzzTests {
+    private static int programLength = 100;
+    private static int envCount = 100;
+
+    @Test
+    public void testBatchComposition() {
+        var columns = ExampleColumns.of(Arrays.asList(TestData.compositionTestExamples));
+        var out = new int[columns.size()];
+        Semantics.evaluateBatch(TestData.compositionTestParseTree, columns, out);
+        Assert.assertArrayEquals(columns.outputs(), out);
+    }
+
+    @Test
+    public void testExprBatchScalarEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = Tests.makeRandomProgram(rng, programLength);
+            ParseNode parseNode = Semantics.makeParseTreeFromExprPostOrder(postOrder);
+            var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+            var treeOut = new int[columns.size()];
+            var postOrderOut = new int[columns.size()];
+            Semantics.evaluateBatch(parseNode, columns, treeOut);
+            Semantics.evaluateExprPostOrderBatch(postOrder, columns, postOrderOut);
+            for (int i = 0; i < columns.size(); ++i) {
+                int expected = Semantics.evaluate(parseNode, columns.input(i));
+                Assert.assertEquals(expected, treeOut[i]);
+                Assert.assertEquals(expected, postOrderOut[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testBoolBatchScalarEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = Tests.makeRandomProgram(rng, programLength);
+            ParseNode parseNode = Semantics.makeParseTreeFromBoolPostOrder(postOrder);
+            var columns = ExampleColumns.ofInputs(Tests.makeRandomEnvs(rng, envCount));
+            var treeOut = new boolean[columns.size()];
+            var postOrderOut = new boolean[columns.size()];
+            Semantics.evaluateBoolBatch(parseNode, columns, treeOut);
+            Semantics.evaluateBoolPostOrderBatch(postOrder, columns, postOrderOut);
+            for (int i = 0; i < columns.size(); ++i) {
+                boolean expected = Semantics.evaluateBool(parseNode, columns.input(i));
+                Assert.assertEquals(expected, treeOut[i]);
+                Assert.assertEquals(expected, postOrderOut[i]);
+            }
+        }
+    }
+}
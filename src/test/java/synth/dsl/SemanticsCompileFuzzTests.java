@@ -0,0 +1,54 @@
+package synth.dsl;
+
+import org.junit.*;
+
+import synth.core.*;
+import synth.util.TestData;
+import synth.util.Tests;
+
+public class SemanticsCompileFuzzTests {
+    private static int programLength = 100;
+
+    @Test
+    public void testCompiledComposition() {
+        var compiled = Semantics.compileExpr(TestData.compositionTestParseTree);
+        for (var e : TestData.compositionTestExamples) {
+            Assert.assertEquals(e.output(), compiled.eval(e.input()));
+        }
+    }
+
+    @Test
+    public void testExprCompiledInterpretedEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = Tests.makeRandomProgram(rng, programLength);
+            ParseNode parseNode = Semantics.makeParseTreeFromExprPostOrder(postOrder);
+            CompiledExpr compiled = Semantics.compileExpr(parseNode);
+            Tests.fuzzWithEnvs(rng, 100,
+                    (env) -> Assert.assertEquals(Semantics.evaluate(parseNode, env), compiled.eval(env)));
+        }
+    }
+
+    @Test
+    public void testBoolCompiledInterpretedEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = Tests.makeRandomProgram(rng, programLength);
+            ParseNode parseNode = Semantics.makeParseTreeFromBoolPostOrder(postOrder);
+            CompiledBool compiled = Semantics.compileBool(parseNode);
+            Tests.fuzzWithEnvs(rng, 100,
+                    (env) -> Assert.assertEquals(Semantics.evaluateBool(parseNode, env), compiled.eval(env)));
+        }
+    }
+
+    @Test
+    public void testPostOrderCompiledEquivalence() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            Symbol[] postOrder = Tests.makeRandomProgram(rng, programLength);
+            CompiledExpr compiled = Semantics.compileExprPostOrder(postOrder);
+            Tests.fuzzWithEnvs(rng, 100,
+                    (env) -> Assert.assertEquals(Semantics.evaluateExprPostOrder(postOrder, env), compiled.eval(env)));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package synth.util;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+
+public class ExampleFileReaderTests {
+    private static List<Example> read(String text) throws IOException {
+        var bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return ExampleFileReader.readExamples(Channels.newChannel(new ByteArrayInputStream(bytes)));
+    }
+
+    private static String spaces(Random rng) {
+        return " ".repeat(rng.nextInt(3));
+    }
+
+    /**
+     * An example line in any of the forms Parser accepts: variables in any order,
+     * some left out, and spaces wherever trim() would take them out
+     */
+    private static String formatExample(Random rng, Example e) {
+        var pairs = new ArrayList<String>();
+        var env = e.input();
+        var values = new int[] { env.x(), env.y(), env.z() };
+        var names = new String[] { "x", "y", "z" };
+        for (int i = 0; i < 3; ++i) {
+            if (values[i] != 0 || rng.nextBoolean() || (i == 2 && pairs.isEmpty())) {
+                pairs.add(spaces(rng) + names[i] + spaces(rng) + "=" + spaces(rng) + values[i] + spaces(rng));
+            }
+        }
+        Collections.shuffle(pairs, rng);
+        return String.join(",", pairs) + "->" + spaces(rng) + e.output() + spaces(rng);
+    }
+
+    @Test
+    public void testMatchesParser() throws IOException {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 100; ++n) {
+            var lines = new ArrayList<String>();
+            // Enough lines, some of the time, to cross the read buffer boundary
+            int count = rng.nextInt(4) == 0 ? 5000 : rng.nextInt(50);
+            for (var env : Tests.makeRandomEnvs(rng, count)) {
+                int r = rng.nextInt(20);
+                if (r == 0) {
+                    lines.add("");
+                } else if (r == 1) {
+                    lines.add("# Add(x, y) -> 3");
+                }
+                lines.add(formatExample(rng, new Example(env, rng.nextInt())));
+            }
+            var eol = rng.nextBoolean() ? "\n" : "\r\n";
+            var text = String.join(eol, lines) + (rng.nextBoolean() ? eol : "");
+            var lf = String.join("\n", lines);
+            Assert.assertEquals(Parser.parseAllExamples(List.of(lf.split("\n", -1))), read(text));
+        }
+    }
+
+    @Test
+    public void testReadsExtremes() throws IOException {
+        var examples = read("x=-2147483648, y=2147483647, z=+0 -> -1\nw=5, x=1 -> 2\n");
+        Assert.assertEquals(List.of(new Example(new Environment(Integer.MIN_VALUE, Integer.MAX_VALUE, 0), -1),
+                new Example(new Environment(1, 0, 0), 2)), examples);
+    }
+
+    @Test
+    public void testRejectsMalformed() throws IOException {
+        for (var text : List.of("x=1, y=2, z=3", "x=1, y=2, z=3 -> ", "x=1 y=2 -> 3", "x 1 -> 3", "=1 -> 3",
+                "x=1 -> 3 4", "x=2147483648 -> 0", "x=1 -> -2147483649", "x=1 => 3", "x=1, y=2, z=3 - 3")) {
+            try {
+                read("x=0, y=0, z=0 -> 0\n" + text + "\n");
+                Assert.fail("Read malformed line: " + text);
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+            }
+        }
+    }
+}
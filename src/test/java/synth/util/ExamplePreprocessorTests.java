@@ -0,0 +1,50 @@
+package synth.util;
+
+import java.util.*;
+
+import org.junit.*;
+
+import synth.core.*;
+
+public class ExamplePreprocessorTests {
+    @Test
+    public void testKeepsEveryDistinctExampleOnce() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 100; ++n) {
+            var examples = new ArrayList<Example>();
+            for (var env : Tests.makeRandomEnvs(rng, 1 + rng.nextInt(200))) {
+                // Few distinct outputs, so the interleaving has something to do
+                examples.add(new Example(env, Math.floorMod(env.x() + env.y() * 3 + env.z(), 5)));
+            }
+            var withRepeats = new ArrayList<>(examples);
+            for (int k = rng.nextInt(50); k > 0; --k) {
+                withRepeats.add(examples.get(rng.nextInt(examples.size())));
+            }
+            Collections.shuffle(withRepeats, rng);
+
+            var result = ExamplePreprocessor.preprocess(withRepeats);
+            Assert.assertEquals(new HashSet<>(examples), new HashSet<>(result));
+            Assert.assertEquals(new HashSet<>(result).size(), result.size());
+
+            // The first appearance of every output comes before any output repeats
+            var outputCount = withRepeats.stream().map(Example::output).distinct().count();
+            var firstOutputs = new HashSet<Integer>();
+            for (int i = 0; i < outputCount; ++i) {
+                Assert.assertTrue(firstOutputs.add(result.get(i).output()));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsContradictions() {
+        var env = new Environment(1, 2, 3);
+        var examples = List.of(new Example(env, 4), new Example(new Environment(3, 2, 1), 4),
+                new Example(env, 5));
+        try {
+            ExamplePreprocessor.preprocess(examples);
+            Assert.fail("Accepted contradictory examples");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package synth.util;
+
+import org.junit.*;
+
+public class MetricsTests {
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+        Metrics.count("a");
+        Metrics.stopTimer("b", Metrics.startTimer());
+        Metrics.sample("c", 1.0);
+        Assert.assertTrue(Metrics.toJson().endsWith("\"counters\": {}, \"timers\": {}, \"series\": {}}"));
+    }
+
+    @Test
+    public void testRecordsAsJson() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        Metrics.count("z.count");
+        Metrics.count("a.count", 41);
+        Metrics.count("a.count");
+        Metrics.stopTimer("t", Metrics.startTimer());
+        Metrics.stopTimer("t", Metrics.startTimer());
+        Metrics.sample("s", 2.5);
+        Metrics.sample("s", Float.POSITIVE_INFINITY);
+
+        var json = Metrics.toJson();
+        Assert.assertTrue(json, json.contains("\"counters\": {\"a.count\": 42, \"z.count\": 1}"));
+        Assert.assertEquals(42, Metrics.counter("a.count"));
+        Assert.assertEquals(0, Metrics.counter("missing"));
+        Assert.assertTrue(json, json.contains("\"t\": {\"count\": 2, \"totalMs\": "));
+        Assert.assertTrue(json, json.matches(".*\"s\": \\[\\[[0-9.]+, 2\\.500\\], \\[[0-9.]+, null\\]\\].*"));
+
+        Metrics.reset();
+        Assert.assertTrue(Metrics.toJson().endsWith("\"counters\": {}, \"timers\": {}, \"series\": {}}"));
+    }
+
+    @Test
+    public void testLongSeriesKeepsItsWholeLength() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+        for (int i = 0; i < 100000; ++i) {
+            Metrics.sample("s", i);
+        }
+        var json = Metrics.toJson();
+        int points = json.split("\\], \\[").length;
+        Assert.assertTrue(json, points <= 256);
+        Assert.assertTrue(json, points >= 128);
+        // Thinned out, but still reaching (close to) the end
+        Assert.assertTrue(json, json.matches(".*, 99[0-9]{3}\\.000\\]\\]\\}\\}"));
+    }
+
+    @Test
+    public void testQuote() {
+        Assert.assertEquals("\"a\\\"b\\\\c\\u000a\"", Metrics.quote("a\"b\\c\n"));
+    }
+}
@@ -0,0 +1,89 @@
+package synth.util;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import synth.core.*;
+import synth.dsl.*;
+
+public class ResultCacheTests {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final ParseNode X_PLUS_Y = new ParseNode(Symbol.Add, List.of(ParseNode.VAR_X, ParseNode.VAR_Y));
+
+    @Test
+    public void testParseProgramRoundTrip() {
+        var rng = Tests.makeRng(-1);
+        for (int n = 0; n < 1000; ++n) {
+            var program = new Program(
+                    Semantics.makeParseTreeFromExprPostOrder(Tests.makeRandomProgram(rng, 1 + rng.nextInt(30))));
+            Assert.assertEquals(program.toString(), Parser.parseProgram(program.toString()).toString());
+        }
+    }
+
+    @Test
+    public void testParseProgramRejectsMalformed() {
+        for (var text : List.of("", "Add(VarX)", "Add(VarX, VarY", "Lt(VarX, VarY)", "Ite(VarX, VarY, VarZ)",
+                "Foo", "E", "VarX VarY")) {
+            try {
+                Parser.parseProgram(text);
+                Assert.fail("Parsed malformed program: " + text);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testLookupIsOrderIndependentAndPersists() throws IOException {
+        var rng = Tests.makeRng(-1);
+        var file = folder.getRoot().toPath().resolve("cache.txt");
+        var examples = Tests.makeExamples(rng, X_PLUS_Y, 20);
+        var cache = new ResultCache(file, 10);
+        Assert.assertNull(cache.lookup(examples));
+        cache.store(examples, new Program(X_PLUS_Y));
+
+        var shuffled = new ArrayList<>(examples);
+        Collections.shuffle(shuffled, rng);
+        shuffled.add(shuffled.get(0));
+        Assert.assertEquals(ResultCache.fingerprint(examples), ResultCache.fingerprint(shuffled));
+
+        var reloaded = new ResultCache(file, 10);
+        Assert.assertEquals(X_PLUS_Y.toString(), reloaded.lookup(shuffled).toString());
+    }
+
+    @Test
+    public void testInvalidEntryIsAMiss() throws IOException {
+        var rng = Tests.makeRng(-1);
+        var file = folder.getRoot().toPath().resolve("cache.txt");
+        var examples = Tests.makeExamples(rng, X_PLUS_Y, 20);
+        Files.writeString(file, ResultCache.fingerprint(examples) + " Multiply(VarX, VarY)\n");
+        var cache = new ResultCache(file, 10);
+        Assert.assertNull(cache.lookup(examples));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFileStaysBounded() throws IOException {
+        var rng = Tests.makeRng(-1);
+        var file = folder.getRoot().toPath().resolve("cache.txt");
+        var cache = new ResultCache(file, 5);
+        var stored = new ArrayList<List<Example>>();
+        for (int n = 0; n < 50; ++n) {
+            var examples = Tests.makeExamples(rng, X_PLUS_Y, 10);
+            cache.store(examples, new Program(X_PLUS_Y));
+            stored.add(examples);
+            Assert.assertTrue(Files.readAllLines(file).size() < 10);
+        }
+        var reloaded = new ResultCache(file, 5);
+        Assert.assertEquals(5, reloaded.size());
+        // Oldest go first
+        Assert.assertNull(reloaded.lookup(stored.get(0)));
+        Assert.assertNotNull(reloaded.lookup(stored.get(49)));
+    }
+}
@@ -5,6 +5,7 @@ import java.util.function.Consumer;
 
 import org.junit.Assert;
 
+import synth.algorithms.enumeration.ProgramEnumerator;
 import synth.algorithms.representation.*;
 import synth.core.*;
 import synth.dsl.*;
@@ -52,6 +53,30 @@ public class Tests {
         return envs;
     }
 
+    /**
+     * Examples of target on count random inputs
+     */
+    public static List<Example> makeExamples(Random rng, ParseNode target, int count) {
+        var examples = new ArrayList<Example>(count);
+        for (var env : makeRandomEnvs(rng, count)) {
+            examples.add(new Example(env, Semantics.evaluate(target, env)));
+        }
+        return examples;
+    }
+
+    /**
+     * A random program out of all the ones of exactly the given height
+     */
+    public static ParseNode pickProgram(Random rng, int height) {
+        var pe = new ProgramEnumerator(height, height, ProgramEnumerator.E_SYMBOLS, ProgramEnumerator.E_SYMBOLS,
+                ProgramEnumerator.B_SYMBOLS);
+        var programs = new ArrayList<ParseNode>();
+        while (pe.hasNext()) {
+            programs.add(pe.next());
+        }
+        return programs.get(rng.nextInt(programs.size()));
+    }
+
     public static void assertProgramSatisfiesExamples(Program testProgram, Example[] testExamples) {
         for (var e : testExamples) {
             Assert.assertEquals(e.output(), Semantics.evaluate(testProgram, e.input()));